@@ -0,0 +1,42 @@
+package com.dddev.log;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+//벤치마크용 로그 줄 (Spring Boot 형식 줄, 스택트레이스, 형식이 다른 줄을 섞어서 고정 seed로 생성)
+public final class LogSamples {
+
+    private static final String[] LEVELS = {"INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR"};
+    private static final String[] THREADS = {"main", "http-nio-8080-exec-1", "http-nio-8080-exec-7", "log-flusher-0", "scheduling-1"};
+    private static final String[] LOGGERS = {"com.dddev.log.LogApplication", "c.d.log.service.ElasticSearchLogService",
+            "o.s.web.servlet.DispatcherServlet", "com.zaxxer.hikari.HikariDataSource", "c.d.log.controller.logController"};
+    private static final String[] MESSAGES = {"Started LogApplication in 5.123 seconds (JVM running for 6.2)",
+            "GROUND ID : 12, /log/bulk, POST 요청 500줄", "Completed initialization in 2 ms",
+            "HikariPool-1 - Start completed.", "사용자 12 요청 처리 실패 java.lang.IllegalStateException: timeout after 3000ms"};
+
+    private LogSamples() {
+    }
+
+    public static List<String> lines(int count) {
+        Random random = new Random(42);
+        LocalDateTime time = LocalDateTime.of(2023, 11, 3, 9, 35, 13);
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            time = time.plusNanos(random.nextInt(50_000_000));
+            int kind = random.nextInt(10);
+            if (kind == 0) {
+                lines.add("\tat com.dddev.log.service.ElasticSearchLogService.saveAll(ElasticSearchLogService.java:" + random.nextInt(300) + ")");
+            } else if (kind == 1) {
+                lines.add("{\"event\":\"request\",\"status\":" + (200 + random.nextInt(300)) + ",\"path\":\"/log/" + random.nextInt(1000) + "\"}");
+            } else {
+                lines.add(String.format("%s.%03d %5s %d --- [%15s] %-40s : %s",
+                        time.toLocalDate() + " " + time.toLocalTime().withNano(0), time.getNano() / 1_000_000,
+                        LEVELS[random.nextInt(LEVELS.length)], 7960, THREADS[random.nextInt(THREADS.length)],
+                        LOGGERS[random.nextInt(LOGGERS.length)], MESSAGES[random.nextInt(MESSAGES.length)]));
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,68 @@
+package com.dddev.log.config;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Field;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+//로그 저장 요청마다 하는 토큰 복호화와 그라운드/유저 id 파싱
+//(GroundAuthService.checkValid에서 검증 캐시에 없을 때의 경로)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AesUtilBenchmark {
+
+    private static final int TOKENS = 64;
+
+    private AesUtil aesUtil;
+    private String[] tokens;
+    private String[] plainTexts;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        aesUtil = new AesUtil();
+        setField("aesLogSecretKey", "0123456789abcdef0123456789abcdef");
+        setField("aesLogIv", "abcdef0123456789");
+        aesUtil.init();
+        tokens = new String[TOKENS];
+        plainTexts = new String[TOKENS];
+        for (int i = 0; i < TOKENS; i++) {
+            plainTexts[i] = (i % 8 + 1) + "/" + (i + 100) + "/" + UUID.nameUUIDFromBytes(new byte[]{(byte) i});
+            tokens[i] = aesUtil.aes256Encrypt(plainTexts[i]);
+        }
+    }
+
+    //@Value 필드는 Spring 없이 직접 채움
+    private void setField(String name, String value) {
+        Field field = ReflectionUtils.findField(AesUtil.class, name);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, aesUtil, value);
+    }
+
+    @Benchmark
+    public String decrypt(Cursor cursor) throws Exception {
+        return aesUtil.aes256Decrypt(tokens[cursor.next++ & (TOKENS - 1)]);
+    }
+
+    @Benchmark
+    public Map<String, Integer> getUserInfo(Cursor cursor) {
+        return aesUtil.getUserInfo(plainTexts[cursor.next++ & (TOKENS - 1)]);
+    }
+
+    @Benchmark
+    public void decryptAndGetUserInfo(Cursor cursor, Blackhole blackhole) throws Exception {
+        Map<String, Integer> userInfo = aesUtil.getUserInfo(aesUtil.aes256Decrypt(tokens[cursor.next++ & (TOKENS - 1)]));
+        blackhole.consume(userInfo.get("groundId"));
+        blackhole.consume(userInfo.get("userId"));
+    }
+}
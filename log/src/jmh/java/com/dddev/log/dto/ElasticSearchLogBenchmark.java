@@ -0,0 +1,76 @@
+package com.dddev.log.dto;
+
+import com.dddev.log.LogSamples;
+import com.dddev.log.util.LogLineParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.elasticsearch.core.convert.MappingElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.mapping.SimpleElasticsearchMappingContext;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+//로그 한 줄을 ElasticSearchLog로 만들고 (logController /log/bulk, ElasticSearchLogStore.toIndexQuery)
+//Elasticsearch 색인 요청 JSON과 API 응답 JSON으로 직렬화하는 비용
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ElasticSearchLogBenchmark {
+
+    private static final int LINES = 1024;
+
+    private List<String> lines;
+    private ElasticSearchLog[] logs;
+    private LocalDateTime receivedDateTime;
+    private MappingElasticsearchConverter converter;
+    private ObjectMapper objectMapper;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    @Setup
+    public void setup() {
+        lines = LogSamples.lines(LINES);
+        receivedDateTime = LocalDateTime.now();
+        logs = new ElasticSearchLog[LINES];
+        for (int i = 0; i < LINES; i++) {
+            logs[i] = build(lines.get(i));
+        }
+        SimpleElasticsearchMappingContext mappingContext = new SimpleElasticsearchMappingContext();
+        mappingContext.setInitialEntitySet(Set.of(ElasticSearchLog.class));
+        mappingContext.afterPropertiesSet();
+        converter = new MappingElasticsearchConverter(mappingContext);
+        converter.afterPropertiesSet();
+        objectMapper = new ObjectMapper().registerModule(new JavaTimeModule()).disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+
+    @Benchmark
+    public ElasticSearchLog construct(Cursor cursor) {
+        return build(lines.get(cursor.next++ & (LINES - 1)));
+    }
+
+    @Benchmark
+    public String toIndexJson(Cursor cursor) {
+        return converter.mapObject(logs[cursor.next++ & (LINES - 1)]).toJson();
+    }
+
+    @Benchmark
+    public String toResponseJson(Cursor cursor) throws Exception {
+        return objectMapper.writeValueAsString(logs[cursor.next++ & (LINES - 1)]);
+    }
+
+    //저장 경로와 같은 순서: builder, 고유 id, 형식이 맞으면 필드 파싱
+    private ElasticSearchLog build(String line) {
+        ElasticSearchLog elasticSearchLog = ElasticSearchLog.builder().localDateTime(receivedDateTime).log(line).build();
+        elasticSearchLog.setLogId(UUID.randomUUID().toString());
+        LogLineParser.parse(elasticSearchLog.getLog(), elasticSearchLog);
+        return elasticSearchLog;
+    }
+}
@@ -0,0 +1,55 @@
+package com.dddev.log.service;
+
+import com.dddev.log.LogSamples;
+import com.dddev.log.dto.ElasticSearchLog;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//ElasticSearchLogService.getRegexptLogs의 필터 루프 (Elasticsearch에서 받은 batch를 정규표현식으로 거르는 부분)
+//batch 하나(log.regexp.batch-size 기본 1000줄)를 거르는 시간
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RegexpFilterBenchmark {
+
+    @Param({".*ERROR.*", ".*exec-[0-9]+\\].*Elastic.*", "\\{\"event\".*"})
+    public String regexp;
+
+    private ElasticSearchLog[] batch;
+
+    @Setup
+    public void setup() {
+        List<String> lines = LogSamples.lines(1000);
+        batch = new ElasticSearchLog[lines.size()];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = ElasticSearchLog.builder().log(lines.get(i)).build();
+        }
+    }
+
+    //요청마다 Pattern을 한 번 컴파일하고 Matcher를 재사용 (현재 구현)
+    @Benchmark
+    public int filter() {
+        Matcher matcher = Pattern.compile(regexp).matcher("");
+        int matched = 0;
+        for (ElasticSearchLog elasticSearchLog : batch) {
+            if (elasticSearchLog.getLog() == null || !matcher.reset(elasticSearchLog.getLog()).matches()) continue;
+            matched++;
+        }
+        return matched;
+    }
+
+    //비교용: 줄마다 String.matches (Pattern을 매번 컴파일)
+    @Benchmark
+    public int filterCompileEachLine() {
+        int matched = 0;
+        for (ElasticSearchLog elasticSearchLog : batch) {
+            if (elasticSearchLog.getLog() == null || !elasticSearchLog.getLog().matches(regexp)) continue;
+            matched++;
+        }
+        return matched;
+    }
+}
@@ -2,11 +2,14 @@ package com.dddev.log;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import javax.annotation.PostConstruct;
+import java.util.Map;
 import java.util.TimeZone;
 
 @SpringBootApplication
+@EnableScheduling
 public class LogApplication {
 
 	@PostConstruct
@@ -14,6 +17,14 @@ public class LogApplication {
 		TimeZone.setDefault(TimeZone.getTimeZone("Asia/Seoul"));
 	}
 	public static void main(String[] args) {
-		SpringApplication.run(LogApplication.class, args);
+		SpringApplication application = new SpringApplication(LogApplication.class);
+		//application.yml에 설정이 없을 때의 기본값 (API별 응답 시간 histogram, /actuator/prometheus 공개)
+		//Actuator는 PathPattern 방식이라 같은 포트에 두면 springfox 3.0이 시작할 때 NPE가 나므로 관리 포트(8081)로 분리
+		application.setDefaultProperties(Map.of(
+				"management.server.port", "8081",
+				"management.endpoints.web.exposure.include", "health,prometheus",
+				"management.metrics.distribution.percentiles-histogram.http.server.requests", "true",
+				"spring.mvc.pathmatch.matching-strategy", "ant_path_matcher"));
+		application.run(args);
 	}
 }
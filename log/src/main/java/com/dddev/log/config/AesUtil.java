@@ -1,10 +1,12 @@
 package com.dddev.log.config;
 
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.annotation.PostConstruct;
 import javax.crypto.Cipher;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
@@ -22,24 +24,38 @@ public class AesUtil {
     private String aesLogIv;
 
     private final String alg = "AES/CBC/PKCS5Padding";
-    
+
+    private SecretKeySpec keySpec;
+    private IvParameterSpec ivSpec;
+
+    //Cipher는 thread-safe 하지 않아서 스레드마다 하나씩 만들어 재사용
+    private final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(alg);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    @PostConstruct
+    void init() {
+        keySpec = new SecretKeySpec(aesLogSecretKey.getBytes(), "AES");
+        ivSpec = new IvParameterSpec(aesLogIv.getBytes());
+    }
+
     //암호화
     public String aes256Encrypt(String text) throws Exception {
-        Cipher cipher = Cipher.getInstance(alg);
-        SecretKeySpec keySpec = new SecretKeySpec(aesLogSecretKey.getBytes(), "AES");
-        IvParameterSpec ivSpec = new IvParameterSpec(aesLogIv.getBytes());
+        Cipher cipher = ciphers.get();
         cipher.init(Cipher.ENCRYPT_MODE, keySpec, ivSpec);
 
         byte[] encrypted = cipher.doFinal(text.getBytes(StandardCharsets.UTF_8));
 
         return Base64.getEncoder().encodeToString(encrypted);
     }
-    
+
     //복호화
     public String aes256Decrypt(String cipherText) throws Exception {
-        Cipher cipher = Cipher.getInstance(alg);
-        SecretKeySpec keySpec = new SecretKeySpec(aesLogSecretKey.getBytes(), "AES");
-        IvParameterSpec ivSpec = new IvParameterSpec(aesLogIv.getBytes());
+        Cipher cipher = ciphers.get();
         cipher.init(Cipher.DECRYPT_MODE, keySpec, ivSpec);
 
         byte[] decodedBytes = Base64.getDecoder().decode(cipherText);
@@ -20,7 +20,7 @@ public class ElasticSearchConfig extends AbstractElasticsearchConfiguration {
     @Override
     public RestHighLevelClient elasticsearchClient() {
         ClientConfiguration clientConfiguration = ClientConfiguration.builder()
-                .connectedTo("k9d103a.p.ssafy.io:9200")
+                .connectedTo(env.getProperty("elasticSearch.host", "k9d103a.p.ssafy.io:9200"))
                 .withBasicAuth(env.getProperty("elasticSearch.id"), env.getProperty("elasticSearch.password"))
                 .build();
         return RestClients.create(clientConfiguration).rest();
@@ -0,0 +1,93 @@
+package com.dddev.log.config;
+
+import com.dddev.log.service.*;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.actuate.autoconfigure.metrics.MeterRegistryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+//Micrometer 지표 (관리 포트의 /actuator/prometheus)
+//API별 응답 시간(http.server.requests)은 Spring Boot가 기록하고, 여기서는 서비스가 이미 세고 있는 값들을 지표로 등록한다.
+//Elasticsearch, Redis, OpenAI 호출 시간은 각 서비스에서 직접 기록한다.
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterRegistryCustomizer<?> commonTags() {
+        return registry -> registry.config().commonTags("application", "log");
+    }
+
+    //로그 저장 대기열, 과부하, 실시간 tail, 최근 로그 버퍼
+    @Bean
+    public MeterBinder ingestMetrics(LogIngestService logIngestService, LogOverloadService logOverloadService, LogTailService logTailService,
+                                     LogHotBufferService logHotBufferService) {
+        return registry -> {
+            FunctionCounter.builder("log.hot.reads", logHotBufferService, LogHotBufferService::getHits)
+                    .tag("result", "hit").register(registry);
+            FunctionCounter.builder("log.hot.reads", logHotBufferService, LogHotBufferService::getMisses)
+                    .tag("result", "miss").register(registry);
+            Gauge.builder("log.hot.grounds", logHotBufferService, LogHotBufferService::getGroundCount)
+                    .register(registry);
+            Gauge.builder("log.ingest.queue.depth", logIngestService, LogIngestService::getQueueDepth)
+                    .description("저장 대기열에 쌓인 로그 수").register(registry);
+            Gauge.builder("log.ingest.queue.capacity", logIngestService, LogIngestService::getQueueCapacity)
+                    .register(registry);
+            Gauge.builder("log.ingest.queue.usage", logIngestService, LogIngestService::getQueueUsage)
+                    .description("저장 대기열(WAL이면 디스크) 적재율").register(registry);
+            Gauge.builder("log.ingest.flush.recent", logIngestService, LogIngestService::getRecentFlushMillis)
+                    .description("최근 bulk 저장 시간 이동 평균").baseUnit("milliseconds").register(registry);
+            FunctionCounter.builder("log.ingest.lines", logIngestService, a -> a.getStats().getEnqueued())
+                    .tag("result", "enqueued").register(registry);
+            FunctionCounter.builder("log.ingest.lines", logIngestService, a -> a.getStats().getRejected())
+                    .tag("result", "rejected").register(registry);
+            FunctionCounter.builder("log.ingest.lines", logIngestService, a -> a.getStats().getFlushed())
+                    .tag("result", "flushed").register(registry);
+            FunctionCounter.builder("log.ingest.lines", logIngestService, a -> a.getStats().getFailed())
+                    .tag("result", "failed").register(registry);
+            Gauge.builder("log.overload.pressure", logOverloadService, LogOverloadService::getPressure)
+                    .register(registry);
+            FunctionCounter.builder("log.overload.requests", logOverloadService, LogOverloadService::getThrottledCount)
+                    .tag("action", "throttled").register(registry);
+            FunctionCounter.builder("log.overload.requests", logOverloadService, LogOverloadService::getShedCount)
+                    .tag("action", "shed").register(registry);
+            FunctionCounter.builder("log.overload.requests", logOverloadService, LogOverloadService::getQuarantineCount)
+                    .tag("action", "quarantined").register(registry);
+            Gauge.builder("log.tail.subscribers", logTailService, LogTailService::getSubscriberCount)
+                    .register(registry);
+        };
+    }
+
+    //GPT 실행기, 답변 캐시, 미리 분석
+    @Bean
+    public MeterBinder gptMetrics(GptExecutorService gptExecutorService, ChatCacheService chatCacheService, LogAnalysisService logAnalysisService) {
+        return registry -> {
+            Gauge.builder("log.gpt.executor.running", gptExecutorService, GptExecutorService::getRunning)
+                    .register(registry);
+            Gauge.builder("log.gpt.executor.queued", gptExecutorService, GptExecutorService::getQueued)
+                    .register(registry);
+            FunctionCounter.builder("log.gpt.executor.requests", gptExecutorService, GptExecutorService::getSubmitted)
+                    .tag("result", "submitted").register(registry);
+            FunctionCounter.builder("log.gpt.executor.requests", gptExecutorService, GptExecutorService::getRetried)
+                    .tag("result", "retried").register(registry);
+            FunctionCounter.builder("log.gpt.executor.requests", gptExecutorService, GptExecutorService::getRejected)
+                    .tag("result", "rejected").register(registry);
+            FunctionCounter.builder("log.gpt.executor.requests", gptExecutorService, GptExecutorService::getFailed)
+                    .tag("result", "failed").register(registry);
+            //hit / (hit + miss + coalesced)로 캐시 적중률
+            FunctionCounter.builder("log.gpt.cache.requests", chatCacheService, ChatCacheService::getHits)
+                    .tag("result", "hit").register(registry);
+            FunctionCounter.builder("log.gpt.cache.requests", chatCacheService, ChatCacheService::getMisses)
+                    .tag("result", "miss").register(registry);
+            FunctionCounter.builder("log.gpt.cache.requests", chatCacheService, ChatCacheService::getCoalesced)
+                    .tag("result", "coalesced").register(registry);
+            FunctionCounter.builder("log.gpt.analysis", logAnalysisService, LogAnalysisService::getPrecomputed)
+                    .tag("result", "precomputed").register(registry);
+            FunctionCounter.builder("log.gpt.analysis", logAnalysisService, LogAnalysisService::getSkipped)
+                    .tag("result", "skipped").register(registry);
+            FunctionCounter.builder("log.gpt.analysis", logAnalysisService, LogAnalysisService::getServed)
+                    .tag("result", "served").register(registry);
+        };
+    }
+}
@@ -5,18 +5,30 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+
 @Configuration
 public class OpenAIRestTemplateConfig  {
 
     @Value("${openai.api.key}")
     private String openaiApiKey;
+    @Value("${openai.connect-timeout-ms:5000}")
+    private int connectTimeoutMs;
+    @Value("${openai.read-timeout-ms:120000}")
+    private int readTimeoutMs;
 
     @Bean
     @Qualifier("openaiRestTemplate")
     public RestTemplate openaiRestTemplate() {
-        RestTemplate restTemplate = new RestTemplate();
+        //응답이 없는 OpenAI 호출이 worker 스레드를 계속 잡지 않도록 연결, 읽기 시간 제한
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(connectTimeoutMs);
+        requestFactory.setReadTimeout(readTimeoutMs);
+        RestTemplate restTemplate = new RestTemplate(requestFactory);
         restTemplate.getInterceptors().add((request, body, execution) -> {
             request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
             request.getHeaders().add("Authorization", "Bearer " + openaiApiKey);
@@ -24,4 +36,12 @@ public class OpenAIRestTemplateConfig  {
         });
         return restTemplate;
     }
+
+    //스트리밍 응답용 비동기 HTTP 클라이언트
+    @Bean
+    public HttpClient openaiHttpClient() {
+        return HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+    }
 }
@@ -2,18 +2,32 @@ package com.dddev.log.controller;
 
 import com.dddev.log.dto.ResponseVO;
 import com.dddev.log.dto.req.ChatGptReq;
+import com.dddev.log.dto.req.ChatReq;
+import com.dddev.log.dto.res.GptQuotaRes;
 import com.dddev.log.exception.ChatGptException;
 import com.dddev.log.exception.ElasticSearchException;
 import com.dddev.log.exception.UserUnAuthGptException;
 import com.dddev.log.service.ChatService;
+import com.dddev.log.service.ChatStreamService;
+import com.dddev.log.service.GptExecutorService;
+import com.dddev.log.service.LogAnalysisService;
 import com.dddev.log.service.UserGptAccessService;
 import io.swagger.annotations.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.elasticsearch.NoSuchIndexException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Api(tags = {"CHAT GPT 관련 API"})
 @RestController
@@ -24,80 +38,154 @@ import org.springframework.web.bind.annotation.*;
 public class gptcontroller {
 
     private final ChatService chatService;
+    private final ChatStreamService chatStreamService;
+    private final LogAnalysisService logAnalysisService;
     private final UserGptAccessService userGptAccessService;
 
+    @Value("${log.chat.request-timeout-ms:180000}")
+    private long requestTimeoutMs;
+
     @ApiOperation(value = "일반 질문을 chat gpt가 대답해주는 API // 프롬프터 적용 X")
     @ApiResponses(
-            value = {@ApiResponse(code = 400, message = "GPT 요청 과다"),
+            value = {@ApiResponse(code = 400, message = "GPT 사용 한도(token) 초과"),
                     @ApiResponse(code = 401, message = "header의 group_id가 존재하지 않을 때"),
                     @ApiResponse(code = 404, message = "저장된 로그가 없을 때"),
-                    @ApiResponse(code = 500, message = "서버 내부 오류")})
+                    @ApiResponse(code = 500, message = "서버 내부 오류"),
+                    @ApiResponse(code = 502, message = "GPT 응답 실패"),
+                    @ApiResponse(code = 503, message = "GPT 요청 대기열이 가득 찼을 때"),
+                    @ApiResponse(code = 504, message = "GPT 응답 시간 초과")})
     @PostMapping("")
-    public ResponseEntity<ResponseVO<String>> chat(
+    public DeferredResult<ResponseEntity<ResponseVO<String>>> chat(
             @ApiParam(value = "그라운드 ID", required = true)  @RequestHeader String groundId,
+            @ApiParam(value = "사용자 ID (인증하지 않는 값이라 사용자별 한도는 참고용, 실제 한도는 그라운드별)") @RequestHeader(required = false) String userId,
             @ApiParam(value = "GPT에게 할 질문", required = true)  @RequestBody ChatGptReq chatGptReq) {
-            if (chatGptReq.getQuestion().equals("")) {
-                throw new ChatGptException.IncorrectQuestion("질문을 입력해주세요.");
-            }
-            try {
-                log.info("GROUND ID : {}, /chat, POST 요청", groundId);
-                userGptAccessService.count(groundId);
-                String result = "일반 질문 분석 완료!";
-                String response = chatService.chatGpt(groundId, chatGptReq.getQuestion());
-                log.info("GROUND ID : {}, 질문 {}에 대한 답변 완료", groundId, chatGptReq.getQuestion());
-                log.info("GROUND ID : {}, /chat, POST 응답", groundId);
-                return ResponseEntity.status(HttpStatus.OK).body(new ResponseVO<>(HttpStatus.OK.value(),
-                        result, response));
-            }catch (UserUnAuthGptException e){
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ResponseVO<>(HttpStatus.BAD_REQUEST.value(),
-                        e.getMessage(), null));
-            }catch (ElasticSearchException e){
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResponseVO<>(HttpStatus.NOT_FOUND.value(),
-                        e.getMessage(), null));
-            } catch (NoSuchIndexException e) {
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new ResponseVO<>(HttpStatus.UNAUTHORIZED.value(),
-                        "잘못된 ground id 접근입니다.", null));
-            } catch (Exception e) {
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ResponseVO<>(HttpStatus.INTERNAL_SERVER_ERROR.value(),
-                        e.getMessage(), null));
-            }
+        if (chatGptReq.getQuestion().equals("")) {
+            throw new ChatGptException.IncorrectQuestion("질문을 입력해주세요.");
         }
+        log.info("GROUND ID : {}, /chat, POST 요청", groundId);
+        return answer(groundId, "/chat, POST", "일반 질문 분석 완료!",
+                () -> chatService.chatGpt(groundId, userId, chatGptReq.getQuestion()));
+    }
 
     //사용자가 로그를 입력해서 chat gpt가 자동으로 분석하는 API
     @ApiOperation(value = "사용자가 로그를 입력해서 chat gpt가 자동으로 분석하는 API // 로그 프롬프터 적용")
     @ApiResponses(
-            value = {@ApiResponse(code = 400, message = "GPT 요청 과다"),
+            value = {@ApiResponse(code = 400, message = "GPT 사용 한도(token) 초과"),
                     @ApiResponse(code = 401, message = "header의 ground_id가 존재하지 않을 때"),
                     @ApiResponse(code = 404, message = "저장된 로그가 없을 때"),
-                    @ApiResponse(code = 500, message = "서버 내부 오류")})
+                    @ApiResponse(code = 500, message = "서버 내부 오류"),
+                    @ApiResponse(code = 502, message = "GPT 응답 실패"),
+                    @ApiResponse(code = 503, message = "GPT 요청 대기열이 가득 찼을 때"),
+                    @ApiResponse(code = 504, message = "GPT 응답 시간 초과")})
     @PostMapping("/analyze")
-    public ResponseEntity<ResponseVO<String>> analzeLog(
+    public DeferredResult<ResponseEntity<ResponseVO<String>>> analzeLog(
+            @ApiParam(value = "그라운드 ID", required = true)  @RequestHeader String groundId,
+            @ApiParam(value = "사용자 ID (인증하지 않는 값이라 사용자별 한도는 참고용, 실제 한도는 그라운드별)") @RequestHeader(required = false) String userId,
+            @ApiParam(value = "GPT에게 할 질문", required = true)  @RequestBody ChatGptReq chatGptReq) {
+        if (chatGptReq.getQuestion().equals("")) {
+            throw new ChatGptException.IncorrectQuestion("질문을 입력해주세요.");
+        }
+        log.info("GROUND ID : {}, /chat/analyze, POST 요청", groundId);
+        return answer(groundId, "/chat/analyze, POST", "사용자 로그 분석 완료!",
+                () -> chatService.chatGptLog(groundId, userId, chatGptReq.getQuestion()));
+    }
+
+    //최근 로그를 불러와서 오류 위주로 분석하기
+    @ApiOperation(value = "최근 저장된 로그에서 오류와 스택트레이스 위주로 골라 chat gpt가 자동으로 분석하는 API (ERROR 급증 때 미리 분석된 결과가 있으면 바로 반환)")
+    @ApiResponses(
+            value = {@ApiResponse(code = 400, message = "GPT 사용 한도(token) 초과"),
+                    @ApiResponse(code = 401, message = "header의 group_id가 존재하지 않을 때"),
+                    @ApiResponse(code = 404, message = "저장된 로그가 없을 때"),
+                    @ApiResponse(code = 500, message = "서버 내부 오류"),
+                    @ApiResponse(code = 502, message = "GPT 응답 실패"),
+                    @ApiResponse(code = 503, message = "GPT 요청 대기열이 가득 찼을 때"),
+                    @ApiResponse(code = 504, message = "GPT 응답 시간 초과")})
+    @GetMapping("/analyze")
+    public DeferredResult<ResponseEntity<ResponseVO<String>>> analyzeLogAuto(
+            @ApiParam(value = "그라운드 ID", required = true)  @RequestHeader String groundId,
+            @ApiParam(value = "사용자 ID (인증하지 않는 값이라 사용자별 한도는 참고용, 실제 한도는 그라운드별)") @RequestHeader(required = false) String userId) {
+        log.info("GROUND ID : {}, /chat/analyze, GET 요청", groundId);
+        //ERROR 급증 때 미리 분석해 둔 결과가 있으면 GPT 호출 없이 바로 반환
+        LogAnalysisService.Analysis analysis = logAnalysisService.getAnalysis(groundId);
+        if (analysis != null) {
+            log.info("GROUND ID : {}, /chat/analyze, GET 응답 ({} 미리 분석)", groundId, analysis.getCreatedAt());
+            DeferredResult<ResponseEntity<ResponseVO<String>>> deferred = new DeferredResult<>();
+            deferred.setResult(ResponseEntity.status(HttpStatus.OK).body(new ResponseVO<>(HttpStatus.OK.value(),
+                    "미리 분석된 결과입니다. (" + analysis.getCreatedAt().withNano(0) + ")", analysis.getAnswer())));
+            return deferred;
+        }
+        return answer(groundId, "/chat/analyze, GET", "최근 로그를 불러 분석 완료",
+                () -> logAnalysisService.analyze(groundId, userId));
+    }
+
+    //일반 질문 답변을 SSE로 스트리밍
+    @ApiOperation(value = "일반 질문 답변을 SSE로 나눠 보내는 API (message 이벤트: JSON {content: 답변 조각}, done 이벤트: 완료, error 이벤트: 실패)")
+    @ApiResponses(
+            value = {@ApiResponse(code = 400, message = "GPT 사용 한도(token) 초과"),
+                    @ApiResponse(code = 401, message = "header의 group_id가 존재하지 않을 때"),
+                    @ApiResponse(code = 404, message = "저장된 로그가 없을 때"),
+                    @ApiResponse(code = 500, message = "서버 내부 오류"),
+                    @ApiResponse(code = 503, message = "GPT 요청 대기열이 가득 찼을 때")})
+    @PostMapping(value = "/stream", produces = {MediaType.TEXT_EVENT_STREAM_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<?> chatStream(
             @ApiParam(value = "그라운드 ID", required = true)  @RequestHeader String groundId,
+            @ApiParam(value = "사용자 ID (인증하지 않는 값이라 사용자별 한도는 참고용, 실제 한도는 그라운드별)") @RequestHeader(required = false) String userId,
             @ApiParam(value = "GPT에게 할 질문", required = true)  @RequestBody ChatGptReq chatGptReq) {
         if (chatGptReq.getQuestion().equals("")) {
             throw new ChatGptException.IncorrectQuestion("질문을 입력해주세요.");
         }
+        log.info("GROUND ID : {}, /chat/stream, POST 요청", groundId);
+        return stream(groundId, userId, GptExecutorService.Priority.INTERACTIVE, () -> chatService.chatRequest(groundId, chatGptReq.getQuestion()));
+    }
+
+    //사용자 로그 분석 답변을 SSE로 스트리밍
+    @ApiOperation(value = "사용자가 입력한 로그 분석 답변을 SSE로 나눠 보내는 API (message 이벤트: JSON {content: 답변 조각}, done 이벤트: 완료, error 이벤트: 실패)")
+    @ApiResponses(
+            value = {@ApiResponse(code = 400, message = "GPT 사용 한도(token) 초과"),
+                    @ApiResponse(code = 401, message = "header의 ground_id가 존재하지 않을 때"),
+                    @ApiResponse(code = 404, message = "저장된 로그가 없을 때"),
+                    @ApiResponse(code = 500, message = "서버 내부 오류"),
+                    @ApiResponse(code = 503, message = "GPT 요청 대기열이 가득 찼을 때")})
+    @PostMapping(value = "/analyze/stream", produces = {MediaType.TEXT_EVENT_STREAM_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<?> analyzeLogStream(
+            @ApiParam(value = "그라운드 ID", required = true)  @RequestHeader String groundId,
+            @ApiParam(value = "사용자 ID (인증하지 않는 값이라 사용자별 한도는 참고용, 실제 한도는 그라운드별)") @RequestHeader(required = false) String userId,
+            @ApiParam(value = "GPT에게 할 질문", required = true)  @RequestBody ChatGptReq chatGptReq) {
+        if (chatGptReq.getQuestion().equals("")) {
+            throw new ChatGptException.IncorrectQuestion("질문을 입력해주세요.");
+        }
+        log.info("GROUND ID : {}, /chat/analyze/stream, POST 요청", groundId);
+        return stream(groundId, userId, GptExecutorService.Priority.INTERACTIVE, () -> chatService.logRequest(groundId, chatGptReq.getQuestion()));
+    }
+
+    //최근 로그 분석 답변을 SSE로 스트리밍
+    @ApiOperation(value = "최근 저장된 로그 분석 답변을 SSE로 나눠 보내는 API (message 이벤트: JSON {content: 답변 조각}, done 이벤트: 완료, error 이벤트: 실패)")
+    @ApiResponses(
+            value = {@ApiResponse(code = 400, message = "GPT 사용 한도(token) 초과"),
+                    @ApiResponse(code = 401, message = "header의 group_id가 존재하지 않을 때"),
+                    @ApiResponse(code = 404, message = "저장된 로그가 없을 때"),
+                    @ApiResponse(code = 500, message = "서버 내부 오류"),
+                    @ApiResponse(code = 503, message = "GPT 요청 대기열이 가득 찼을 때")})
+    @GetMapping(value = "/analyze/stream", produces = {MediaType.TEXT_EVENT_STREAM_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<?> analyzeLogAutoStream(
+            @ApiParam(value = "그라운드 ID", required = true)  @RequestHeader String groundId,
+            @ApiParam(value = "사용자 ID (인증하지 않는 값이라 사용자별 한도는 참고용, 실제 한도는 그라운드별)") @RequestHeader(required = false) String userId) {
+        log.info("GROUND ID : {}, /chat/analyze/stream, GET 요청", groundId);
+        return stream(groundId, userId, GptExecutorService.Priority.AUTO, () -> chatService.logAutoRequest(groundId));
+    }
+
+    //GPT 사용 한도 조회
+    @ApiOperation(value = "최근 1시간 GPT 사용 token과 남은 한도를 조회하는 API")
+    @ApiResponses(
+            value = {@ApiResponse(code = 200, message = "GPT 사용 한도 조회 완료"),
+                    @ApiResponse(code = 500, message = "서버 내부 오류")})
+    @GetMapping("/quota")
+    public ResponseEntity<ResponseVO<GptQuotaRes>> getQuota(
+            @ApiParam(value = "그라운드 ID", required = true)  @RequestHeader String groundId,
+            @ApiParam(value = "사용자 ID (인증하지 않는 값이라 사용자별 한도는 참고용, 실제 한도는 그라운드별)") @RequestHeader(required = false) String userId) {
         try{
-            log.info("GROUND ID : {}, /chat/analyze, POST 요청", groundId);
-            userGptAccessService.count(groundId);
-            String result = "사용자 로그 분석 완료!";
-            String response = chatService.chatGptLog(groundId, chatGptReq.getQuestion());
-            log.info("GROUND ID : {}, 로그 {}에 대한 답변 완료", groundId, chatGptReq.getQuestion());
-            log.info("GROUND ID : {}, /chat/analyze, POST 응답", groundId);
             return ResponseEntity.status(HttpStatus.OK).body(new ResponseVO<>(HttpStatus.OK.value(),
-                    result, response));
-        }catch (UserUnAuthGptException e) {
-            log.error(e.getMessage());
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ResponseVO<>(HttpStatus.BAD_REQUEST.value(),
-                    e.getMessage(), null));
-        }catch (ElasticSearchException e){
-            log.error(e.getMessage());
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResponseVO<>(HttpStatus.NOT_FOUND.value(),
-                    e.getMessage(), null));
-        }catch (NoSuchIndexException e){
-            log.error(e.getMessage());
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new ResponseVO<>(HttpStatus.UNAUTHORIZED.value(),
-                    "잘못된 ground id 접근입니다.", null));
+                    "GPT 사용 한도 조회 완료", userGptAccessService.getQuota(groundId, userId)));
         }catch (Exception e){
             log.error(e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ResponseVO<>(HttpStatus.INTERNAL_SERVER_ERROR.value(),
@@ -105,40 +193,69 @@ public class gptcontroller {
         }
     }
 
-    //최근 로그 20줄 불러와서 분석하기
-    @ApiOperation(value = "최근 저장된 로그 20줄을 불러와서 chat gpt가 자동으로 분석하는 API // 테스트")
-    @ApiResponses(
-            value = {@ApiResponse(code = 400, message = "GPT 요청 과다"),
-                    @ApiResponse(code = 401, message = "header의 group_id가 존재하지 않을 때"),
-                    @ApiResponse(code = 404, message = "저장된 로그가 없을 때"),
-                    @ApiResponse(code = 500, message = "서버 내부 오류")})
-    @GetMapping("/analyze")
-    public ResponseEntity<ResponseVO<String>> analyzeLogAuto(
-            @ApiParam(value = "그라운드 ID", required = true)  @RequestHeader String groundId) {
+    //GPT 답변을 기다리는 동안 요청 스레드를 반환, 클라이언트가 끊기거나 시간이 초과되면 GPT 요청도 취소
+    private DeferredResult<ResponseEntity<ResponseVO<String>>> answer(String groundId, String uri, String result,
+                                                                     Callable<CompletableFuture<String>> call) {
+        DeferredResult<ResponseEntity<ResponseVO<String>>> deferred = new DeferredResult<>(requestTimeoutMs);
+        CompletableFuture<String> future;
         try{
-            log.info("GROUND ID : {}, /chat/analyze, GET 요청", groundId);
-            userGptAccessService.count(groundId);
-            String result = "최근 로그를 불러 분석 완료";
-            String response = chatService.chatGptLogAuto(groundId);
-            log.info("GROUND ID : {}, 최근 로그 20개에 대한 답변 완료", groundId);
-            log.info("GROUND ID : {}, /chat/analyze, GET 응답", groundId);
-            return ResponseEntity.status(HttpStatus.OK).body(new ResponseVO<>(HttpStatus.OK.value(),
-                    result, response));
-        }catch (UserUnAuthGptException e){
+            future = call.call();
+        }catch (Exception e){
+            deferred.setResult(error(e));
+            return deferred;
+        }
+        deferred.onTimeout(() -> {
+            future.cancel(true);
+            log.error("GROUND ID : {}, {} GPT 응답 시간 초과", groundId, uri);
+            deferred.setResult(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(new ResponseVO<>(HttpStatus.GATEWAY_TIMEOUT.value(),
+                    "GPT 응답 시간이 초과되었습니다.", null)));
+        });
+        deferred.onError(e -> future.cancel(true));
+        future.whenComplete((response, e) -> {
+            if (e == null) {
+                log.info("GROUND ID : {}, {} 응답", groundId, uri);
+                deferred.setResult(ResponseEntity.status(HttpStatus.OK).body(new ResponseVO<>(HttpStatus.OK.value(),
+                        result, response)));
+            } else if (!(e instanceof CancellationException)) {
+                deferred.setResult(error(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e));
+            }
+        });
+        return deferred;
+    }
+
+    //스트리밍 시작, 시작 전 오류는 기존 API와 같은 응답으로
+    private ResponseEntity<?> stream(String groundId, String userId, GptExecutorService.Priority priority, Callable<ChatReq> request) {
+        try{
+            SseEmitter emitter = chatStreamService.stream(groundId, userId, priority, request.call());
+            return ResponseEntity.status(HttpStatus.OK).contentType(MediaType.TEXT_EVENT_STREAM).body(emitter);
+        }catch (Exception e){
+            return error(e);
+        }
+    }
+
+    private ResponseEntity<ResponseVO<String>> error(Throwable e) {
+        log.error(e.getMessage());
+        if (e instanceof UserUnAuthGptException) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ResponseVO<>(HttpStatus.BAD_REQUEST.value(),
                     e.getMessage(), null));
-        }catch (ElasticSearchException e){
-            log.error(e.getMessage());
+        }
+        if (e instanceof ElasticSearchException) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResponseVO<>(HttpStatus.NOT_FOUND.value(),
                     e.getMessage(), null));
-        }catch (NoSuchIndexException e){
-            log.error(e.getMessage());
+        }
+        if (e instanceof NoSuchIndexException) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new ResponseVO<>(HttpStatus.UNAUTHORIZED.value(),
                     "잘못된 ground id 접근입니다.", null));
-        }catch (Exception e){
-            log.error(e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ResponseVO<>(HttpStatus.INTERNAL_SERVER_ERROR.value(),
+        }
+        if (e instanceof ChatGptException.BusyException) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new ResponseVO<>(HttpStatus.SERVICE_UNAVAILABLE.value(),
+                    e.getMessage(), null));
+        }
+        if (e instanceof ChatGptException.GptExcetpion) {
+            return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(new ResponseVO<>(HttpStatus.BAD_GATEWAY.value(),
                     e.getMessage(), null));
         }
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ResponseVO<>(HttpStatus.INTERNAL_SERVER_ERROR.value(),
+                e.getMessage(), null));
     }
 }
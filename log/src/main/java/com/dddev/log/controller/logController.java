@@ -1,29 +1,46 @@
 package com.dddev.log.controller;
 
+import com.dddev.log.dto.BoundedPage;
+import com.dddev.log.dto.CursorPage;
 import com.dddev.log.dto.ElasticSearchLog;
 import com.dddev.log.dto.ResponseVO;
 import com.dddev.log.dto.req.LogReq;
 import com.dddev.log.dto.req.UserAuthReq;
+import com.dddev.log.dto.res.IngestStatsRes;
+import com.dddev.log.dto.res.LogBulkRes;
+import com.dddev.log.dto.res.LogMigrateRes;
+import com.dddev.log.dto.res.LogQuotaRes;
 import com.dddev.log.dto.res.LogRes;
 import com.dddev.log.dto.res.PageableRes;
 import com.dddev.log.dto.res.TokenRes;
 import com.dddev.log.exception.ElasticSearchException;
+import com.dddev.log.exception.LogIngestException;
+import com.dddev.log.exception.LogTailException;
 import com.dddev.log.exception.UserUnAuthException;
 import com.dddev.log.service.ElasticSearchLogService;
 import com.dddev.log.service.GroundAuthService;
+import com.dddev.log.service.LogIngestService;
+import com.dddev.log.service.LogOverloadService;
+import com.dddev.log.service.LogTailService;
 import com.dddev.log.service.UserLogAccessService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.annotations.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.elasticsearch.NoSuchIndexException;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.util.UriUtils;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.regex.PatternSyntaxException;
 
 @Api(tags = {"로그 관련 API"})
 @RestController
@@ -36,6 +53,13 @@ public class logController {
     private final ElasticSearchLogService elasticSearchLogService;
     private final GroundAuthService groundAuthService;
     private final UserLogAccessService userLogAccessService;
+    private final LogOverloadService logOverloadService;
+    private final LogIngestService logIngestService;
+    private final LogTailService logTailService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${log.bulk.max-size:5000}")
+    private int bulkMaxSize;
 
     //토큰 저장
     @PostMapping("/auth")
@@ -86,12 +110,14 @@ public class logController {
     }
 
     //로그 저장
-    @ApiOperation(value = "로그를 저장하는 API")
+    @ApiOperation(value = "로그를 저장 대기열에 넣는 API (대기열에서 bulk로 저장)")
     @ApiResponses(
-            value = {@ApiResponse(code = 400, message = "로그 요청이 비정상적으로 많을 때"),
+            value = {@ApiResponse(code = 202, message = "로그 저장 요청 완료"),
+                    @ApiResponse(code = 429, message = "한도 초과, 과부하, 격리 중일 때 (Retry-After 후 다시 시도)"),
                     @ApiResponse(code = 401, message = "토큰이 유효하지 않을 때"),
                     @ApiResponse(code = 409, message = "저장된 Ground_ID가 없을 때"),
-                    @ApiResponse(code = 500, message = "서버 내부 오류")})
+                    @ApiResponse(code = 500, message = "서버 내부 오류"),
+                    @ApiResponse(code = 503, message = "로그 저장 대기열이 가득 찼을 때")})
     @PostMapping("")
     public ResponseEntity<ResponseVO<?>> saveLog(
             @ApiParam(value = "자동으로 저장 되는 로그", required = true) @RequestBody LogReq logReq,
@@ -101,17 +127,191 @@ public class logController {
             log.info("TOKEN : {}, /log, POST 요청", token);
             String groundId = groundAuthService.checkValid(token);
             log.info("GROUND ID : {}, /log, POST 요청", groundId);
-            LocalDateTime localDateTime = LocalDateTime.now();
-            userLogAccessService.count(groundId);
-            elasticSearchLogService.save(groundId, ElasticSearchLog.builder().localDateTime(localDateTime).log(logReq.getLog()).build());
-            log.info("GROUND ID : {}, 로그 {} 저장 완료 ", groundId, logReq.getLog());
+            ElasticSearchLog elasticSearchLog = elasticSearchLogService.received(logReq.getLocalDateTime(), logReq.getLog(), LocalDateTime.now());
+            LocalDateTime localDateTime = elasticSearchLog.getLocalDateTime();
+            if (!logOverloadService.admit(groundId, List.of(elasticSearchLog))[0]) {
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(new ResponseVO<>(HttpStatus.ACCEPTED.value(),
+                        "과부하로 낮은 레벨 로그는 저장하지 않았습니다.", new LogRes(localDateTime, logReq.getLog())));
+            }
+            if (!logIngestService.enqueue(groundId, elasticSearchLog)) {
+                throw new LogIngestException.QueueFullException("로그 저장 대기열이 가득 찼습니다. 잠시 후 다시 시도하세요.");
+            }
+            log.info("GROUND ID : {}, 로그 {} 저장 요청 완료 ", groundId, logReq.getLog());
             log.info("GROUND ID : {}, /log, POST 응답", groundId);
-            return ResponseEntity.status(HttpStatus.CREATED).body(new ResponseVO<>(HttpStatus.CREATED.value(),
-                            "로그 저장 완료", new LogRes(localDateTime, logReq.getLog())));
-        }catch (UserUnAuthException.UnusualRequest e){
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(new ResponseVO<>(HttpStatus.ACCEPTED.value(),
+                            "로그 저장 요청 완료", new LogRes(localDateTime, logReq.getLog())));
+        }catch (LogIngestException.RateLimitedException e){
+            log.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(new ResponseVO<>(HttpStatus.TOO_MANY_REQUESTS.value(), e.getMessage(), null));
+        }catch (UserUnAuthException e){
+            log.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new ResponseVO<>(HttpStatus.UNAUTHORIZED.value(),
+                    "유효 하지 않은 토큰", null));
+        }catch (LogIngestException.QueueFullException e){
+            log.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(new ResponseVO<>(HttpStatus.SERVICE_UNAVAILABLE.value(),
+                    e.getMessage(), null));
+        }catch (ElasticSearchException.NoIndexException e){
+            log.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(new ResponseVO<>(HttpStatus.CONFLICT.value(),
+                    e.getMessage(), null));
+        }catch (Exception e){
             log.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ResponseVO<>(HttpStatus.INTERNAL_SERVER_ERROR.value(),
+                    e.getMessage(), null));
+        }
+    }
+
+    //로그 저장 요청 한도
+    @ApiOperation(value = "그라운드의 로그 저장 한도와 남은 로그 수를 확인하는 API")
+    @ApiResponses(
+            value = {@ApiResponse(code = 500, message = "서버 내부 오류")})
+    @GetMapping("/quota")
+    public ResponseEntity<ResponseVO<LogQuotaRes>> getQuota(
+            @ApiParam(value = "그라운드 ID", required = true) @RequestHeader String groundId) {
+        try{
+            return ResponseEntity.status(HttpStatus.OK).body(new ResponseVO<>(HttpStatus.OK.value(),
+                    "로그 저장 한도 조회 완료", userLogAccessService.getQuota(groundId)));
+        }catch (Exception e){
+            log.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ResponseVO<>(HttpStatus.INTERNAL_SERVER_ERROR.value(),
+                    e.getMessage(), null));
+        }
+    }
+
+    //로그 저장 대기열 상태
+    @ApiOperation(value = "로그 저장 대기열의 적재량과 bulk 저장 시간을 확인하는 API")
+    @ApiResponses(
+            value = {@ApiResponse(code = 200, message = "대기열 상태 조회 완료")})
+    @GetMapping("/ingest/stats")
+    public ResponseEntity<ResponseVO<IngestStatsRes>> getIngestStats() {
+        return ResponseEntity.status(HttpStatus.OK).body(new ResponseVO<>(HttpStatus.OK.value(),
+                "대기열 상태 조회 완료", logIngestService.getStats()));
+    }
+
+    //실시간 로그 tail
+    @ApiOperation(value = "저장되는 로그를 SSE로 실시간 전달하는 API (log 이벤트: 로그 목록, dropped 이벤트: 버려진 로그 수)")
+    @ApiResponses(
+            value = {@ApiResponse(code = 429, message = "그라운드의 구독자가 너무 많을 때"),
+                    @ApiResponse(code = 500, message = "서버 내부 오류")})
+    @GetMapping("/tail")
+    public ResponseEntity<?> tailLog(
+            @ApiParam(value = "그라운드 ID", required = true) @RequestHeader String groundId,
+            @ApiParam(value = "포함할 키워드 (대소문자 무시)") @RequestParam(required = false) String keyword,
+            @ApiParam(value = "로그 레벨 (쉼표로 여러 개)", example = "WARN,ERROR") @RequestParam(required = false) String level,
+            @ApiParam(value = "전송이 밀렸을 때 처리 (DROP_OLDEST, DROP_NEWEST, DISCONNECT)", defaultValue = "DROP_OLDEST") @RequestParam(defaultValue = "DROP_OLDEST") LogTailService.DropPolicy policy) {
+        try{
+            log.info("GROUND ID : {}, /tail, GET 요청", groundId);
+            SseEmitter emitter = logTailService.subscribe(groundId, keyword, level, policy);
+            return ResponseEntity.status(HttpStatus.OK).body(emitter);
+        }catch (LogTailException.TooManySubscribersException e){
+            log.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(new ResponseVO<>(HttpStatus.TOO_MANY_REQUESTS.value(),
+                    e.getMessage(), null));
+        }catch (Exception e){
+            log.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ResponseVO<>(HttpStatus.INTERNAL_SERVER_ERROR.value(),
+                    e.getMessage(), null));
+        }
+    }
+
+    //로그 일괄 저장 (JSON 배열)
+    @ApiOperation(value = "여러 줄의 로그를 한 번에 저장 대기열에 넣는 API (JSON 배열, 대기열에서 bulk로 저장)")
+    @ApiResponses(
+            value = {@ApiResponse(code = 202, message = "모든 로그 저장 요청 완료"),
+                    @ApiResponse(code = 207, message = "일부 로그 저장 요청 실패, 로그별 결과 확인 (대기열이 가득 찬 로그는 503)"),
+                    @ApiResponse(code = 400, message = "로그가 비어 있을 때"),
+                    @ApiResponse(code = 429, message = "한도 초과, 과부하, 격리 중일 때 (Retry-After 후 다시 시도)"),
+                    @ApiResponse(code = 401, message = "토큰이 유효하지 않을 때"),
+                    @ApiResponse(code = 413, message = "한 번에 보낼 수 있는 로그 수 초과"),
+                    @ApiResponse(code = 500, message = "서버 내부 오류")})
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ResponseVO<LogBulkRes>> saveBulkLog(
+            @ApiParam(value = "저장할 로그 목록", required = true) @RequestBody List<LogReq> logReqs,
+            @ApiParam(value = "발급 받은 토큰", required = true) @RequestHeader String token) {
+        return saveBulk(logReqs, token);
+    }
+
+    //로그 일괄 저장 (NDJSON, 한 줄에 LogReq 하나)
+    @ApiOperation(value = "여러 줄의 로그를 한 번에 저장 대기열에 넣는 API (NDJSON, 대기열에서 bulk로 저장)")
+    @ApiResponses(
+            value = {@ApiResponse(code = 202, message = "모든 로그 저장 요청 완료"),
+                    @ApiResponse(code = 207, message = "일부 로그 저장 요청 실패, 로그별 결과 확인 (대기열이 가득 찬 로그는 503)"),
+                    @ApiResponse(code = 400, message = "형식이 잘못 되었을 때"),
+                    @ApiResponse(code = 429, message = "한도 초과, 과부하, 격리 중일 때 (Retry-After 후 다시 시도)"),
+                    @ApiResponse(code = 401, message = "토큰이 유효하지 않을 때"),
+                    @ApiResponse(code = 413, message = "한 번에 보낼 수 있는 로그 수 초과"),
+                    @ApiResponse(code = 500, message = "서버 내부 오류")})
+    @PostMapping(value = "/bulk", consumes = "application/x-ndjson")
+    public ResponseEntity<ResponseVO<LogBulkRes>> saveBulkLogNdjson(
+            @ApiParam(value = "한 줄에 하나씩 저장할 로그", required = true) @RequestBody String body,
+            @ApiParam(value = "발급 받은 토큰", required = true) @RequestHeader String token) {
+        List<LogReq> logReqs = new ArrayList<>();
+        try {
+            for (String line : body.split("\\r?\\n")) {
+                if (line.isBlank()) continue;
+                logReqs.add(objectMapper.readValue(line, LogReq.class));
+            }
+        } catch (JsonProcessingException e) {
+            log.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ResponseVO<>(HttpStatus.BAD_REQUEST.value(),
+                    "NDJSON 형식이 올바르지 않습니다.", null));
+        }
+        return saveBulk(logReqs, token);
+    }
+
+    private ResponseEntity<ResponseVO<LogBulkRes>> saveBulk(List<LogReq> logReqs, String token) {
+        if (logReqs == null || logReqs.isEmpty()) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ResponseVO<>(HttpStatus.BAD_REQUEST.value(),
-                    "비정상적인 많은 요청으로 Token을 삭제합니다. 재발급 받으세요.", null));
+                    "저장할 로그가 없습니다.", null));
+        }
+        if (logReqs.size() > bulkMaxSize) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(new ResponseVO<>(HttpStatus.PAYLOAD_TOO_LARGE.value(),
+                    "한 번에 최대 " + bulkMaxSize + "줄까지 저장할 수 있습니다.", null));
+        }
+        try{
+            log.info("TOKEN : {}, /log/bulk, POST 요청", token);
+            String groundId = groundAuthService.checkValid(token);
+            log.info("GROUND ID : {}, /log/bulk, POST 요청 {}줄", groundId, logReqs.size());
+            LocalDateTime receivedDateTime = LocalDateTime.now();
+            List<ElasticSearchLog> logs = new ArrayList<>(logReqs.size());
+            logReqs.forEach(a -> logs.add(elasticSearchLogService.received(a.getLocalDateTime(), a.getLog(), receivedDateTime)));
+            //과부하로 제외된 로그는 429, 빈 로그는 400으로 표시하고 나머지만 대기열(WAL)에 넣음
+            boolean[] accepted = logOverloadService.admit(groundId, logs);
+            LogBulkRes.Item[] items = new LogBulkRes.Item[logs.size()];
+            List<ElasticSearchLog> admitted = new ArrayList<>(logs.size());
+            for (int i = 0; i < logs.size(); i++) {
+                if (!accepted[i]) {
+                    items[i] = LogBulkRes.Item.builder().index(i).status(HttpStatus.TOO_MANY_REQUESTS.value())
+                            .localDateTime(logs.get(i).getLocalDateTime()).message("과부하로 낮은 레벨 로그는 저장하지 않았습니다.").build();
+                } else if (logs.get(i).getLog() == null || logs.get(i).getLog().isBlank()) {
+                    items[i] = LogBulkRes.Item.builder().index(i).status(HttpStatus.BAD_REQUEST.value())
+                            .localDateTime(logs.get(i).getLocalDateTime()).message("로그가 비어 있습니다.").build();
+                } else {
+                    admitted.add(logs.get(i));
+                }
+            }
+            boolean[] enqueued = admitted.isEmpty() ? new boolean[0] : logIngestService.enqueueAll(groundId, admitted);
+            for (int i = 0, j = 0; i < items.length; i++) {
+                if (items[i] != null) continue;
+                boolean queued = enqueued[j++];
+                items[i] = LogBulkRes.Item.builder().index(i)
+                        .status(queued ? HttpStatus.ACCEPTED.value() : HttpStatus.SERVICE_UNAVAILABLE.value())
+                        .localDateTime(logs.get(i).getLocalDateTime())
+                        .message(queued ? null : "로그 저장 대기열이 가득 찼습니다. 잠시 후 다시 시도하세요.").build();
+            }
+            int success = (int) Arrays.stream(items).filter(a -> a.getStatus() == HttpStatus.ACCEPTED.value()).count();
+            LogBulkRes logBulkRes = new LogBulkRes(items.length, success, items.length - success, Arrays.asList(items));
+            log.info("GROUND ID : {}, 로그 {}줄 중 {}줄 저장 요청 완료", groundId, items.length, success);
+            log.info("GROUND ID : {}, /log/bulk, POST 응답", groundId);
+            HttpStatus status = success == items.length ? HttpStatus.ACCEPTED : HttpStatus.MULTI_STATUS;
+            return ResponseEntity.status(status).body(new ResponseVO<>(status.value(),
+                    "로그 일괄 저장 요청 완료", logBulkRes));
+        }catch (LogIngestException.RateLimitedException e){
+            log.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(new ResponseVO<>(HttpStatus.TOO_MANY_REQUESTS.value(), e.getMessage(), null));
         }catch (UserUnAuthException e){
             log.error(e.getMessage());
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new ResponseVO<>(HttpStatus.UNAUTHORIZED.value(),
@@ -130,7 +330,7 @@ public class logController {
     //로그 저장 테스트
     @ApiOperation(value = "로그 저장 테스트")
     @ApiResponses(
-            value = {@ApiResponse(code = 400, message = "로그 요청이 비정상적으로 많을 때"),
+            value = {@ApiResponse(code = 429, message = "한도 초과, 과부하, 격리 중일 때 (Retry-After 후 다시 시도)"),
                     @ApiResponse(code = 401, message = "토큰이 유효하지 않을 때"),
                     @ApiResponse(code = 409, message = "저장된 groundId가 없을 때"),
                     @ApiResponse(code = 500, message = "서버 내부 오류")})
@@ -142,16 +342,20 @@ public class logController {
         try{
             log.info("GROUND ID : {}, /log/test, POST 요청", groundId);
             LocalDateTime localDateTime = LocalDateTime.now();
-            userLogAccessService.count(groundId);
-            elasticSearchLogService.save(groundId, ElasticSearchLog.builder().localDateTime(localDateTime).log(logReq.getLog()).build());
+            ElasticSearchLog elasticSearchLog = ElasticSearchLog.builder().localDateTime(localDateTime).log(logReq.getLog()).build();
+            if (!logOverloadService.admit(groundId, List.of(elasticSearchLog))[0]) {
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(new ResponseVO<>(HttpStatus.ACCEPTED.value(),
+                        "과부하로 낮은 레벨 로그는 저장하지 않았습니다.", new LogRes(localDateTime, logReq.getLog())));
+            }
+            elasticSearchLogService.save(groundId, elasticSearchLog);
             log.info("GROUND ID : {}, 로그 {} 저장 완료 ", groundId, logReq.getLog());
             log.info("GROUND ID : {}, /log/test, POST 응답", groundId);
             return ResponseEntity.status(HttpStatus.CREATED).body(new ResponseVO<>(HttpStatus.CREATED.value(),
                     "로그 저장 완료", new LogRes(localDateTime, logReq.getLog())));
-        }catch (UserUnAuthException.UnusualRequest e){
+        }catch (LogIngestException.RateLimitedException e){
             log.error(e.getMessage());
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ResponseVO<>(HttpStatus.BAD_REQUEST.value(),
-                    "비정상적인 많은 요청으로 Token을 삭제합니다. 재발급 받으세요.", null));
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(new ResponseVO<>(HttpStatus.TOO_MANY_REQUESTS.value(), e.getMessage(), null));
         }catch (UserUnAuthException e){
             log.error(e.getMessage());
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new ResponseVO<>(HttpStatus.UNAUTHORIZED.value(),
@@ -167,6 +371,31 @@ public class logController {
         }
     }
 
+    //예전 인덱스 이전
+    @ApiOperation(value = "groundId 이름의 예전 인덱스를 날짜별 인덱스(n-gram 검색 매핑)로 옮기는 API")
+    @ApiResponses(
+            value = {@ApiResponse(code = 401, message = "header의 groundId로 된 예전 인덱스가 존재하지 않을 때"),
+                    @ApiResponse(code = 500, message = "서버 내부 오류")})
+    @PostMapping("/migrate")
+    public ResponseEntity<ResponseVO<LogMigrateRes>> migrateLog(
+            @ApiParam(value = "그라운드 ID", required = true) @RequestHeader String groundId) {
+        try{
+            log.info("GROUND ID : {}, /log/migrate, POST 요청", groundId);
+            LogMigrateRes logMigrateRes = elasticSearchLogService.migrateIndex(groundId);
+            log.info("GROUND ID : {}, 인덱스 이전 완료 ", groundId);
+            return ResponseEntity.status(HttpStatus.OK).body(new ResponseVO<>(HttpStatus.OK.value(),
+                    groundId + " 인덱스 이전 완료", logMigrateRes));
+        }catch (ElasticSearchException.NoIndexException e){
+            log.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new ResponseVO<>(HttpStatus.UNAUTHORIZED.value(),
+                    e.getMessage(), null));
+        }catch (Exception e){
+            log.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ResponseVO<>(HttpStatus.INTERNAL_SERVER_ERROR.value(),
+                    e.getMessage(), null));
+        }
+    }
+
     //인덱스 삭제
     @ApiOperation(value = "인덱스 삭제 API")
     @ApiResponses(
@@ -201,24 +430,30 @@ public class logController {
     //전체 로그 불러오기
     @ApiOperation(value = "저장된 로그를 최신 순으로 30개 씩 가져오는 API")
     @ApiResponses(
-            value = {
+            value = {@ApiResponse(code = 400, message = "커서가 올바르지 않을 때"),
                     @ApiResponse(code = 500, message = "서버 내부 오류")})
     @GetMapping("")
     public ResponseEntity<ResponseVO<PageableRes>> getSizeLogFile(
             @ApiParam(value = "그라운드 ID", required = true) @RequestHeader String groundId,
-            @ApiParam(value = "페이지 번호 (1부터 시작)", defaultValue = "1") @RequestParam(name = "page", defaultValue = "1") int page){
+            @ApiParam(value = "페이지 번호 (1부터 시작)", defaultValue = "1") @RequestParam(name = "page", defaultValue = "1") int page,
+            @ApiParam(value = "이전 응답의 nextCursor (있으면 page 대신 이어서 가져오기)") @RequestParam(name = "cursor", required = false) String cursor,
+            @ApiParam(value = "point-in-time 고정 여부 (첫 요청에서만 지정)", defaultValue = "false") @RequestParam(name = "pit", defaultValue = "false") boolean pit){
         String result = "로그 불러오기 완료";
         try {
             log.info("GROUND ID : {}, /log, GET 요청", groundId);
-            Page<ElasticSearchLog> latestLogs = elasticSearchLogService.getLatestLogs(groundId, page - 1);
+            CursorPage<ElasticSearchLog> latestLogs = elasticSearchLogService.getLatestLogs(groundId, page - 1, cursor, pit);
             log.info("GROUND ID : {}, 전체 로그 요청, 전체 페이지 {} 중 페이지 {} 응답 ", groundId, latestLogs.getTotalPages(), latestLogs.getNumber() + 1);
             log.info("GROUND ID : {}, /log, GET 응답", groundId);
             return ResponseEntity.status(HttpStatus.OK).body(new ResponseVO<>(HttpStatus.OK.value(),
-                    result, new PageableRes(latestLogs.getNumber() + 1, latestLogs.getTotalPages(), latestLogs.getContent())));
+                    result, new PageableRes(latestLogs.getNumber() + 1, latestLogs.getTotalPages(), latestLogs.getContent(), latestLogs.getNextCursor())));
         }catch (NoSuchIndexException e){
                 log.error(e.getMessage());
                 return ResponseEntity.status(HttpStatus.OK).body(new ResponseVO<>(HttpStatus.OK.value(),
                         "불러 올 로그가 없습니다", new PageableRes(0, -1, null)));
+        }catch (ElasticSearchException.IncorrectCursorException e){
+            log.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ResponseVO<>(HttpStatus.BAD_REQUEST.value(),
+                    e.getMessage(), null));
         }catch (ElasticSearchException e){
             log.error(e.getMessage());
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResponseVO<>(HttpStatus.NOT_FOUND.value(),
@@ -233,22 +468,29 @@ public class logController {
     //인덱스별 정해진 키워드 가져오기
     @ApiOperation(value = "저장된 로그를 최신 순으로 요청하는 키워드로 가져오는 API")
     @ApiResponses(
-            value = {@ApiResponse(code = 401, message = "header의 groundId가 존재하지 않을 때"),
+            value = {@ApiResponse(code = 400, message = "커서가 올바르지 않을 때"),
+                    @ApiResponse(code = 401, message = "header의 groundId가 존재하지 않을 때"),
                     @ApiResponse(code = 500, message = "서버 내부 오류")})
     @GetMapping("/keyword/{keyword}")
     public ResponseEntity<ResponseVO<PageableRes>> getKeywordLogFile(
             @ApiParam(value = "그라운드 ID", required = true)  @RequestHeader String groundId,
             @ApiParam(value = "검색 할 키워드", required = true)  @PathVariable("keyword") String keyword,
-            @ApiParam(value = "페이지 번호 (1부터 시작)", defaultValue = "1") @RequestParam(name = "page", defaultValue = "1") int page)
+            @ApiParam(value = "페이지 번호 (1부터 시작)", defaultValue = "1") @RequestParam(name = "page", defaultValue = "1") int page,
+            @ApiParam(value = "이전 응답의 nextCursor (있으면 page 대신 이어서 가져오기)") @RequestParam(name = "cursor", required = false) String cursor,
+            @ApiParam(value = "point-in-time 고정 여부 (첫 요청에서만 지정)", defaultValue = "false") @RequestParam(name = "pit", defaultValue = "false") boolean pit)
     {
         try {
             log.info("GROUND ID : {}, /keyword/{keyword}, GET 요청", groundId);
             String result = "로그 키워드 " + keyword + " 불러오기 완료";
-            Page<ElasticSearchLog> keywordtLogs = elasticSearchLogService.getKeywordtLogs(groundId, keyword, page-1);
+            CursorPage<ElasticSearchLog> keywordtLogs = elasticSearchLogService.getKeywordtLogs(groundId, keyword, page-1, cursor, pit);
             log.info("GROUND ID : {}, 키워드 {} 로그 요청 , 전체 페이지 {} 중 페이지 {} 응답 완료 ", groundId, keyword, keywordtLogs.getTotalPages(), keywordtLogs.getNumber() + 1);
             log.info("GROUND ID : {}, /keyword/{keyword}, GET 요청", groundId);
             return ResponseEntity.status(HttpStatus.OK).body(new ResponseVO<>(HttpStatus.OK.value(),
-                    result, new PageableRes(keywordtLogs.getNumber()+1, keywordtLogs.getTotalPages(),keywordtLogs.getContent())));
+                    result, new PageableRes(keywordtLogs.getNumber() + 1, keywordtLogs.getTotalPages(), keywordtLogs.getContent(), keywordtLogs.getNextCursor())));
+        }catch (ElasticSearchException.IncorrectCursorException e){
+            log.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ResponseVO<>(HttpStatus.BAD_REQUEST.value(),
+                    e.getMessage(), null));
         }catch (ElasticSearchException e){
             log.error(e.getMessage());
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResponseVO<>(HttpStatus.NOT_FOUND.value(),
@@ -265,9 +507,15 @@ public class logController {
     }
 
     //인덱스별 정규표현식으로 가져오기
-    @ApiOperation(value = "저장된 로그를 최신 순으로 요청하는 정규표현식으로 가져오는 API")
+    //전체를 검사하면 로그가 많을수록 느려지므로 다음 페이지가 있는지까지만 확인하고, 그때 전체 페이지 수는 최소값(totalPagesLowerBound=true)
+    @ApiOperation(value = "저장된 로그를 최신 순으로 요청하는 정규표현식으로 가져오는 API",
+            notes = "응답 속도를 위해 요청한 페이지와 다음 페이지의 첫 로그까지만 검사합니다. " +
+                    "다음 페이지가 있으면 pageSize는 지금까지 확인한 페이지 수(최소값)이고 totalPagesLowerBound가 true입니다. " +
+                    "마지막 페이지에 도달하면 pageSize는 정확한 전체 페이지 수이고 totalPagesLowerBound가 false입니다. " +
+                    "전체 페이지 수를 보여줄 때는 \"N+ 페이지\"처럼 표시하고, 다음 페이지 여부는 pageNumber < pageSize로 판단하세요.")
     @ApiResponses(
-            value = {@ApiResponse(code = 401, message = "header의 groundId가 존재하지 않을 때"),
+            value = {@ApiResponse(code = 400, message = "정규표현식이 올바르지 않을 때"),
+                    @ApiResponse(code = 401, message = "header의 groundId가 존재하지 않을 때"),
                     @ApiResponse(code = 500, message = "서버 내부 오류")})
     @GetMapping("/regexp")
     public ResponseEntity<ResponseVO<PageableRes>> getRegexpLogFile(
@@ -278,12 +526,63 @@ public class logController {
         try{
             regexp = UriUtils.decode(regexp, "UTF-8");
             log.info("GROUND ID : {}, /regex, GET 요청", groundId);
-            String result = "로그 정규표현식 " + regexp+ " 불러오기 완료";
-            Page<ElasticSearchLog> regexptLogs = elasticSearchLogService.getRegexptLogs(groundId, regexp, page-1);
+            BoundedPage<ElasticSearchLog> regexptLogs = elasticSearchLogService.getRegexptLogs(groundId, regexp, page-1);
+            String result = "로그 정규표현식 " + regexp+ " 불러오기 완료" + (regexptLogs.isTotalExact() ? "" : " (전체 페이지 수는 최소값)");
             log.info("GROUND ID : {}, 정규표현식 {} 로그 요청 , 전체 페이지 {} 중 페이지 {} 응답 완료 ", groundId, regexp, regexptLogs.getTotalPages(), regexptLogs.getNumber() + 1);
             log.info("GROUND ID : {}, /regex, GET 응답", groundId);
             return ResponseEntity.status(HttpStatus.OK).body(new ResponseVO<>(HttpStatus.OK.value(),
-                    result, new PageableRes(regexptLogs.getNumber()+1, regexptLogs.getTotalPages(),regexptLogs.getContent())));
+                    result, new PageableRes(regexptLogs.getNumber()+1, regexptLogs.getTotalPages(),regexptLogs.getContent(), null, !regexptLogs.isTotalExact())));
+        }catch (PatternSyntaxException e){
+            log.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ResponseVO<>(HttpStatus.BAD_REQUEST.value(),
+                    "정규표현식이 올바르지 않습니다.", null));
+        }catch (ElasticSearchException e){
+            log.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResponseVO<>(HttpStatus.NOT_FOUND.value(),
+                    e.getMessage(), null));
+        }catch (NoSuchIndexException e){
+            log.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.OK).body(new ResponseVO<>(HttpStatus.OK.value(),
+                    "불러 올 로그가 없습니다", new PageableRes(0, -1, null)));
+        }catch (Exception e){
+            log.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ResponseVO<>(HttpStatus.INTERNAL_SERVER_ERROR.value(),
+                    e.getMessage(), null));
+        }
+    }
+
+    //레벨, 로거, 로그에 찍힌 시간으로 가져오기
+    @ApiOperation(value = "저장된 로그를 로그에 찍힌 시간 최신 순으로 레벨, 로거, 시간 조건으로 가져오는 API")
+    @ApiResponses(
+            value = {@ApiResponse(code = 400, message = "커서가 올바르지 않을 때"),
+                    @ApiResponse(code = 401, message = "header의 groundId가 존재하지 않을 때"),
+                    @ApiResponse(code = 500, message = "서버 내부 오류")})
+    @GetMapping("/filter")
+    public ResponseEntity<ResponseVO<PageableRes>> getFilterLogFile(
+            @ApiParam(value = "그라운드 ID", required = true) @RequestHeader String groundId,
+            @ApiParam(value = "로그 레벨 (쉼표로 여러 개)", example = "WARN,ERROR") @RequestParam(required = false) String level,
+            @ApiParam(value = "로거 (끝에 *를 붙이면 패키지 단위)", example = "com.dddev.log.*") @RequestParam(required = false) String logger,
+            @ApiParam(value = "로그 시간 검색 시작 (yyyy-MM-dd'T'HH:mm:ss)") @RequestParam(required = false) String startDateTime,
+            @ApiParam(value = "로그 시간 검색 종료 (yyyy-MM-dd'T'HH:mm:ss)") @RequestParam(required = false) String endDateTime,
+            @ApiParam(value = "페이지 번호 (1부터 시작)", defaultValue = "1") @RequestParam(name = "page", defaultValue = "1") int page,
+            @ApiParam(value = "이전 응답의 nextCursor (있으면 page 대신 이어서 가져오기)") @RequestParam(name = "cursor", required = false) String cursor,
+            @ApiParam(value = "point-in-time 고정 여부 (첫 요청에서만 지정)", defaultValue = "false") @RequestParam(name = "pit", defaultValue = "false") boolean pit)
+    {
+        try{
+            log.info("GROUND ID : {}, /filter, GET 요청", groundId);
+            String result = "로그 레벨, 로거 별로 불러오기 완료";
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+            LocalDateTime startTime = startDateTime == null ? null : LocalDateTime.parse(startDateTime, formatter);
+            LocalDateTime endTime = endDateTime == null ? null : LocalDateTime.parse(endDateTime, formatter);
+            CursorPage<ElasticSearchLog> filteredLogs = elasticSearchLogService.getFilteredLogs(groundId, level, logger, startTime, endTime, page-1, cursor, pit);
+            log.info("GROUND ID : {}, 레벨 {} 로거 {} 로그 요청 , 전체 페이지 {} 중 페이지 {} 응답 완료 ", groundId, level, logger, filteredLogs.getTotalPages(), filteredLogs.getNumber() + 1);
+            log.info("GROUND ID : {}, /filter, GET 응답", groundId);
+            return ResponseEntity.status(HttpStatus.OK).body(new ResponseVO<>(HttpStatus.OK.value(),
+                    result, new PageableRes(filteredLogs.getNumber() + 1, filteredLogs.getTotalPages(), filteredLogs.getContent(), filteredLogs.getNextCursor())));
+        }catch (ElasticSearchException.IncorrectCursorException e){
+            log.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ResponseVO<>(HttpStatus.BAD_REQUEST.value(),
+                    e.getMessage(), null));
         }catch (ElasticSearchException e){
             log.error(e.getMessage());
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResponseVO<>(HttpStatus.NOT_FOUND.value(),
@@ -302,14 +601,17 @@ public class logController {
     //인덱스별 시작 시간 끝 시간으로 가져오기
     @ApiOperation(value = "저장된 로그를 최신 순으로 요청하는 시작 시간과 끝 시간으로 가져오는 API")
     @ApiResponses(
-            value = {@ApiResponse(code = 401, message = "header의 groundId가 존재하지 않을 때"),
+            value = {@ApiResponse(code = 400, message = "커서가 올바르지 않을 때"),
+                    @ApiResponse(code = 401, message = "header의 groundId가 존재하지 않을 때"),
                     @ApiResponse(code = 500, message = "서버 내부 오류")})
     @GetMapping("/time")
     public ResponseEntity<ResponseVO<PageableRes>> getTimeLogFile(
             @ApiParam(value = "그라운드 ID", required = true) @RequestHeader String groundId,
             @ApiParam(value = "검색 시작 날짜와 시간 (yyyy-MM-dd'T'HH:mm:ss)", required = true) @RequestParam String startDateTime,
             @ApiParam(value = "검색 종료 날짜와 시간 (yyyy-MM-dd'T'HH:mm:ss)", required = true)  @RequestParam String endDateTime,
-            @ApiParam(value = "페이지 번호 (1부터 시작)", defaultValue = "1") @RequestParam(name = "page", defaultValue = "1") int page)
+            @ApiParam(value = "페이지 번호 (1부터 시작)", defaultValue = "1") @RequestParam(name = "page", defaultValue = "1") int page,
+            @ApiParam(value = "이전 응답의 nextCursor (있으면 page 대신 이어서 가져오기)") @RequestParam(name = "cursor", required = false) String cursor,
+            @ApiParam(value = "point-in-time 고정 여부 (첫 요청에서만 지정)", defaultValue = "false") @RequestParam(name = "pit", defaultValue = "false") boolean pit)
     {
         try{
             log.info("GROUND ID : {}, /time, GET 요청", groundId);
@@ -317,11 +619,15 @@ public class logController {
             DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
             LocalDateTime startTime = LocalDateTime.parse(startDateTime, formatter);
             LocalDateTime endTime = LocalDateTime.parse(endDateTime, formatter);
-            Page<ElasticSearchLog> timetLogs = elasticSearchLogService.getTimetLogs(groundId, startTime, endTime, page-1);
+            CursorPage<ElasticSearchLog> timetLogs = elasticSearchLogService.getTimetLogs(groundId, startTime, endTime, page-1, cursor, pit);
             log.info("GROUND ID : {}, 시간 {} ~ {} 로그 요청 , 전체 페이지 {} 중 페이지 {} 응답 완료 ", groundId, startDateTime, endDateTime, timetLogs.getTotalPages(), timetLogs.getNumber() + 1);
             log.info("GROUND ID : {}, /time, GET 응답", groundId);
             return ResponseEntity.status(HttpStatus.OK).body(new ResponseVO<>(HttpStatus.OK.value(),
-                    result, new PageableRes(timetLogs.getNumber()+1, timetLogs.getTotalPages(),timetLogs.getContent())));
+                    result, new PageableRes(timetLogs.getNumber() + 1, timetLogs.getTotalPages(), timetLogs.getContent(), timetLogs.getNextCursor())));
+        }catch (ElasticSearchException.IncorrectCursorException e){
+            log.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ResponseVO<>(HttpStatus.BAD_REQUEST.value(),
+                    e.getMessage(), null));
         }catch (ElasticSearchException e){
             log.error(e.getMessage());
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResponseVO<>(HttpStatus.NOT_FOUND.value(),
@@ -340,7 +646,8 @@ public class logController {
     //인덱스별 시작 시간 끝 시간으로 키워드로 가져오기
     @ApiOperation(value = "저장된 로그를 최신 순으로, 요청하는 시작 시간과 끝 시간 그리고 키워드로 가져오는 API")
     @ApiResponses(
-            value = {@ApiResponse(code = 401, message = "header의 groundId가 존재하지 않을 때"),
+            value = {@ApiResponse(code = 400, message = "커서가 올바르지 않을 때"),
+                    @ApiResponse(code = 401, message = "header의 groundId가 존재하지 않을 때"),
                     @ApiResponse(code = 404, message = "저장된 로그가 없을 때"),
                     @ApiResponse(code = 500, message = "서버 내부 오류")})
     @GetMapping("/timeandkeyword")
@@ -349,18 +656,24 @@ public class logController {
             @ApiParam(value = "검색 시작 날짜와 시간 (yyyy-MM-dd'T'HH:mm:ss)", required = true)  @RequestParam String startDateTime,
             @ApiParam(value = "검색 종료 날짜와 시간 (yyyy-MM-dd'T'HH:mm:ss)", required = true) @RequestParam String endDateTime,
             @ApiParam(value = "검색 키워드", required = true) @RequestParam String keyword,
-            @ApiParam(value = "페이지 번호 (1부터 시작)", defaultValue = "1") @RequestParam(name = "page", defaultValue = "1") int page) {
+            @ApiParam(value = "페이지 번호 (1부터 시작)", defaultValue = "1") @RequestParam(name = "page", defaultValue = "1") int page,
+            @ApiParam(value = "이전 응답의 nextCursor (있으면 page 대신 이어서 가져오기)") @RequestParam(name = "cursor", required = false) String cursor,
+            @ApiParam(value = "point-in-time 고정 여부 (첫 요청에서만 지정)", defaultValue = "false") @RequestParam(name = "pit", defaultValue = "false") boolean pit) {
         try {
             log.info("GROUND ID : {}, /timeandkeyword, GET 요청", groundId);
             String result = "로그 시간대 별 및 키워드 " + keyword + "로 불러오기 완료";
             DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
             LocalDateTime startTime = LocalDateTime.parse(startDateTime, formatter);
             LocalDateTime endTime = LocalDateTime.parse(endDateTime, formatter);
-            Page<ElasticSearchLog> timeAndKeywordLogs = elasticSearchLogService.getTimeAndKeywordLogs(groundId, startTime, endTime, keyword, page-1);
+            CursorPage<ElasticSearchLog> timeAndKeywordLogs = elasticSearchLogService.getTimeAndKeywordLogs(groundId, startTime, endTime, keyword, page-1, cursor, pit);
             log.info("GROUND ID : {}, 시간 {} ~ {}, 키워드 {} 로그 요청 , 전체 페이지 {} 중 페이지 {} 응답 완료 ", groundId, startDateTime, endDateTime, keyword, timeAndKeywordLogs.getTotalPages(), timeAndKeywordLogs.getNumber() + 1);
             log.info("GROUND ID : {}, /timeandkeyword, GET 응답", groundId);
             return ResponseEntity.status(HttpStatus.OK).body(new ResponseVO<>(HttpStatus.OK.value(),
-                    result, new PageableRes(timeAndKeywordLogs.getNumber()+1, timeAndKeywordLogs.getTotalPages(),timeAndKeywordLogs.getContent())));
+                    result, new PageableRes(timeAndKeywordLogs.getNumber() + 1, timeAndKeywordLogs.getTotalPages(), timeAndKeywordLogs.getContent(), timeAndKeywordLogs.getNextCursor())));
+        }catch (ElasticSearchException.IncorrectCursorException e){
+            log.error(e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ResponseVO<>(HttpStatus.BAD_REQUEST.value(),
+                    e.getMessage(), null));
         } catch (ElasticSearchException e) {
             log.error(e.getMessage());
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResponseVO<>(HttpStatus.NOT_FOUND.value(),
@@ -0,0 +1,21 @@
+package com.dddev.log.dto;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+//전체 수를 끝까지 세지 않을 수 있는 Page (다음 페이지가 있는지까지만 확인했으면 전체 수는 최소값)
+public class BoundedPage<T> extends PageImpl<T> {
+
+    private final boolean totalExact;
+
+    public BoundedPage(List<T> content, Pageable pageable, long total, boolean totalExact) {
+        super(content, pageable, total);
+        this.totalExact = totalExact;
+    }
+
+    public boolean isTotalExact() {
+        return totalExact;
+    }
+}
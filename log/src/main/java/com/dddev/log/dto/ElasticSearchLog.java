@@ -7,11 +7,15 @@ import org.springframework.data.elasticsearch.annotations.DateFormat;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.Mapping;
+import org.springframework.data.elasticsearch.annotations.Setting;
 
 import java.time.LocalDateTime;
 
 @Document(indexName = "ground_id")
-@Builder
+@Setting(settingPath = "elasticsearch/log-settings.json")
+@Mapping(mappingPath = "elasticsearch/log-mapping.json")
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 @Data
@@ -25,4 +29,40 @@ public class ElasticSearchLog {
     @Field(type = FieldType.Text)
     @ApiModelProperty(value="로그", example = "2023-11-03 09:35:13.099 INFO 7960 --- [ main] com.dddev.log.LogApplication")
     private String log;
+
+    @Field(type = FieldType.Keyword)
+    @ApiModelProperty(value="로그 id (같은 시간 로그의 정렬 기준)", example = "0f8fad5b-d9cb-469d-a165-70867728950e")
+    private String logId;
+
+    @Field(type = FieldType.Date, format = DateFormat.custom, pattern = "uuuu-MM-dd'T'HH:mm:ss.SSS'Z'")
+    @ApiModelProperty(value="로그에 찍힌 시간 (Spring Boot 형식 로그일 때)", example = "2023-11-03T09:35:13.099Z")
+    private LocalDateTime eventTime;
+
+    @Field(type = FieldType.Keyword)
+    @ApiModelProperty(value="로그 레벨", example = "INFO")
+    private String level;
+
+    @Field(type = FieldType.Keyword)
+    @ApiModelProperty(value="프로세스 id", example = "7960")
+    private String pid;
+
+    @Field(type = FieldType.Keyword)
+    @ApiModelProperty(value="스레드", example = "main")
+    private String thread;
+
+    @Field(type = FieldType.Keyword)
+    @ApiModelProperty(value="로거", example = "com.dddev.log.LogApplication")
+    private String logger;
+
+    @Field(type = FieldType.Integer)
+    @ApiModelProperty(value="연속으로 같은 줄이 들어와 한 로그로 묶인 수 (묶이지 않았으면 없음)", example = "120")
+    private Integer repeatCount;
+
+    @Field(type = FieldType.Date, format = DateFormat.custom, pattern = "uuuu-MM-dd'T'HH:mm:ss.SSS'Z'")
+    @ApiModelProperty(value="묶인 마지막 줄의 저장 시간", example = "2023-11-14T23:45:36.458Z")
+    private LocalDateTime lastLocalDateTime;
+
+    @Field(type = FieldType.Date, format = DateFormat.custom, pattern = "uuuu-MM-dd'T'HH:mm:ss.SSS'Z'")
+    @ApiModelProperty(value="묶인 마지막 줄에 찍힌 시간", example = "2023-11-03T09:35:23.099Z")
+    private LocalDateTime lastEventTime;
 }
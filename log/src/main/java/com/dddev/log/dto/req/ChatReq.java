@@ -2,11 +2,13 @@ package com.dddev.log.dto.req;
 
 
 import com.dddev.log.dto.Message;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Getter;
 import lombok.Setter;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @Setter
 @Getter
@@ -16,6 +18,12 @@ public class ChatReq {
     private List<Message> messages;
     private int max_tokens;
     private double temperature;
+    //true면 답변을 SSE chunk로 나눠 받음
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean stream;
+    //스트리밍일 때 마지막 chunk로 token 사용량을 받음
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, Object> stream_options;
 
     public ChatReq(String model, String prompt, String role) {
         this.model = model;
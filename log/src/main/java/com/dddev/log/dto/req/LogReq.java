@@ -3,6 +3,9 @@ package com.dddev.log.dto.req;
 import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
 import lombok.*;
+
+import java.time.LocalDateTime;
+
 @Data
 @Builder
 @NoArgsConstructor
@@ -13,4 +16,7 @@ public class LogReq {
     @ApiModelProperty(value = "로그", example = "2023-11-03 09:35:13.099  INFO 7960 --- [           main] com.dddev.log.LogApplication", required = true)
     private String log;
 
+    @ApiModelProperty(value = "클라이언트 로그 발생 시간 (없으면 서버 수신 시간)", example = "2023-11-14T23:45:26.458")
+    private LocalDateTime localDateTime;
+
 }
@@ -12,6 +12,8 @@ import java.util.List;
 public class ChatRes {
 
     private List<Choice> choices;
+    //이번 요청에 쓴 token 수
+    private Usage usage;
     @AllArgsConstructor
     @NoArgsConstructor
     @Setter
@@ -22,4 +24,16 @@ public class ChatRes {
         private Message message;
 
     }
+
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Setter
+    @Getter
+    public static class Usage {
+
+        private long prompt_tokens;
+        private long completion_tokens;
+        private long total_tokens;
+
+    }
 }
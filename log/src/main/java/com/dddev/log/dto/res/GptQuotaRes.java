@@ -0,0 +1,31 @@
+package com.dddev.log.dto.res;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel(value = "GPT 사용 한도 (token)")
+public class GptQuotaRes {
+
+    @ApiModelProperty(value = "창 크기(초) 동안 그라운드가 쓸 수 있는 token 수", example = "200000")
+    private long groundLimit;
+    @ApiModelProperty(value = "최근 창 크기 동안 그라운드가 쓴 token 수", example = "15320")
+    private long groundUsed;
+    @ApiModelProperty(value = "창 크기(초) 동안 사용자가 쓸 수 있는 token 수 (userId가 없으면 0, 인증하지 않는 userId 기준이라 참고용)", example = "50000")
+    private long userLimit;
+    @ApiModelProperty(value = "최근 창 크기 동안 사용자가 쓴 token 수 (userId가 없으면 0)", example = "4210")
+    private long userUsed;
+    @ApiModelProperty(value = "남은 token 수 (그라운드, 사용자 중 적은 쪽)", example = "45790")
+    private long remaining;
+    @ApiModelProperty(value = "창 크기(초)", example = "3600")
+    private long windowSeconds;
+    @ApiModelProperty(value = "현재 창이 끝날 때까지 남은 시간(ms)", example = "1831250")
+    private long resetMillis;
+}
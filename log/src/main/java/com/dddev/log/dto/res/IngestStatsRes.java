@@ -0,0 +1,45 @@
+package com.dddev.log.dto.res;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel(value = "로그 저장 대기열 상태")
+public class IngestStatsRes {
+
+    @ApiModelProperty(value = "대기 중인 로그 수", example = "120")
+    private int queueDepth;
+    @ApiModelProperty(value = "대기열 최대 크기 (WAL 사용 시 0)", example = "65536")
+    private int queueCapacity;
+    @ApiModelProperty(value = "대기열 적재율 (WAL 사용 시 디스크 사용량 / 최대 크기)", example = "0.01")
+    private double queueUsage;
+    @ApiModelProperty(value = "WAL에 남은 로그 크기(byte)", example = "1048576")
+    private long walBytes;
+    @ApiModelProperty(value = "WAL 최대 크기(byte), WAL을 쓰지 않으면 0", example = "1073741824")
+    private long walMaxBytes;
+    @ApiModelProperty(value = "저장에 실패해 retry WAL에서 다시 저장을 기다리는 로그 수", example = "0")
+    private long deferred;
+    @ApiModelProperty(value = "대기열에 들어온 로그 수", example = "100000")
+    private long enqueued;
+    @ApiModelProperty(value = "대기열이 가득 차서 거절된 로그 수", example = "0")
+    private long rejected;
+    @ApiModelProperty(value = "Elasticsearch에 저장된 로그 수", example = "99880")
+    private long flushed;
+    @ApiModelProperty(value = "Elasticsearch 저장에 실패한 로그 수", example = "0")
+    private long failed;
+    @ApiModelProperty(value = "bulk 저장 횟수", example = "250")
+    private long flushCount;
+    @ApiModelProperty(value = "bulk 저장 평균 시간(ms)", example = "35.2")
+    private double avgFlushMillis;
+    @ApiModelProperty(value = "bulk 저장 최대 시간(ms)", example = "210")
+    private long maxFlushMillis;
+    @ApiModelProperty(value = "마지막 bulk 저장 시간(ms)", example = "31")
+    private long lastFlushMillis;
+}
@@ -0,0 +1,45 @@
+package com.dddev.log.dto.res;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel(value = "로그 일괄 저장 결과")
+public class LogBulkRes {
+
+    @ApiModelProperty(value = "요청한 로그 수", example = "3")
+    private int total;
+    @ApiModelProperty(value = "저장 요청 성공 수 (저장 대기열에 들어간 로그)", example = "2")
+    private int success;
+    @ApiModelProperty(value = "저장 요청 실패 수", example = "1")
+    private int failed;
+    @ApiModelProperty(value = "로그별 저장 결과")
+    private List<Item> items;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Item {
+
+        @ApiModelProperty(value = "요청 배열에서의 순서 (0부터 시작)", example = "0")
+        private int index;
+        @ApiModelProperty(value = "결과 코드 (202 저장 요청 완료, 400 빈 로그, 429 과부하, 503 대기열 가득 참)", example = "202")
+        private int status;
+        @ApiModelProperty(value = "로그 저장 시간", example = "2023-11-14T23:45:26.458")
+        private LocalDateTime localDateTime;
+        @ApiModelProperty(value = "실패 사유", example = "로그가 비어 있습니다.")
+        private String message;
+
+    }
+}
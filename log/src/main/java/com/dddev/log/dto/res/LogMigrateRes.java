@@ -0,0 +1,25 @@
+package com.dddev.log.dto.res;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel(value = "예전 인덱스 이전 결과")
+public class LogMigrateRes {
+
+    @ApiModelProperty(value = "예전 인덱스의 로그 수", example = "120000")
+    private long total;
+    @ApiModelProperty(value = "날짜별 인덱스로 옮긴 로그 수", example = "120000")
+    private long migrated;
+    @ApiModelProperty(value = "로그를 옮긴 날짜별 인덱스 수", example = "14")
+    private int partitions;
+    @ApiModelProperty(value = "예전 인덱스 삭제 여부 (전부 옮겨졌을 때만 삭제)", example = "true")
+    private boolean legacyDeleted;
+}
@@ -0,0 +1,27 @@
+package com.dddev.log.dto.res;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ApiModel(value = "로그 저장 요청 한도")
+public class LogQuotaRes {
+
+    @ApiModelProperty(value = "창 크기(초) 동안 허용되는 로그 수", example = "1000")
+    private long limit;
+    @ApiModelProperty(value = "최근 창 크기 동안 사용한 로그 수", example = "120")
+    private long used;
+    @ApiModelProperty(value = "남은 로그 수", example = "880")
+    private long remaining;
+    @ApiModelProperty(value = "창 크기(초)", example = "60")
+    private long windowSeconds;
+    @ApiModelProperty(value = "현재 창이 끝날 때까지 남은 시간(ms)", example = "31250")
+    private long resetMillis;
+}
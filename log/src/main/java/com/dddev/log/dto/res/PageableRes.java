@@ -15,11 +15,23 @@ import java.util.List;
 public class PageableRes {
     @ApiModelProperty(value = "현재 페이지 번호", example = "1")
     private int pageNumber;
-    @ApiModelProperty(value = "전체 페이지 수", example = "3")
+    @ApiModelProperty(value = "전체 페이지 수 (totalPagesLowerBound가 true면 최소값)", example = "3")
     private int pageSize;
     @ApiModelProperty(value = "로그 데이터", example = " {\n" +
             "        \"localDateTime\": \"2023-11-14T23:47:46.725\",\n" +
             "        \"log\": \"1234\"\n" +
             "      },")
     private List<ElasticSearchLog> logs;
+    @ApiModelProperty(value = "다음 로그를 이어서 가져올 커서 (마지막이면 null)", example = "WzE3MDAwMDAwMDAwMDAsIjBmOGZhZDViIl0")
+    private String nextCursor;
+    @ApiModelProperty(value = "전체 페이지 수가 최소값인지 (정규표현식 검색은 다음 페이지가 있는지까지만 확인해 마지막 페이지 전에는 true, 그 외 검색은 없음)", example = "true")
+    private Boolean totalPagesLowerBound;
+
+    public PageableRes(int pageNumber, int pageSize, List<ElasticSearchLog> logs) {
+        this(pageNumber, pageSize, logs, null);
+    }
+
+    public PageableRes(int pageNumber, int pageSize, List<ElasticSearchLog> logs, String nextCursor) {
+        this(pageNumber, pageSize, logs, nextCursor, null);
+    }
 }
@@ -18,4 +18,11 @@ public class ChatGptException extends RuntimeException {
             super(message);
         }
     }
+
+    //GPT 호출 대기열이 가득 찼을 때
+    public static class BusyException extends ChatGptException{
+        public BusyException(String message) {
+            super(message);
+        }
+    }
 }
@@ -19,4 +19,11 @@ public class ElasticSearchException extends RuntimeException {
         }
     }
 
+    //커서가 잘못 되었을 때
+    public static class IncorrectCursorException extends ElasticSearchException{
+        public IncorrectCursorException(String message) {
+            super(message);
+        }
+    }
+
 }
@@ -0,0 +1,28 @@
+package com.dddev.log.exception;
+
+public class LogIngestException extends RuntimeException {
+    public LogIngestException(String message) {
+        super(message);
+    }
+
+    //로그 저장 대기열이 가득 찼을 때
+    public static class QueueFullException extends LogIngestException {
+        public QueueFullException(String message) {
+            super(message);
+        }
+    }
+
+    //한도 초과, 과부하, 격리로 잠시 후 다시 보내야 할 때 (Retry-After 초)
+    public static class RateLimitedException extends LogIngestException {
+        private final long retryAfterSeconds;
+
+        public RateLimitedException(String message, long retryAfterSeconds) {
+            super(message);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.dddev.log.exception;
+
+public class LogTailException extends RuntimeException {
+    public LogTailException(String message) {
+        super(message);
+    }
+
+    //그라운드의 실시간 로그 구독자가 너무 많을 때
+    public static class TooManySubscribersException extends LogTailException {
+        public TooManySubscribersException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.dddev.log.service;
+
+import com.dddev.log.util.ExpiringCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+//GPT 답변 캐시
+//모델 + 시스템 프롬프트 + 공백을 정리한 질문의 sha-256을 key로, 같은 질문(같은 스택트레이스 등)은 OpenAI를 다시 호출하지 않는다.
+//같은 질문이 동시에 들어오면 한 요청만 OpenAI를 호출하고 나머지는 그 결과를 함께 받는다.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChatCacheService {
+
+    private static final String REDIS_KEY = "chat:cache:";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${log.chat.cache.ttl-seconds:3600}")
+    private long ttlSeconds;
+    @Value("${log.chat.cache.max-size:1000}")
+    private int maxSize;
+    //서버 재시작, 여러 서버 간에도 캐시를 공유하려면 true
+    @Value("${log.chat.cache.redis:false}")
+    private boolean redisEnabled;
+
+    private ExpiringCache<String, String> cache;
+    private final ConcurrentHashMap<String, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    @PostConstruct
+    void init() {
+        cache = new ExpiringCache<>(maxSize, ttlSeconds, TimeUnit.SECONDS);
+    }
+
+    //캐시에 있으면 바로 반환, 없으면 call로 OpenAI를 호출해 저장 (null 답변은 저장하지 않음)
+    //반환된 future를 취소해도 같은 질문을 기다리는 다른 요청은 영향이 없고, 모두 취소하면 OpenAI 호출도 취소
+    public CompletableFuture<String> getOrCompute(String model, String role, String prompt, Supplier<CompletableFuture<String>> call) {
+        String key = key(model, role, prompt);
+        String cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+        InFlight created = new InFlight(key);
+        while (true) {
+            InFlight running = inFlight.putIfAbsent(key, created);
+            if (running == null) break;
+            CompletableFuture<String> waiter = running.attach();
+            if (waiter != null) {
+                coalesced.increment();
+                return waiter;
+            }
+            //모두 취소되어 정리 중인 호출은 새로 호출
+            inFlight.remove(key, running);
+        }
+        misses.increment();
+        CompletableFuture<String> waiter = created.attach();
+        CompletableFuture<String> upstream;
+        try {
+            upstream = call.get();
+        } catch (RuntimeException e) {
+            inFlight.remove(key, created);
+            created.result.completeExceptionally(e);
+            throw e;
+        }
+        created.start(upstream);
+        return waiter;
+    }
+
+    //캐시된 답변 (스트리밍 응답에서 사용), 없으면 null
+    public String get(String model, String role, String prompt) {
+        String cached = lookup(key(model, role, prompt));
+        if (cached != null) hits.increment();
+        return cached;
+    }
+
+    //스트리밍으로 받은 전체 답변 저장
+    public void put(String model, String role, String prompt, String answer) {
+        store(key(model, role, prompt), answer);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    private String lookup(String key) {
+        String cached = cache.get(key);
+        if (cached != null || !redisEnabled) return cached;
+        try {
+            Object stored = meterRegistry.timer("log.redis.command", "command", "chat-cache-get")
+                    .record(() -> redisTemplate.opsForValue().get(REDIS_KEY + key));
+            if (stored != null) {
+                cache.put(key, stored.toString());
+                return stored.toString();
+            }
+        } catch (RuntimeException e) {
+            log.warn("GPT 답변 캐시 Redis 조회 실패 {}", e.getMessage());
+        }
+        return null;
+    }
+
+    private void store(String key, String answer) {
+        cache.put(key, answer);
+        if (!redisEnabled) return;
+        try {
+            meterRegistry.timer("log.redis.command", "command", "chat-cache-set")
+                    .record(() -> redisTemplate.opsForValue().set(REDIS_KEY + key, answer, Duration.ofSeconds(ttlSeconds)));
+        } catch (RuntimeException e) {
+            log.warn("GPT 답변 캐시 Redis 저장 실패 {}", e.getMessage());
+        }
+    }
+
+    //같은 질문으로 진행 중인 OpenAI 호출, 기다리는 요청 수를 세어 모두 취소되면 호출도 취소
+    private class InFlight {
+        private final String key;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private CompletableFuture<String> upstream;
+        private int waiters;
+        private boolean cancelled;
+
+        private InFlight(String key) {
+            this.key = key;
+        }
+
+        //기다리는 요청별 future, 이미 모두 취소되었으면 null
+        private synchronized CompletableFuture<String> attach() {
+            if (cancelled) return null;
+            waiters++;
+            CompletableFuture<String> waiter = result.copy();
+            waiter.whenComplete((a, e) -> {
+                if (waiter.isCancelled()) leave();
+            });
+            return waiter;
+        }
+
+        private synchronized void leave() {
+            if (--waiters > 0 || result.isDone()) return;
+            cancelled = true;
+            inFlight.remove(key, this);
+            if (upstream != null) upstream.cancel(true);
+        }
+
+        private void start(CompletableFuture<String> call) {
+            synchronized (this) {
+                upstream = call;
+                if (cancelled) call.cancel(true);
+            }
+            call.whenComplete((answer, e) -> {
+                if (e == null && answer != null) store(key, answer);
+                inFlight.remove(key, this);
+                if (e == null) {
+                    result.complete(answer);
+                } else {
+                    result.completeExceptionally(e);
+                }
+            });
+        }
+    }
+
+    //줄바꿈 통일, 연속 공백 하나로, 앞뒤 공백 제거 후 sha-256
+    static String key(String model, String role, String prompt) {
+        StringBuilder normalized = new StringBuilder(prompt.length() + 64);
+        normalized.append(model).append('\u0000').append(role).append('\u0000');
+        boolean space = false;
+        for (int i = 0; i < prompt.length(); i++) {
+            char c = prompt.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = true;
+                continue;
+            }
+            if (space && normalized.charAt(normalized.length() - 1) != '\u0000') normalized.append(' ');
+            space = false;
+            normalized.append(c);
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(normalized.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
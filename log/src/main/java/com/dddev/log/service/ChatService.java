@@ -1,29 +1,25 @@
 package com.dddev.log.service;
 
 import com.dddev.log.dto.ElasticSearchLog;
+import com.dddev.log.dto.Message;
 import com.dddev.log.dto.req.ChatReq;
 import com.dddev.log.dto.res.ChatRes;
 import com.dddev.log.exception.ElasticSearchException;
+import com.dddev.log.util.LogContextBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.env.Environment;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.elasticsearch.NoSuchIndexException;
-import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
-import org.springframework.data.elasticsearch.core.IndexOperations;
-import org.springframework.data.elasticsearch.core.SearchHit;
-import org.springframework.data.elasticsearch.core.SearchHits;
-import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
-import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
-import java.util.stream.Collectors;
-
-import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
-import static org.elasticsearch.search.sort.SortBuilders.fieldSort;
-import static org.elasticsearch.search.sort.SortOrder.DESC;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @RequiredArgsConstructor
@@ -33,81 +29,126 @@ public class ChatService {
     @Qualifier("openaiRestTemplate")
     private final RestTemplate restTemplate;
     private final Environment env;
-    private final ElasticsearchOperations elasticsearchOperations;
-    
+    private final LogStore logStore;
+    private final LogHotBufferService logHotBufferService;
+    private final ChatCacheService chatCacheService;
+    private final GptExecutorService gptExecutorService;
+    private final UserGptAccessService userGptAccessService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${log.chat.context.fetch-size:200}")
+    private int contextFetchSize;
+    @Value("${log.chat.context.token-budget:1500}")
+    private int contextTokenBudget;
+    @Value("${log.chat.context.error-window:3}")
+    private int contextErrorWindow;
+
     //CHAT GPT에 일반 질문
-    public String chatGpt(String ground_id, String prompt){
-        IndexOperations indexOperations = elasticsearchOperations.indexOps(IndexCoordinates.of(ground_id));
-        if (!indexOperations.exists()) {
+    public CompletableFuture<String> chatGpt(String ground_id, String user_id, String prompt){
+        return complete(ground_id, user_id, GptExecutorService.Priority.INTERACTIVE, chatRequest(ground_id, prompt));
+    }
+
+    //CHAT GPT에 로그 관련 질문
+    public CompletableFuture<String> chatGptLog(String ground_id, String user_id, String prompt){
+        return complete(ground_id, user_id, GptExecutorService.Priority.INTERACTIVE, logRequest(ground_id, prompt));
+    }
+
+    //일반 질문 요청 생성
+    public ChatReq chatRequest(String ground_id, String prompt){
+        if (!logStore.hasLogs(ground_id)) {
             throw new ElasticSearchException.NoIndexException("해당 인덱스가 없습니다.");
         }
-        ChatReq request = new ChatReq(env.getProperty("openai.model"), prompt, "Please explain the current question " +
+        return new ChatReq(env.getProperty("openai.model"), prompt, "Please explain the current question " +
                 "in detail with an easy example. Tell me in Korean");
-        // call the API
-        ChatRes response = restTemplate.postForObject(env.getProperty("openai.api.url"), request, ChatRes.class);
-        if (response == null || response.getChoices() == null || response.getChoices().isEmpty()) {
-            return "No response";
-        }
-        // return the first response
-        return response.getChoices().get(0).getMessage().getContent().replace("\\n", "\n");
     }
 
-    //CHAT GPT에 로그 관련 질문
-    public String chatGptLog(String ground_id, String prompt){
-        IndexOperations indexOperations = elasticsearchOperations.indexOps(IndexCoordinates.of(ground_id));
-        if (!indexOperations.exists()) {
+    //로그 관련 질문 요청 생성
+    public ChatReq logRequest(String ground_id, String prompt){
+        if (!logStore.hasLogs(ground_id)) {
             throw new ElasticSearchException.NoIndexException("해당 인덱스가 없습니다.");
         }
-        ChatReq request = new ChatReq(env.getProperty("openai.model"), prompt, "You're a log analysis expert. " +
+        return new ChatReq(env.getProperty("openai.model"), prompt, "You're a log analysis expert. " +
                 "I know all the logs of any program. Kind and easy for developers trying to catch this error," +
                 " let me know the solution. Tell me Only in Korean.");
-        // call the API
-        ChatRes response = restTemplate.postForObject(env.getProperty("openai.api.url"), request, ChatRes.class);
-        if (response == null || response.getChoices() == null || response.getChoices().isEmpty()) {
-            return "No response";
-        }
-        // return the first response
-        return response.getChoices().get(0).getMessage().getContent().replace("\\n", "\n");
     }
 
     //CHAT GPT에 정규표현식 관련 질문
-    public String chatGptExp(String prompt){
+    public CompletableFuture<String> chatGptExp(String ground_id, String prompt){
         // create a request
         ChatReq request = new ChatReq(env.getProperty("openai.model"), prompt,"You are a regular expression expert in elasticsearch. " +
                 "Please change the regular expression to the elasticserach regular expression. " +
                 "However, the answer does not include any other rhetoric, just tell me the answer.");
-        // call the API
-        ChatRes response = restTemplate.postForObject(env.getProperty("openai.api.url"), request, ChatRes.class);
-
-        if (response == null || response.getChoices() == null || response.getChoices().isEmpty()) {
-            return "No response";
-        }
-        // return the first response
-        return response.getChoices().get(0).getMessage().getContent().replace("\\n", "\n");
+        return complete(ground_id, null, GptExecutorService.Priority.INTERACTIVE, request);
     }
 
     //최근 로그 불러서 분석
-    public String chatGptLogAuto(String groupId) throws NoSuchIndexException {
-        SearchHits<ElasticSearchLog> searchHits = elasticsearchOperations.search(
-                new NativeSearchQueryBuilder()
-                        .withQuery(matchAllQuery())
-                        .withSort(fieldSort("localDateTime").order(DESC))
-                        .withPageable(PageRequest.of(0, 20))
-                        .build(), ElasticSearchLog.class, IndexCoordinates.of(groupId));
+    public CompletableFuture<String> chatGptLogAuto(String groupId, String userId) throws NoSuchIndexException {
+        return complete(groupId, userId, GptExecutorService.Priority.AUTO, logAutoRequest(groupId));
+    }
 
-        if (searchHits.isEmpty()) throw new ElasticSearchException.NoContentException("저장된 로그가 없습니다.");
-        StringBuilder temp = new StringBuilder();
-        searchHits.stream().map(SearchHit::getContent).collect(Collectors.toList()).forEach(a -> {
-            temp.append(a.getLog()).append("\n");
-        });
-        ChatReq request = new ChatReq(env.getProperty("openai.model"), temp.toString(), "You're a log analysis expert. " +
+    //최근 로그로 분석 요청 생성
+    //최근 contextFetchSize줄 중 ERROR와 스택트레이스 위주로, 반복 줄은 묶어서 token 예산 안에서만 보냄
+    public ChatReq logAutoRequest(String groupId) throws NoSuchIndexException {
+        List<ElasticSearchLog> logs = logHotBufferService.recent(groupId, contextFetchSize);
+        if (logs == null) logs = logStore.recent(groupId, contextFetchSize);
+
+        if (logs.isEmpty()) throw new ElasticSearchException.NoContentException("저장된 로그가 없습니다.");
+        Collections.reverse(logs);
+        String context = LogContextBuilder.build(logs, contextTokenBudget, contextErrorWindow);
+        return new ChatReq(env.getProperty("openai.model"), context, "You're a log analysis expert. " +
                 "I know all the logs of any program. " +
                 "Kind and easy for developers trying to catch this error, let me know the solution. Tell me Only in Korean." +
                 "And put \\n in the right place to answer");
-        ChatRes response = restTemplate.postForObject(env.getProperty("openai.api.url"), request, ChatRes.class);
-        if (response == null || response.getChoices() == null || response.getChoices().isEmpty()) {
-            return "No response";
+    }
+
+    //질문 token 어림값 (GPT 사용 한도 예약용, 답변 token은 max_tokens로 따로 예약)
+    public static long estimateTokens(ChatReq request) {
+        long tokens = 0;
+        for (Message message : request.getMessages()) {
+            tokens += LogContextBuilder.estimateTokens(message.getContent()) + 4;
         }
-        return response.getChoices().get(0).getMessage().getContent().replace("\\n", "\n");
+        return tokens;
+    }
+
+    //같은 모델, 시스템 프롬프트, 질문이면 캐시된 답변 사용, 없으면 GPT 사용 한도를 예약하고 GPT 실행기 대기열을 거쳐 호출
+    //반환된 future를 취소하면 대기 중이거나 진행 중인 호출도 취소
+    private CompletableFuture<String> complete(String groundId, String userId, GptExecutorService.Priority priority, ChatReq request) {
+        String role = request.getMessages().get(1).getContent();
+        String prompt = request.getMessages().get(0).getContent();
+        CompletableFuture<String> answer = chatCacheService.getOrCompute(request.getModel(), role, prompt, () -> {
+            UserGptAccessService.Reservation reservation = userGptAccessService.reserve(groundId, userId, estimateTokens(request), request.getMax_tokens());
+            CompletableFuture<String> call = gptExecutorService.execute(groundId, priority, () -> {
+                // call the API
+                Timer.Sample sample = Timer.start(meterRegistry);
+                String outcome = "error";
+                ChatRes response;
+                //OpenAI가 알려준 실제 사용량, 응답을 받지 못했거나 usage가 없으면 -1 (예약분 그대로 정산)
+                long usedTokens = -1;
+                userGptAccessService.started(reservation);
+                try {
+                    response = restTemplate.postForObject(env.getProperty("openai.api.url"), request, ChatRes.class);
+                    outcome = "success";
+                    usedTokens = response != null && response.getUsage() != null ? response.getUsage().getTotal_tokens() : -1;
+                } finally {
+                    sample.stop(Timer.builder("log.gpt.upstream").tag("mode", "blocking").tag("priority", priority.name())
+                            .tag("outcome", outcome).publishPercentileHistogram().register(meterRegistry));
+                    //실제 사용량으로 한도 차감 (요청이 먼저 취소됐어도 호출이 끝난 여기서 정산)
+                    userGptAccessService.finished(reservation, usedTokens);
+                }
+                if (response == null || response.getChoices() == null || response.getChoices().isEmpty()) {
+                    return null;
+                }
+                // return the first response
+                return response.getChoices().get(0).getMessage().getContent().replace("\\n", "\n");
+            });
+            //호출한 적이 없으면 예약 반환, 진행 중인 호출은 끝날 때 정산
+            call.whenComplete((a, e) -> userGptAccessService.completed(reservation));
+            return call;
+        });
+        CompletableFuture<String> result = answer.thenApply(a -> a == null ? "No response" : a);
+        result.whenComplete((a, e) -> {
+            if (result.isCancelled()) answer.cancel(true);
+        });
+        return result;
     }
 }
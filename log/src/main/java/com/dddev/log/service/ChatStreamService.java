@@ -0,0 +1,221 @@
+package com.dddev.log.service;
+
+import com.dddev.log.dto.req.ChatReq;
+import com.dddev.log.util.LogContextBuilder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+//GPT 답변 스트리밍
+//OpenAI에 stream: true로 요청하고, 받은 chunk를 바로 SSE로 전달한다.
+//비동기 HTTP 클라이언트가 응답을 받는 동안 Tomcat 요청 스레드는 반환되어 긴 분석도 요청 스레드를 잡지 않는다.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChatStreamService {
+
+    private static final String DATA = "data:";
+    private static final String DONE = "[DONE]";
+
+    private final HttpClient openaiHttpClient;
+    private final ObjectMapper objectMapper;
+    private final Environment env;
+    private final ChatCacheService chatCacheService;
+    private final GptExecutorService gptExecutorService;
+    private final UserGptAccessService userGptAccessService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${openai.api.key}")
+    private String openaiApiKey;
+    @Value("${log.chat.stream.timeout-ms:180000}")
+    private long timeoutMs;
+
+    //message 이벤트로 답변 조각({"content": 조각}), 끝나면 done 이벤트, 실패하면 error 이벤트
+    //조각의 줄바꿈이 SSE의 data 줄을 끊지 않도록 JSON으로 보냄
+    //캐시에 없으면 GPT 사용 한도를 예약하고 호출, 끝나면 마지막 chunk의 usage로 실제 사용량 차감
+    public SseEmitter stream(String groundId, String userId, GptExecutorService.Priority priority, ChatReq request) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        String model = request.getModel();
+        String role = request.getMessages().get(1).getContent();
+        String prompt = request.getMessages().get(0).getContent();
+        String cached = chatCacheService.get(model, role, prompt);
+        if (cached != null) {
+            try {
+                emitter.send(message(cached));
+                emitter.send(SseEmitter.event().name("done").data(""));
+                emitter.complete();
+            } catch (IOException e) {
+                emitter.completeWithError(e);
+            }
+            return emitter;
+        }
+
+        long promptTokens = ChatService.estimateTokens(request);
+        UserGptAccessService.Reservation reservation = userGptAccessService.reserve(groundId, userId, promptTokens, request.getMax_tokens());
+        request.setStream(true);
+        request.setStream_options(Map.of("include_usage", true));
+        HttpRequest httpRequest;
+        try {
+            httpRequest = HttpRequest.newBuilder(URI.create(env.getProperty("openai.api.url")))
+                    .timeout(Duration.ofMillis(timeoutMs))
+                    .header("Content-Type", "application/json")
+                    .header("Authorization", "Bearer " + openaiApiKey)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(request)))
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+        ChunkSubscriber subscriber = new ChunkSubscriber(groundId, emitter);
+        //GPT 실행기에서 차례가 오면 호출, 429, 5xx는 첫 chunk 전이라 실행기가 재시도
+        CompletableFuture<String> answer = gptExecutorService.executeAsync(groundId, priority, () -> upstream(priority, openaiHttpClient
+                //200이면 한 줄씩 subscriber로, 아니면 오류 내용을 문자열로 받음
+                .sendAsync(httpRequest, responseInfo -> responseInfo.statusCode() == 200
+                        ? HttpResponse.BodySubscribers.fromLineSubscriber(subscriber, ChunkSubscriber::getAnswer, StandardCharsets.UTF_8, null)
+                        : HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8))
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        HttpHeaders headers = new HttpHeaders();
+                        response.headers().firstValue(HttpHeaders.RETRY_AFTER).ifPresent(a -> headers.set(HttpHeaders.RETRY_AFTER, a));
+                        throw new RestClientResponseException("OpenAI 응답 " + response.statusCode() + " " + response.body(),
+                                response.statusCode(), "", headers, null, StandardCharsets.UTF_8);
+                    }
+                    return response.body();
+                })));
+        //사용자가 연결을 끊으면 대기열에서 빼거나 OpenAI 응답도 중단
+        Runnable cancel = () -> {
+            subscriber.cancel();
+            answer.cancel(true);
+        };
+        emitter.onCompletion(cancel);
+        emitter.onTimeout(cancel);
+        emitter.onError(e -> cancel.run());
+        answer.whenComplete((body, e) -> {
+            userGptAccessService.settle(reservation, subscriber.usedTokens(promptTokens));
+            if (subscriber.cancelled) return;
+            try {
+                if (e != null) {
+                    log.error("GROUND ID : {}, GPT 스트리밍 실패 {}", groundId, e.getMessage());
+                    emitter.send(SseEmitter.event().name("error").data("GPT 응답을 받지 못했습니다."));
+                } else {
+                    if (!body.isEmpty()) chatCacheService.put(model, role, prompt, body);
+                    emitter.send(SseEmitter.event().name("done").data(""));
+                }
+                emitter.complete();
+            } catch (IOException | IllegalStateException ex) {
+                log.info("GROUND ID : {}, GPT 스트리밍 전송 실패 {}", groundId, ex.getMessage());
+            }
+        });
+        return emitter;
+    }
+
+    private static SseEmitter.SseEventBuilder message(String text) {
+        return SseEmitter.event().name("message").data(Map.of("content", text), MediaType.APPLICATION_JSON);
+    }
+
+    //OpenAI 호출 시간 (대기열 시간 제외, 재시도는 각각 기록)
+    private CompletableFuture<String> upstream(GptExecutorService.Priority priority, CompletableFuture<String> call) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        return call.whenComplete((a, e) -> sample.stop(Timer.builder("log.gpt.upstream").tag("mode", "stream")
+                .tag("priority", priority.name()).tag("outcome", e == null ? "success" : "error")
+                .publishPercentileHistogram().register(meterRegistry)));
+    }
+
+    //OpenAI SSE 한 줄씩 받아 delta.content를 그대로 전달하고 전체 답변을 모음
+    private class ChunkSubscriber implements Flow.Subscriber<String> {
+        private final String groundId;
+        private final SseEmitter emitter;
+        private final StringBuilder answer = new StringBuilder();
+        private volatile Flow.Subscription subscription;
+        private volatile boolean cancelled;
+        private volatile long completionTokens;
+        private volatile long totalTokens;
+
+        private ChunkSubscriber(String groundId, SseEmitter emitter) {
+            this.groundId = groundId;
+            this.emitter = emitter;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (cancelled) {
+                subscription.cancel();
+            } else {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onNext(String line) {
+            try {
+                if (line.startsWith(DATA)) {
+                    String payload = line.substring(DATA.length()).trim();
+                    if (!payload.isEmpty() && !DONE.equals(payload)) {
+                        JsonNode chunk = objectMapper.readTree(payload);
+                        //include_usage면 마지막 chunk에 전체 사용량이 옴
+                        JsonNode usage = chunk.path("usage").path("total_tokens");
+                        if (usage.isNumber()) totalTokens = usage.asLong();
+                        JsonNode content = chunk.path("choices").path(0).path("delta").path("content");
+                        if (content.isTextual() && !content.asText().isEmpty()) {
+                            String text = content.asText().replace("\\n", "\n");
+                            answer.append(text);
+                            completionTokens += LogContextBuilder.estimateTokens(text);
+                            emitter.send(message(text));
+                        }
+                    }
+                }
+                subscription.request(1);
+            } catch (IOException | IllegalStateException e) {
+                //사용자가 연결을 끊으면 OpenAI 응답도 중단
+                log.info("GROUND ID : {}, GPT 스트리밍 중단 {}", groundId, e.getMessage());
+                cancel();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        private void cancel() {
+            cancelled = true;
+            Flow.Subscription current = subscription;
+            if (current != null) current.cancel();
+        }
+
+        //OpenAI가 알려준 사용량, 없으면(중간에 끊김 등) 받은 답변까지 어림, 답변을 하나도 못 받았으면 0
+        private long usedTokens(long promptTokens) {
+            if (totalTokens > 0) return totalTokens;
+            return completionTokens == 0 ? 0 : promptTokens + completionTokens;
+        }
+
+        private String getAnswer() {
+            return answer.toString();
+        }
+    }
+}
@@ -1,160 +1,193 @@
 package com.dddev.log.service;
 
+import com.dddev.log.dto.BoundedPage;
+import com.dddev.log.dto.CursorPage;
 import com.dddev.log.dto.ElasticSearchLog;
+import com.dddev.log.dto.res.LogBulkRes;
+import com.dddev.log.dto.res.LogMigrateRes;
 import com.dddev.log.exception.ElasticSearchException;
-import io.lettuce.core.ScriptOutputType;
+import com.dddev.log.util.LogCollapser;
+import com.dddev.log.util.LogLineParser;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
-import org.elasticsearch.ElasticsearchStatusException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.elasticsearch.NoSuchIndexException;
-import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
-import org.springframework.data.elasticsearch.core.IndexOperations;
-import org.springframework.data.elasticsearch.core.SearchHits;
-import org.springframework.data.elasticsearch.core.SearchHit;
-import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
-import org.springframework.data.elasticsearch.core.query.IndexQuery;
-import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Pattern;
+import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
-import static org.elasticsearch.index.query.QueryBuilders.*;
-import static org.elasticsearch.search.sort.SortBuilders.fieldSort;
-import static org.elasticsearch.search.sort.SortOrder.DESC;
-
+//로그 저장, 조회
+//실제 저장과 검색은 LogStore(log.store.type)가 하고, 여기서는 저장 전 처리, 실시간 tail 전달, ERROR 집계, 지표 기록을 한다.
+//최신 페이지는 최근 로그 버퍼(LogHotBufferService)에 있으면 저장소를 검색하지 않는다.
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class ElasticSearchLogService {
 
-    private final ElasticsearchOperations elasticsearchOperations;
-    private final ChatService chatService;
+    private final LogStore logStore;
+    private final LogTailService logTailService;
+    private final LogAnalysisService logAnalysisService;
+    private final LogHotBufferService logHotBufferService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${log.store.type:elasticsearch}")
+    private String storeType;
+    //연속된 같은 줄을 한 로그로 묶는 최대 시간 간격, 0이면 묶지 않음
+    @Value("${log.ingest.collapse.window-ms:10000}")
+    private long collapseWindowMs;
+    //요청에 담긴 저장 시간을 그대로 쓰는 서버 시간 앞뒤 범위
+    @Value("${log.ingest.max-clock-skew-seconds:300}")
+    private long maxClockSkewSeconds;
+
+    //요청으로 받은 로그, 요청의 저장 시간이 없거나 서버 시간(now)에서 max-clock-skew 넘게 벗어나면 서버 시간으로 저장
+    //저장 시간으로 날짜별 인덱스를 고르므로 요청 시간은 eventTime으로만 남김 (로그 줄에 시간이 찍혀 있으면 그 시간)
+    public ElasticSearchLog received(LocalDateTime localDateTime, String line, LocalDateTime now) {
+        ElasticSearchLog elasticSearchLog = ElasticSearchLog.builder().localDateTime(now).log(line).build();
+        if (localDateTime == null) return elasticSearchLog;
+        if (Math.abs(Duration.between(now, localDateTime).getSeconds()) <= maxClockSkewSeconds) {
+            elasticSearchLog.setLocalDateTime(localDateTime);
+        } else {
+            elasticSearchLog.setEventTime(localDateTime);
+        }
+        return elasticSearchLog;
+    }
 
     //로그 등록
     public void save(String groudId, ElasticSearchLog elasticSearchLog){
-        IndexOperations indexOperations = elasticsearchOperations.indexOps(IndexCoordinates.of(groudId));
-        // 인덱스가 존재하지 않으면 동적으로 인덱스를 생성
-        if (!indexOperations.exists()) {
-            indexOperations.create();
+        logStore.save(groudId, prepare(elasticSearchLog));
+        logHotBufferService.add(groudId, List.of(elasticSearchLog));
+        logTailService.publish(groudId, List.of(elasticSearchLog));
+        logAnalysisService.observe(groudId, List.of(elasticSearchLog));
+    }
+
+    //로그 일괄 등록 (연속된 같은 줄은 한 로그로 묶어 저장소에 한 번에 저장 후 로그별 결과 반환)
+    public List<LogBulkRes.Item> saveAll(String groudId, List<ElasticSearchLog> elasticSearchLogs){
+        LogBulkRes.Item[] items = new LogBulkRes.Item[elasticSearchLogs.size()];
+        List<ElasticSearchLog> valid = new ArrayList<>(elasticSearchLogs.size());
+        for (int i = 0; i < elasticSearchLogs.size(); i++) {
+            ElasticSearchLog elasticSearchLog = elasticSearchLogs.get(i);
+            if (elasticSearchLog.getLog() == null || elasticSearchLog.getLog().isBlank()) {
+                items[i] = LogBulkRes.Item.builder().index(i).status(HttpStatus.BAD_REQUEST.value())
+                        .localDateTime(elasticSearchLog.getLocalDateTime()).message("로그가 비어 있습니다.").build();
+                continue;
+            }
+            valid.add(prepare(elasticSearchLog));
         }
-        IndexQuery indexQuery = new IndexQuery();
-        indexQuery.setObject(elasticSearchLog);
-        elasticsearchOperations.index(indexQuery, IndexCoordinates.of(groudId));
+        //묶인 줄은 첫 줄 로그의 저장 결과를 따름
+        int[] runOf = new int[valid.size()];
+        List<ElasticSearchLog> documents = LogCollapser.collapse(valid, collapseWindowMs, runOf);
+        Map<String, String> failedDocuments = documents.isEmpty() ? Map.of() : logStore.saveAll(groudId, documents);
+        for (int i = 0, v = 0; i < items.length; i++) {
+            if (items[i] != null) continue;
+            String reason = failedDocuments.get(documents.get(runOf[v++]).getLogId());
+            items[i] = LogBulkRes.Item.builder().index(i)
+                    .status(reason == null ? HttpStatus.CREATED.value() : HttpStatus.INTERNAL_SERVER_ERROR.value())
+                    .localDateTime(elasticSearchLogs.get(i).getLocalDateTime()).message(reason).build();
+        }
+        //저장된 로그만 최근 로그 버퍼에 넣고, 순서대로 실시간 구독자에게 전달하고 ERROR 수 집계
+        List<ElasticSearchLog> saved = new ArrayList<>(documents.size());
+        for (ElasticSearchLog document : documents) {
+            if (!failedDocuments.containsKey(document.getLogId())) saved.add(document);
+        }
+        logHotBufferService.add(groudId, saved);
+        logTailService.publish(groudId, saved);
+        logAnalysisService.observe(groudId, saved);
+        return Arrays.asList(items);
+    }
+
+    //저장한 로그를 저장소 디스크에 반영
+    public void flush() {
+        logStore.flush();
     }
 
 
     //전체 로그 불러오기
-    public Page<ElasticSearchLog> getLatestLogs(String groudId, int page) throws NoSuchIndexException {
-        SearchHits<ElasticSearchLog> searchHits = elasticsearchOperations.search(
-                new NativeSearchQueryBuilder()
-                        .withQuery(matchAllQuery())
-                        .withSort(fieldSort("localDateTime").order(DESC))
-                        .withPageable(PageRequest.of(page, 30))
-                        .build(), ElasticSearchLog.class, IndexCoordinates.of(groudId));
-        List<ElasticSearchLog> logs = searchHits.stream().map(SearchHit::getContent).collect(Collectors.toList());
-        long totalHits = searchHits.getTotalHits();
-        return new PageImpl<>(logs, PageRequest.of(page, 30), totalHits);
+    public CursorPage<ElasticSearchLog> getLatestLogs(String groudId, int page, String cursor, boolean pit) throws NoSuchIndexException {
+        CursorPage<ElasticSearchLog> hot = pit ? null : logHotBufferService.latest(groudId, page, cursor);
+        if (hot != null) return hot;
+        return timed("latest", () -> logStore.latest(groudId, page, cursor, pit));
     }
 
 
     //인덱스별 키워드 가져오기
-    public Page<ElasticSearchLog> getKeywordtLogs(String groudId, String keyword, int page) throws NoSuchIndexException {
-        try {
-            SearchHits<ElasticSearchLog> searchHits = elasticsearchOperations.search(
-                    new NativeSearchQueryBuilder()
-                            .withQuery(queryStringQuery("*" + keyword + "*").field("log"))
-                            .withSort(fieldSort("localDateTime").order(DESC))
-                            .withPageable(PageRequest.of(page, 30))
-                            .build(), ElasticSearchLog.class, IndexCoordinates.of(groudId));
-            List<ElasticSearchLog> logs = searchHits.stream().map(SearchHit::getContent).collect(Collectors.toList());
-            long totalHits = searchHits.getTotalHits();
-            return new PageImpl<>(logs, PageRequest.of(page, 30), totalHits);
-        }catch (ElasticsearchStatusException e){
-            log.info(e.getMessage());
-            throw new ElasticSearchException.NoIndexException("해당 하는 그룹 id는 없습니다.");
-        }
+    public CursorPage<ElasticSearchLog> getKeywordtLogs(String groudId, String keyword, int page, String cursor, boolean pit) throws NoSuchIndexException {
+        return timed("keyword", () -> logStore.keyword(groudId, keyword, page, cursor, pit));
     }
 
     //정규표현식으로 가져오기
-    public Page<ElasticSearchLog> getRegexptLogs(String groudId, String regexp, int page) throws NoSuchIndexException {
-        try {
-            SearchHits<ElasticSearchLog> searchHits = elasticsearchOperations.search(
-                    new NativeSearchQueryBuilder()
-                            .withQuery(matchAllQuery())
-                            .withSort(fieldSort("localDateTime").order(DESC))
-                            .withPageable(PageRequest.of(0, 10000))
-                            .build(), ElasticSearchLog.class, IndexCoordinates.of(groudId));
-            List<ElasticSearchLog> logs = searchHits.stream().map(SearchHit::getContent).collect(Collectors.toList());
-            List<ElasticSearchLog> result = logs.stream()
-                    .filter(logEntry -> Pattern.matches(regexp, logEntry.getLog()))
-                    .collect(Collectors.toList());
-            int start = (int) PageRequest.of(page, 30).getOffset();
-            int end = Math.min((start + PageRequest.of(page, 30).getPageSize()), result.size());
-            return new PageImpl<>(result.subList(start, end), PageRequest.of(page, 30), result.size());
-        }catch (ElasticsearchStatusException e){
-            log.info(e.getMessage());
-            throw new ElasticSearchException.NoIndexException("해당 하는 그룹 id는 없습니다.");
-        }
+    public BoundedPage<ElasticSearchLog> getRegexptLogs(String groudId, String regexp, int page) throws NoSuchIndexException {
+        return timed("regexp", () -> logStore.regexp(groudId, regexp, page));
     }
 
     //시간대별로 가져오기
-    public Page<ElasticSearchLog> getTimetLogs(String groudId, LocalDateTime startDateTime, LocalDateTime endDateTime, int page) throws NoSuchIndexException {
-        try {
-            SearchHits<ElasticSearchLog> searchHits = elasticsearchOperations.search(
-                    new NativeSearchQueryBuilder()
-                            .withQuery(rangeQuery("localDateTime")
-                                    .gte(startDateTime.format(DateTimeFormatter.ISO_DATE_TIME))
-                                    .lte(endDateTime.format(DateTimeFormatter.ISO_DATE_TIME))
-                            )
-                            .withSort(fieldSort("localDateTime").order(DESC))
-                            .withPageable(PageRequest.of(page, 30))
-                            .build(), ElasticSearchLog.class, IndexCoordinates.of(groudId));
-            List<ElasticSearchLog> logs = searchHits.stream().map(SearchHit::getContent).collect(Collectors.toList());
-            long totalHits = searchHits.getTotalHits();
-            return new PageImpl<>(logs, PageRequest.of(page, 30), totalHits);
-        }catch (ElasticsearchStatusException e){
-            log.info(e.getMessage());
-            throw new ElasticSearchException.NoIndexException("해당 하는 그룹 id는 없습니다.");
-        }
+    public CursorPage<ElasticSearchLog> getTimetLogs(String groudId, LocalDateTime startDateTime, LocalDateTime endDateTime, int page, String cursor, boolean pit) throws NoSuchIndexException {
+        return timed("time", () -> logStore.time(groudId, startDateTime, endDateTime, page, cursor, pit));
+    }
+
+    //groundId 이름의 예전 인덱스를 n-gram 매핑이 있는 날짜별 인덱스로 이전
+    public LogMigrateRes migrateIndex(String groudId) {
+        return logStore.migrate(groudId);
+    }
+
+    //레벨, 로거, 로그에 찍힌 시간으로 가져오기 (로그에 찍힌 시간 최신 순)
+    //level은 쉼표로 여러 개, logger는 끝에 *를 붙이면 패키지 단위로 검색
+    public CursorPage<ElasticSearchLog> getFilteredLogs(String groudId, String level, String logger, LocalDateTime startDateTime, LocalDateTime endDateTime, int page, String cursor, boolean pit) throws NoSuchIndexException {
+        List<String> levels = level == null ? List.of() : Arrays.stream(level.split(","))
+                .map(a -> a.trim().toUpperCase(Locale.ROOT))
+                .filter(a -> !a.isEmpty())
+                .collect(Collectors.toList());
+        return timed("filter", () -> logStore.filter(groudId, levels, logger, startDateTime, endDateTime, page, cursor, pit));
     }
 
-    //인덱스 삭제
+    //그라운드의 모든 로그 삭제
     public void deleteIndex(String groudId) {
-        IndexOperations indexOperations = elasticsearchOperations.indexOps(IndexCoordinates.of(groudId));
-        if (!indexOperations.exists()) {
+        logHotBufferService.clear(groudId);
+        if (!logStore.delete(groudId)) {
             throw new ElasticSearchException.NoIndexException("해당 인덱스가 없습니다.");
         }
-        elasticsearchOperations.indexOps(IndexCoordinates.of(groudId)).delete();
     }
 
     //시간대별로 가져오기
-    public Page<ElasticSearchLog> getTimeAndKeywordLogs(String groudId, LocalDateTime startDateTime, LocalDateTime endDateTime, String keyword, int page) throws NoSuchIndexException {
+    public CursorPage<ElasticSearchLog> getTimeAndKeywordLogs(String groudId, LocalDateTime startDateTime, LocalDateTime endDateTime, String keyword, int page, String cursor, boolean pit) throws NoSuchIndexException {
+        return timed("time_keyword", () -> logStore.timeAndKeyword(groudId, startDateTime, endDateTime, keyword, page, cursor, pit));
+    }
+
+    //로그마다 고유 id 부여 (같은 시간의 로그가 서로 덮어쓰지 않도록, WAL에서 다시 저장하는 로그는 이미 있는 id 사용), 저장 시간이 없으면 지금
+    //Spring Boot 형식 로그면 로그 시간, 레벨, pid, 스레드, 로거를 따로 저장
+    private ElasticSearchLog prepare(ElasticSearchLog elasticSearchLog) {
+        if (elasticSearchLog.getLogId() == null) {
+            elasticSearchLog.setLogId(UUID.randomUUID().toString());
+        }
+        if (elasticSearchLog.getLocalDateTime() == null) {
+            elasticSearchLog.setLocalDateTime(LocalDateTime.now());
+        }
+        if (elasticSearchLog.getLevel() == null) {
+            LogLineParser.parse(elasticSearchLog.getLog(), elasticSearchLog);
+        }
+        return elasticSearchLog;
+    }
+
+    //검색 종류별 응답 시간(log.store.query)과 검색된 로그 수(log.store.query.hits) 기록
+    private <T extends Page<ElasticSearchLog>> T timed(String type, Supplier<T> search) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
         try {
-            SearchHits<ElasticSearchLog> searchHits = elasticsearchOperations.search(
-                    new NativeSearchQueryBuilder()
-                            .withQuery(boolQuery()
-                                    .must(rangeQuery("localDateTime")
-                                            .gte(startDateTime.format(DateTimeFormatter.ISO_DATE_TIME))
-                                            .lte(endDateTime.format(DateTimeFormatter.ISO_DATE_TIME))
-                                    )
-                                    .must(queryStringQuery("*" + keyword + "*").field("log"))
-                            )
-                            .withSort(fieldSort("localDateTime").order(DESC))
-                            .withPageable(PageRequest.of(page, 30))
-                            .build(), ElasticSearchLog.class, IndexCoordinates.of(groudId));
-            List<ElasticSearchLog> logs = searchHits.stream().map(SearchHit::getContent).collect(Collectors.toList());
-            long totalHits = searchHits.getTotalHits();
-            return new PageImpl<>(logs, PageRequest.of(page, 30), totalHits);
-        }catch (ElasticsearchStatusException e){
-            log.info(e.getMessage());
-            throw new ElasticSearchException.NoIndexException("해당 하는 그룹 id는 없습니다.");
+            T result = search.get();
+            DistributionSummary.builder("log.store.query.hits").tag("store", storeType).tag("type", type).register(meterRegistry)
+                    .record(result.getTotalElements());
+            outcome = "success";
+            return result;
+        } finally {
+            sample.stop(Timer.builder("log.store.query").tag("store", storeType).tag("type", type).tag("outcome", outcome)
+                    .publishPercentileHistogram().register(meterRegistry));
         }
     }
 }
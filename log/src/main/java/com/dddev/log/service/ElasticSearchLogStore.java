@@ -0,0 +1,361 @@
+package com.dddev.log.service;
+
+import com.dddev.log.dto.BoundedPage;
+import com.dddev.log.dto.CursorPage;
+import com.dddev.log.dto.ElasticSearchLog;
+import com.dddev.log.dto.res.LogMigrateRes;
+import com.dddev.log.exception.ElasticSearchException;
+import com.dddev.log.util.LogCursor;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.search.ClosePointInTimeRequest;
+import org.elasticsearch.action.search.OpenPointInTimeRequest;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.core.TimeValue;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.builder.PointInTimeBuilder;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.data.elasticsearch.NoSuchIndexException;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.document.DocumentAdapters;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.elasticsearch.index.query.QueryBuilders.*;
+import static org.elasticsearch.search.sort.SortBuilders.fieldSort;
+import static org.elasticsearch.search.sort.SortOrder.DESC;
+
+//Elasticsearch 로그 저장소 (log.store.type=elasticsearch, 기본)
+//그라운드별 날짜 인덱스(LogIndexService)에 저장하고 alias로 조회한다.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "log.store.type", havingValue = "elasticsearch", matchIfMissing = true)
+public class ElasticSearchLogStore implements LogStore {
+
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final RestHighLevelClient elasticsearchClient;
+    private final LogIndexService logIndexService;
+    private final MeterRegistry meterRegistry;
+
+    //log-settings.json의 log_trigram 토크나이저 크기
+    private static final int NGRAM_SIZE = 3;
+
+    @Value("${log.regexp.batch-size:1000}")
+    private int regexpBatchSize;
+    @Value("${log.cursor.pit-keep-alive:1m}")
+    private String pitKeepAlive;
+
+    //로그 날짜의 인덱스가 존재하지 않으면 동적으로 인덱스를 생성
+    @Override
+    public void save(String groundId, ElasticSearchLog elasticSearchLog) {
+        String index = logIndexService.writeIndex(groundId, elasticSearchLog.getLocalDateTime());
+        Timer.Sample sample = Timer.start(meterRegistry);
+        elasticsearchOperations.index(toIndexQuery(elasticSearchLog), IndexCoordinates.of(index));
+        sample.stop(meterRegistry.timer("log.es.index"));
+    }
+
+    //날짜별 인덱스마다 bulk API 한 번으로 저장
+    @Override
+    public Map<String, String> saveAll(String groundId, List<ElasticSearchLog> elasticSearchLogs) {
+        Map<String, List<IndexQuery>> indexQueries = new LinkedHashMap<>();
+        for (ElasticSearchLog elasticSearchLog : elasticSearchLogs) {
+            indexQueries.computeIfAbsent(logIndexService.writeIndex(groundId, elasticSearchLog.getLocalDateTime()), k -> new ArrayList<>())
+                    .add(toIndexQuery(elasticSearchLog));
+        }
+        Map<String, String> failedDocuments = new HashMap<>();
+        indexQueries.forEach((index, queries) -> {
+            Timer.Sample sample = Timer.start(meterRegistry);
+            try {
+                elasticsearchOperations.bulkIndex(queries, IndexCoordinates.of(index));
+            } catch (BulkFailureException e) {
+                log.error("INDEX : {}, 로그 일괄 저장 중 {}건 실패", index, e.getFailedDocuments().size());
+                failedDocuments.putAll(e.getFailedDocuments());
+                meterRegistry.counter("log.es.bulk.failed").increment(e.getFailedDocuments().size());
+            } finally {
+                sample.stop(Timer.builder("log.es.bulk").publishPercentileHistogram().register(meterRegistry));
+                DistributionSummary.builder("log.es.bulk.size").description("bulk 요청 한 번에 저장한 로그 수")
+                        .publishPercentileHistogram().register(meterRegistry).record(queries.size());
+            }
+        });
+        return failedDocuments;
+    }
+
+    @Override
+    public boolean hasLogs(String groundId) {
+        return logIndexService.hasLogs(groundId);
+    }
+
+    @Override
+    public List<ElasticSearchLog> recent(String groundId, int size) {
+        SearchHits<ElasticSearchLog> searchHits = elasticsearchOperations.search(
+                new NativeSearchQueryBuilder()
+                        .withQuery(matchAllQuery())
+                        .withSorts(logSorts())
+                        .withPageable(PageRequest.of(0, size))
+                        .build(), ElasticSearchLog.class, logIndexService.readIndices(groundId));
+        return searchHits.stream().map(SearchHit::getContent).collect(Collectors.toList());
+    }
+
+    @Override
+    public long count(String groundId) {
+        return elasticsearchOperations.count(new NativeSearchQueryBuilder().withQuery(matchAllQuery()).build(),
+                ElasticSearchLog.class, logIndexService.readIndices(groundId));
+    }
+
+    @Override
+    public CursorPage<ElasticSearchLog> latest(String groundId, int page, String cursor, boolean pit) {
+        return search(logIndexService.readIndices(groundId), matchAllQuery(), page, cursor, pit);
+    }
+
+    @Override
+    public CursorPage<ElasticSearchLog> keyword(String groundId, String keyword, int page, String cursor, boolean pit) {
+        try {
+            IndexCoordinates indices = logIndexService.readIndices(groundId);
+            return search(indices, keywordQuery(groundId, indices, keyword), page, cursor, pit);
+        }catch (ElasticsearchStatusException e){
+            log.info(e.getMessage());
+            throw new ElasticSearchException.NoIndexException("해당 하는 그룹 id는 없습니다.");
+        }
+    }
+
+    //한 번 컴파일한 정규표현식으로 최신 로그부터 scroll로 나눠 읽으며 검사하고, 요청한 페이지만 메모리에 보관
+    //다음 페이지의 첫 로그를 찾으면 scroll을 멈추고 전체 수는 최소값으로 반환 (뒤 페이지를 요청할수록 더 읽음)
+    @Override
+    public BoundedPage<ElasticSearchLog> regexp(String groundId, String regexp, int page) {
+        Matcher matcher = Pattern.compile(regexp).matcher("");
+        PageRequest pageRequest = PageRequest.of(page, PAGE_SIZE);
+        long offset = pageRequest.getOffset();
+        List<ElasticSearchLog> result = new ArrayList<>(pageRequest.getPageSize());
+        long total = 0;
+        try (SearchHitsIterator<ElasticSearchLog> searchHits = elasticsearchOperations.searchForStream(
+                new NativeSearchQueryBuilder()
+                        .withQuery(matchAllQuery())
+                        .withSort(fieldSort("localDateTime").order(DESC))
+                        .withPageable(PageRequest.of(0, regexpBatchSize))
+                        .build(), ElasticSearchLog.class, logIndexService.readIndices(groundId))) {
+            while (searchHits.hasNext()) {
+                ElasticSearchLog elasticSearchLog = searchHits.next().getContent();
+                if (elasticSearchLog.getLog() == null || !matcher.reset(elasticSearchLog.getLog()).matches()) continue;
+                if (total >= offset && result.size() < pageRequest.getPageSize()) {
+                    result.add(elasticSearchLog);
+                }
+                if (++total > offset + pageRequest.getPageSize()) {
+                    return new BoundedPage<>(result, pageRequest, total, false);
+                }
+            }
+            return new BoundedPage<>(result, pageRequest, total, true);
+        }catch (ElasticsearchStatusException e){
+            log.info(e.getMessage());
+            throw new ElasticSearchException.NoIndexException("해당 하는 그룹 id는 없습니다.");
+        }
+    }
+
+    @Override
+    public CursorPage<ElasticSearchLog> time(String groundId, LocalDateTime startDateTime, LocalDateTime endDateTime, int page, String cursor, boolean pit) {
+        try {
+            return search(logIndexService.readIndices(groundId, startDateTime, endDateTime), rangeQuery("localDateTime")
+                    .gte(startDateTime.format(DateTimeFormatter.ISO_DATE_TIME))
+                    .lte(endDateTime.format(DateTimeFormatter.ISO_DATE_TIME)), page, cursor, pit);
+        }catch (ElasticsearchStatusException e){
+            log.info(e.getMessage());
+            throw new ElasticSearchException.NoIndexException("해당 하는 그룹 id는 없습니다.");
+        }
+    }
+
+    @Override
+    public CursorPage<ElasticSearchLog> timeAndKeyword(String groundId, LocalDateTime startDateTime, LocalDateTime endDateTime, String keyword, int page, String cursor, boolean pit) {
+        try {
+            IndexCoordinates indices = logIndexService.readIndices(groundId, startDateTime, endDateTime);
+            return search(indices, boolQuery()
+                    .must(rangeQuery("localDateTime")
+                            .gte(startDateTime.format(DateTimeFormatter.ISO_DATE_TIME))
+                            .lte(endDateTime.format(DateTimeFormatter.ISO_DATE_TIME))
+                    )
+                    .must(keywordQuery(groundId, indices, keyword)), page, cursor, pit);
+        }catch (ElasticsearchStatusException e){
+            log.info(e.getMessage());
+            throw new ElasticSearchException.NoIndexException("해당 하는 그룹 id는 없습니다.");
+        }
+    }
+
+    //term 필터, 로그에 찍힌 시간 최신 순
+    @Override
+    public CursorPage<ElasticSearchLog> filter(String groundId, List<String> levels, String logger, LocalDateTime startDateTime, LocalDateTime endDateTime, int page, String cursor, boolean pit) {
+        BoolQueryBuilder query = boolQuery();
+        if (!levels.isEmpty()) {
+            query.filter(termsQuery("level", levels));
+        }
+        if (logger != null && !logger.isBlank()) {
+            query.filter(logger.endsWith("*")
+                    ? prefixQuery("logger", logger.substring(0, logger.length() - 1))
+                    : termQuery("logger", logger));
+        }
+        if (startDateTime != null || endDateTime != null) {
+            RangeQueryBuilder range = rangeQuery("eventTime");
+            if (startDateTime != null) range.gte(startDateTime.format(DateTimeFormatter.ISO_DATE_TIME));
+            if (endDateTime != null) range.lte(endDateTime.format(DateTimeFormatter.ISO_DATE_TIME));
+            query.filter(range);
+        }
+        try {
+            return search(logIndexService.readIndices(groundId), query, page, cursor, pit, eventSorts());
+        }catch (ElasticsearchStatusException e){
+            log.info(e.getMessage());
+            throw new ElasticSearchException.NoIndexException("해당 하는 그룹 id는 없습니다.");
+        }
+    }
+
+    @Override
+    public boolean delete(String groundId) {
+        return logIndexService.deleteAll(groundId);
+    }
+
+    //groundId 이름의 예전 인덱스를 n-gram 매핑이 있는 날짜별 인덱스로 이전
+    @Override
+    public LogMigrateRes migrate(String groundId) {
+        if (!logIndexService.exists(groundId)) {
+            throw new ElasticSearchException.NoIndexException("이전할 인덱스가 없습니다.");
+        }
+        return logIndexService.migrateLegacy(groundId);
+    }
+
+    private IndexQuery toIndexQuery(ElasticSearchLog elasticSearchLog) {
+        return new IndexQueryBuilder()
+                .withId(elasticSearchLog.getLogId())
+                .withObject(elasticSearchLog)
+                .build();
+    }
+
+    //부분 문자열 검색
+    //3글자 이상이면 log.ngram(3-gram) 필드에 match_phrase, 앞쪽 와일드카드처럼 단어 사전 전체를 훑지 않는다.
+    //n-gram 필드가 없는 예전 인덱스와 3글자 미만 키워드는 기존 와일드카드 검색
+    private QueryBuilder keywordQuery(String groundId, IndexCoordinates indices, String keyword) {
+        QueryBuilder wildcard = queryStringQuery("*" + keyword + "*").field("log");
+        if (keyword.codePointCount(0, keyword.length()) < NGRAM_SIZE) return wildcard;
+        QueryBuilder ngram = matchPhraseQuery("log.ngram", keyword);
+        if (!Arrays.asList(indices.getIndexNames()).contains(groundId)) return ngram;
+        return boolQuery()
+                .should(ngram)
+                .should(boolQuery().must(wildcard).filter(termQuery("_index", groundId)))
+                .minimumShouldMatch(1);
+    }
+
+    //최신 순(저장 시간, 로그 id)으로 30개씩 검색
+    //cursor가 없으면 page로 가져오고, 있으면 search_after로 이어서 가져온다 (깊은 페이지도 첫 페이지와 같은 비용)
+    //pit가 true면 point-in-time을 열어 스크롤하는 동안 새로 들어온 로그에 밀리지 않도록 고정
+    private CursorPage<ElasticSearchLog> search(IndexCoordinates indices, QueryBuilder query, int page, String cursor, boolean pit) {
+        return search(indices, query, page, cursor, pit, logSorts());
+    }
+
+    private CursorPage<ElasticSearchLog> search(IndexCoordinates indices, QueryBuilder query, int page, String cursor, boolean pit, List<SortBuilder<?>> sorts) {
+        LogCursor logCursor = cursor == null || cursor.isBlank() ? null : LogCursor.decode(cursor);
+        if (pit || (logCursor != null && logCursor.getPitId() != null)) {
+            return searchWithPit(indices, query, page, logCursor, sorts);
+        }
+        PageRequest pageRequest = logCursor == null ? PageRequest.of(page, PAGE_SIZE) : PageRequest.of(0, PAGE_SIZE);
+        NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
+                .withQuery(query)
+                .withSorts(sorts)
+                .withPageable(pageRequest)
+                .build();
+        if (logCursor != null) {
+            searchQuery.setSearchAfter(logCursor.getSearchAfter());
+        }
+        SearchHits<ElasticSearchLog> searchHits = elasticsearchOperations.search(searchQuery, ElasticSearchLog.class, indices);
+        List<ElasticSearchLog> logs = searchHits.stream().map(SearchHit::getContent).collect(Collectors.toList());
+        String nextCursor = null;
+        if (logs.size() == PAGE_SIZE) {
+            nextCursor = new LogCursor(searchHits.getSearchHit(logs.size() - 1).getSortValues(), null).encode();
+        }
+        return new CursorPage<>(logs, pageRequest, searchHits.getTotalHits(), nextCursor);
+    }
+
+    private CursorPage<ElasticSearchLog> searchWithPit(IndexCoordinates indices, QueryBuilder query, int page, LogCursor logCursor, List<SortBuilder<?>> sorts) {
+        TimeValue keepAlive = TimeValue.parseTimeValue(pitKeepAlive, "keep_alive");
+        try {
+            String pitId = logCursor == null ? null : logCursor.getPitId();
+            if (pitId == null) {
+                try {
+                    pitId = elasticsearchClient.openPointInTime(new OpenPointInTimeRequest(indices.getIndexNames()).keepAlive(keepAlive), RequestOptions.DEFAULT).getPointInTimeId();
+                } catch (ElasticsearchStatusException e) {
+                    if (e.status() == RestStatus.NOT_FOUND) throw new NoSuchIndexException(indices.getIndexName(), e);
+                    throw e;
+                }
+            }
+            PageRequest pageRequest = logCursor == null ? PageRequest.of(page, PAGE_SIZE) : PageRequest.of(0, PAGE_SIZE);
+            SearchSourceBuilder source = new SearchSourceBuilder()
+                    .query(query)
+                    .size(PAGE_SIZE)
+                    .pointInTimeBuilder(new PointInTimeBuilder(pitId).setKeepAlive(keepAlive));
+            sorts.forEach(source::sort);
+            if (logCursor == null) {
+                source.from((int) pageRequest.getOffset());
+            } else {
+                source.searchAfter(logCursor.getSearchAfter().toArray());
+            }
+            SearchResponse response = elasticsearchClient.search(new SearchRequest().source(source), RequestOptions.DEFAULT);
+            org.elasticsearch.search.SearchHit[] hits = response.getHits().getHits();
+            List<ElasticSearchLog> logs = new ArrayList<>(hits.length);
+            for (org.elasticsearch.search.SearchHit hit : hits) {
+                logs.add(elasticsearchOperations.getElasticsearchConverter().read(ElasticSearchLog.class, DocumentAdapters.from(hit)));
+            }
+            String nextPitId = response.pointInTimeId() == null ? pitId : response.pointInTimeId();
+            String nextCursor = null;
+            if (hits.length == PAGE_SIZE) {
+                nextCursor = new LogCursor(Arrays.asList(hits[hits.length - 1].getSortValues()), nextPitId).encode();
+            } else {
+                //마지막 페이지면 point-in-time 닫기
+                elasticsearchClient.closePointInTime(new ClosePointInTimeRequest(nextPitId), RequestOptions.DEFAULT);
+            }
+            long totalHits = response.getHits().getTotalHits() == null ? logs.size() : response.getHits().getTotalHits().value;
+            return new CursorPage<>(logs, pageRequest, totalHits, nextCursor);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //저장 시간이 같으면 로그 id로 순서를 고정 (logId가 없는 예전 인덱스/로그는 뒤로)
+    private List<SortBuilder<?>> logSorts() {
+        return List.of(
+                fieldSort("localDateTime").order(DESC),
+                fieldSort("logId").order(DESC).unmappedType("keyword").missing("_last"));
+    }
+
+    //로그에 찍힌 시간 순 (형식이 달라 시간이 없는 로그는 뒤로)
+    private List<SortBuilder<?>> eventSorts() {
+        return List.of(
+                fieldSort("eventTime").order(DESC).unmappedType("date").missing("_last"),
+                fieldSort("logId").order(DESC).unmappedType("keyword").missing("_last"));
+    }
+}
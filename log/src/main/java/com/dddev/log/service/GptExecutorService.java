@@ -0,0 +1,294 @@
+package com.dddev.log.service;
+
+import com.dddev.log.exception.ChatGptException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestClientResponseException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+//OpenAI 호출 전용 실행기
+//동시 호출 수를 제한해 OpenAI가 느려져도 Tomcat 스레드와 로그 저장이 함께 밀리지 않게 한다.
+//대기열은 우선순위(사용자 질문 > 자동 분석)별로, 같은 우선순위 안에서는 그라운드 단위 round-robin으로 꺼낸다.
+//429, 5xx 응답은 지터를 준 지수 백오프로 재시도하고, 결과 future를 취소하면 대기열에서 빠지거나 진행 중인 호출을 중단한다.
+@Slf4j
+@Service
+public class GptExecutorService {
+
+    public enum Priority {
+        //사용자가 기다리는 질문
+        INTERACTIVE,
+        //최근 로그 자동 분석 등
+        AUTO
+    }
+
+    @Value("${log.chat.executor.max-concurrency:4}")
+    private int maxConcurrency;
+    @Value("${log.chat.executor.queue-size:200}")
+    private int queueSize;
+    @Value("${log.chat.executor.max-retries:3}")
+    private int maxRetries;
+    @Value("${log.chat.executor.backoff-ms:500}")
+    private long backoffMs;
+    @Value("${log.chat.executor.max-backoff-ms:10000}")
+    private long maxBackoffMs;
+
+    //우선순위별 그라운드 대기열, 비어 있는 그라운드는 map에 남기지 않음
+    private final Map<Priority, LinkedHashMap<String, ArrayDeque<Task<?>>>> queues = new EnumMap<>(Priority.class);
+    private final Object lock = new Object();
+    private int running;
+    private int queued;
+
+    private ExecutorService workers;
+    private ScheduledExecutorService retryScheduler;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    @PostConstruct
+    void start() {
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new LinkedHashMap<>());
+        }
+        AtomicInteger sequence = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(maxConcurrency, r -> {
+            Thread thread = new Thread(r, "gpt-worker-" + sequence.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "gpt-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        retryScheduler.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    //블로킹 호출 (RestTemplate), worker 스레드에서 실행
+    public <T> CompletableFuture<T> execute(String groundId, Priority priority, Callable<T> call) {
+        return submit(new Task<>(groundId, priority, () -> onWorker(call)));
+    }
+
+    //이미 비동기인 호출 (스트리밍), future가 끝날 때까지 동시 호출 한 자리를 차지
+    public <T> CompletableFuture<T> executeAsync(String groundId, Priority priority, Supplier<CompletableFuture<T>> call) {
+        return submit(new Task<>(groundId, priority, call));
+    }
+
+    public int getRunning() {
+        synchronized (lock) {
+            return running;
+        }
+    }
+
+    public int getQueued() {
+        synchronized (lock) {
+            return queued;
+        }
+    }
+
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    public long getRetried() {
+        return retried.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    private <T> CompletableFuture<T> submit(Task<T> task) {
+        synchronized (lock) {
+            if (queued >= queueSize) {
+                rejected.increment();
+                throw new ChatGptException.BusyException("GPT 요청이 많아 처리할 수 없습니다. 잠시 후 다시 시도하세요.");
+            }
+            enqueue(task, false);
+        }
+        submitted.increment();
+        //사용자가 연결을 끊어 취소되면 대기열에서 빼고, 진행 중이면 호출도 취소
+        task.result.whenComplete((a, e) -> {
+            if (!task.result.isCancelled()) return;
+            remove(task);
+            CompletableFuture<T> current = task.current;
+            if (current != null) current.cancel(true);
+        });
+        dispatch();
+        return task.result;
+    }
+
+    private void enqueue(Task<?> task, boolean first) {
+        ArrayDeque<Task<?>> deque = queues.get(task.priority).computeIfAbsent(task.groundId, k -> new ArrayDeque<>());
+        if (first) {
+            deque.addFirst(task);
+        } else {
+            deque.addLast(task);
+        }
+        queued++;
+    }
+
+    private void remove(Task<?> task) {
+        synchronized (lock) {
+            LinkedHashMap<String, ArrayDeque<Task<?>>> grounds = queues.get(task.priority);
+            ArrayDeque<Task<?>> deque = grounds.get(task.groundId);
+            if (deque != null && deque.remove(task)) {
+                queued--;
+                if (deque.isEmpty()) grounds.remove(task.groundId);
+            }
+        }
+    }
+
+    //높은 우선순위부터, 같은 우선순위에서는 가장 오래 기다린 그라운드의 맨 앞 요청을 꺼내고 그 그라운드는 맨 뒤로
+    private Task<?> poll() {
+        for (Priority priority : Priority.values()) {
+            Iterator<Map.Entry<String, ArrayDeque<Task<?>>>> grounds = queues.get(priority).entrySet().iterator();
+            if (!grounds.hasNext()) continue;
+            Map.Entry<String, ArrayDeque<Task<?>>> next = grounds.next();
+            grounds.remove();
+            Task<?> task = next.getValue().pollFirst();
+            if (!next.getValue().isEmpty()) queues.get(priority).put(next.getKey(), next.getValue());
+            queued--;
+            return task;
+        }
+        return null;
+    }
+
+    private void dispatch() {
+        List<Task<?>> ready = new ArrayList<>();
+        synchronized (lock) {
+            while (running < maxConcurrency) {
+                Task<?> task = poll();
+                if (task == null) break;
+                running++;
+                ready.add(task);
+            }
+        }
+        ready.forEach(this::run);
+    }
+
+    private <T> void run(Task<T> task) {
+        if (task.result.isDone()) {
+            release();
+            dispatch();
+            return;
+        }
+        CompletableFuture<T> attempt;
+        try {
+            attempt = task.call.get();
+        } catch (RuntimeException e) {
+            attempt = CompletableFuture.failedFuture(e);
+        }
+        task.current = attempt;
+        if (task.result.isDone()) attempt.cancel(true);
+        attempt.whenComplete((a, e) -> finish(task, a, e));
+    }
+
+    private <T> void finish(Task<T> task, T answer, Throwable e) {
+        release();
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause == null) {
+            task.result.complete(answer);
+        } else if (!task.result.isDone() && task.attempt < maxRetries && retryable(cause)) {
+            long delay = backoff(task.attempt++, cause);
+            retried.increment();
+            log.warn("GROUND ID : {}, GPT 요청 실패 {}, {}ms 후 재시도 ({}/{})", task.groundId, cause.getMessage(), delay, task.attempt, maxRetries);
+            retryScheduler.schedule(() -> retry(task), delay, TimeUnit.MILLISECONDS);
+        } else {
+            failed.increment();
+            log.error("GROUND ID : {}, GPT 요청 실패 {}", task.groundId, cause.getMessage());
+            task.result.completeExceptionally(cause instanceof RestClientException
+                    ? new ChatGptException.GptExcetpion("GPT 응답을 받지 못했습니다. " + cause.getMessage())
+                    : cause);
+        }
+        dispatch();
+    }
+
+    //재시도는 대기열 제한과 관계없이 그라운드 대기열 맨 앞에 다시 넣음
+    private void retry(Task<?> task) {
+        if (task.result.isDone()) return;
+        synchronized (lock) {
+            enqueue(task, true);
+        }
+        dispatch();
+    }
+
+    private void release() {
+        synchronized (lock) {
+            running--;
+        }
+    }
+
+    private static boolean retryable(Throwable cause) {
+        if (!(cause instanceof RestClientResponseException)) return false;
+        int status = ((RestClientResponseException) cause).getRawStatusCode();
+        return status == 429 || status >= 500;
+    }
+
+    //backoffMs * 2^attempt 를 상한으로 절반~전체 사이 무작위 대기, Retry-After가 있으면 그보다 짧게 기다리지 않음
+    long backoff(int attempt, Throwable cause) {
+        long ceiling = Math.min(maxBackoffMs, backoffMs << Math.min(attempt, 20));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+        HttpHeaders headers = ((RestClientResponseException) cause).getResponseHeaders();
+        String retryAfter = headers == null ? null : headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (retryAfter != null) {
+            try {
+                delay = Math.max(delay, Math.min(maxBackoffMs, Long.parseLong(retryAfter.trim()) * 1000));
+            } catch (NumberFormatException ignored) {
+                //HTTP 날짜 형식은 무시하고 백오프 사용
+            }
+        }
+        return delay;
+    }
+
+    //worker 스레드에서 실행, 취소되면 worker 스레드 interrupt
+    private <T> CompletableFuture<T> onWorker(Callable<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Future<?> job = workers.submit(() -> {
+            try {
+                future.complete(call.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        future.whenComplete((a, e) -> {
+            if (future.isCancelled()) job.cancel(true);
+        });
+        return future;
+    }
+
+    private static class Task<T> {
+        private final String groundId;
+        private final Priority priority;
+        private final Supplier<CompletableFuture<T>> call;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private volatile CompletableFuture<T> current;
+        private int attempt;
+
+        private Task(String groundId, Priority priority, Supplier<CompletableFuture<T>> call) {
+            this.groundId = groundId;
+            this.priority = priority;
+            this.call = call;
+        }
+    }
+}
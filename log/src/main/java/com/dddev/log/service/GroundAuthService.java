@@ -5,15 +5,23 @@ import com.dddev.log.dto.res.TokenRes;
 import com.dddev.log.entity.GroundAuth;
 import com.dddev.log.exception.UserUnAuthException;
 import com.dddev.log.repository.GroundAuthRepository;
+import com.dddev.log.util.ExpiringCache;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.annotation.PostConstruct;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @RequiredArgsConstructor
@@ -24,6 +32,19 @@ public class GroundAuthService {
     private final GroundAuthRepository groundAuthRepository;
     private final AesUtil aesUtil;
 
+    @Value("${log.auth.cache.ttl-seconds:300}")
+    private long cacheTtlSeconds;
+    @Value("${log.auth.cache.max-size:10000}")
+    private int cacheMaxSize;
+
+    //검증이 끝난 토큰 캐시 (토큰 원문 -> 그라운드/유저 id)
+    private ExpiringCache<String, VerifiedToken> tokenCache;
+
+    @PostConstruct
+    void init() {
+        tokenCache = new ExpiringCache<>(cacheMaxSize, cacheTtlSeconds, TimeUnit.SECONDS);
+    }
+
     //토큰 저장
     public List<TokenRes> save(String token) throws Exception {
         String str = aesUtil.aes256Decrypt(token);
@@ -34,6 +55,8 @@ public class GroundAuthService {
         //Group 당 3개의 토큰 이상을 발급 불가
         if(groundAuths.size() >= 3) {
             groundAuthRepository.delete(groundAuths.get(0));
+            String removed = groundAuths.get(0).getToken();
+            afterCommit(() -> tokenCache.invalidate(removed));
         }
         GroundAuth groundAuth = new GroundAuth(userId, groundId, token);
         groundAuth.setLocalDateTime(LocalDateTime.now());
@@ -51,16 +74,22 @@ public class GroundAuthService {
 
      // 토큰으로 유효성 체크 및 그라운드 아이디 반환
     public String  checkValid(String token)  {
+        VerifiedToken verifiedToken = tokenCache.get(token);
+        if (verifiedToken != null) {
+            return verifiedToken.getGroundId();
+        }
         try{
             String str = aesUtil.aes256Decrypt(token);
             Map<String, Integer> userInfo = aesUtil.getUserInfo(str);
             Integer groundId = userInfo.get("groundId");
             Integer userId = userInfo.get("userId");
             List<String> tempToken = groundAuthRepository.findToken(groundId, userId);
-            if(tempToken == null){
+            if(tempToken == null || !tempToken.contains(token)){
                 throw new UserUnAuthException("토큰이 유효하지 않습니다.");
             }
-            return String.valueOf(groundId);
+            verifiedToken = new VerifiedToken(String.valueOf(groundId), userId);
+            tokenCache.put(token, verifiedToken);
+            return verifiedToken.getGroundId();
         } catch (Exception e){
             throw new UserUnAuthException("토큰이 유효하지 않습니다.");
         }
@@ -69,8 +98,32 @@ public class GroundAuthService {
     //비정상적인 요청으로 Group_id와 관련 된 토큰 삭제
     public void  deleteToken(String groundId) {
         List<GroundAuth> GroundAuths = groundAuthRepository.findByGroundId(Integer.parseInt(groundId));
-        GroundAuths.forEach(a -> {
-            groundAuthRepository.delete(a);
+        GroundAuths.forEach(a -> groundAuthRepository.delete(a));
+        afterCommit(() -> {
+            GroundAuths.forEach(a -> tokenCache.invalidate(a.getToken()));
+            tokenCache.invalidateIf((token, verifiedToken) -> verifiedToken.getGroundId().equals(groundId));
+        });
+    }
+
+    //삭제가 커밋된 뒤 캐시에서 제거
+    //커밋 전에 지우면 그 사이 다른 요청이 아직 DB에 남아 있는 토큰을 검증해 다시 캐시하고, 롤백되면 유효한 토큰을 지우게 된다.
+    private void afterCommit(Runnable invalidate) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                invalidate.run();
+            }
         });
     }
+
+    @Getter
+    @AllArgsConstructor
+    private static class VerifiedToken {
+        private final String groundId;
+        private final Integer userId;
+    }
 }
@@ -0,0 +1,191 @@
+package com.dddev.log.service;
+
+import com.dddev.log.dto.ElasticSearchLog;
+import com.dddev.log.util.LogCollapser;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+//ERROR 로그 급증 시 미리 GPT 분석
+//저장되는 로그에서 그라운드별 ERROR 수만 세고, ERROR가 잠잠해지면 백그라운드(낮은 우선순위)로 최근 로그 분석을 만들어 둔다.
+//GET /chat/analyze는 만들어 둔 분석이 있으면 바로 반환하고, 없을 때만 그 자리에서 분석한다.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LogAnalysisService {
+
+    private final ChatService chatService;
+
+    //분석을 시작할 최소 ERROR 수
+    @Value("${log.chat.analysis.burst-errors:3}")
+    private int burstErrors;
+    //마지막 ERROR 후 이 시간 동안 새 ERROR가 없으면 분석 (스택트레이스까지 저장되도록)
+    @Value("${log.chat.analysis.settle-ms:3000}")
+    private long settleMs;
+    //ERROR가 계속 들어와도 이 시간이 지나면 분석
+    @Value("${log.chat.analysis.max-wait-ms:30000}")
+    private long maxWaitMs;
+    //그라운드별 1시간에 미리 분석할 수 있는 횟수
+    @Value("${log.chat.analysis.max-per-hour:6}")
+    private int maxPerHour;
+    @Value("${log.chat.analysis.ttl-seconds:1800}")
+    private long ttlSeconds;
+
+    private final ConcurrentHashMap<String, Ground> grounds = new ConcurrentHashMap<>();
+
+    private final LongAdder precomputed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder served = new LongAdder();
+
+    //저장된 로그에서 ERROR 수만 셈 (저장 경로에서 호출되므로 GPT 호출 없음)
+    public void observe(String groundId, List<ElasticSearchLog> logs) {
+        int errors = 0;
+        for (ElasticSearchLog log : logs) {
+            if ("ERROR".equals(log.getLevel()) || "FATAL".equals(log.getLevel())) errors += LogCollapser.repeatCount(log);
+        }
+        if (errors == 0) return;
+        Ground ground = grounds.computeIfAbsent(groundId, k -> new Ground());
+        long now = System.nanoTime();
+        if (ground.pending.getAndAdd(errors) == 0) ground.firstErrorAt = now;
+        ground.lastErrorAt = now;
+    }
+
+    //만들어 둔 분석, 없거나 만료되었으면 null
+    public Analysis getAnalysis(String groundId) {
+        Ground ground = grounds.get(groundId);
+        Analysis analysis = ground == null ? null : ground.analysis;
+        if (analysis == null || System.nanoTime() - analysis.expiresAt >= 0) return null;
+        served.increment();
+        return analysis;
+    }
+
+    //지금 바로 분석 (만들어 둔 분석이 없을 때), 결과는 다음 요청을 위해 저장
+    public CompletableFuture<String> analyze(String groundId, String userId) {
+        Ground ground = grounds.computeIfAbsent(groundId, k -> new Ground());
+        int errors = ground.pending.get();
+        CompletableFuture<String> answer = chatService.chatGptLogAuto(groundId, userId);
+        answer.thenAccept(a -> store(ground, a, errors));
+        return answer;
+    }
+
+    public long getPrecomputed() {
+        return precomputed.sum();
+    }
+
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    public long getServed() {
+        return served.sum();
+    }
+
+    //ERROR가 잠잠해졌거나 오래 쌓인 그라운드를 백그라운드로 분석
+    @Scheduled(fixedDelayString = "${log.chat.analysis.check-ms:2000}")
+    void precompute() {
+        long now = System.nanoTime();
+        grounds.forEach((groundId, ground) -> {
+            int errors = ground.pending.get();
+            if (errors == 0 || ground.running) return;
+            //max-wait 동안 burst-errors만큼 쌓이지 않은 ERROR는 급증이 아니므로 버림
+            if (errors < burstErrors) {
+                if (now - ground.firstErrorAt >= TimeUnit.MILLISECONDS.toNanos(maxWaitMs)) ground.pending.addAndGet(-errors);
+                return;
+            }
+            if (now - ground.lastErrorAt < TimeUnit.MILLISECONDS.toNanos(settleMs)
+                    && now - ground.firstErrorAt < TimeUnit.MILLISECONDS.toNanos(maxWaitMs)) return;
+            //1시간 예산을 넘으면 이번 ERROR는 분석하지 않음
+            if (!ground.tryAcquire(now, maxPerHour)) {
+                ground.pending.addAndGet(-errors);
+                skipped.increment();
+                log.warn("GROUND ID : {}, ERROR {}건 미리 분석 생략 (1시간 {}회 초과)", groundId, errors, maxPerHour);
+                return;
+            }
+            ground.pending.addAndGet(-errors);
+            ground.running = true;
+            log.info("GROUND ID : {}, ERROR {}건 미리 분석 시작", groundId, errors);
+            try {
+                chatService.chatGptLogAuto(groundId, null).whenComplete((answer, e) -> {
+                    ground.running = false;
+                    if (e != null) {
+                        log.error("GROUND ID : {}, 미리 분석 실패 {}", groundId, e.getMessage());
+                        return;
+                    }
+                    store(ground, answer, errors);
+                    precomputed.increment();
+                });
+            } catch (Exception e) {
+                ground.running = false;
+                log.error("GROUND ID : {}, 미리 분석 실패 {}", groundId, e.getMessage());
+            }
+        });
+        //오래 쓰지 않은 그라운드 정리 (1시간 예산이 초기화되지 않도록 최소 1시간)
+        long idleNanos = TimeUnit.SECONDS.toNanos(Math.max(ttlSeconds, TimeUnit.HOURS.toSeconds(1)));
+        grounds.entrySet().removeIf(a -> a.getValue().isIdle(now, idleNanos));
+    }
+
+    private void store(Ground ground, String answer, int errors) {
+        ground.analysis = new Analysis(answer, LocalDateTime.now(), errors, System.nanoTime() + TimeUnit.SECONDS.toNanos(ttlSeconds));
+    }
+
+    public static class Analysis {
+        private final String answer;
+        private final LocalDateTime createdAt;
+        private final int errors;
+        private final long expiresAt;
+
+        private Analysis(String answer, LocalDateTime createdAt, int errors, long expiresAt) {
+            this.answer = answer;
+            this.createdAt = createdAt;
+            this.errors = errors;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getAnswer() {
+            return answer;
+        }
+
+        public LocalDateTime getCreatedAt() {
+            return createdAt;
+        }
+
+        public int getErrors() {
+            return errors;
+        }
+    }
+
+    private static class Ground {
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile long firstErrorAt;
+        private volatile long lastErrorAt = System.nanoTime();
+        private volatile boolean running;
+        private volatile Analysis analysis;
+        //최근 1시간 미리 분석 시각 (precompute 스레드에서만 사용)
+        private final ArrayDeque<Long> startedAt = new ArrayDeque<>();
+
+        private boolean tryAcquire(long now, int maxPerHour) {
+            long hour = TimeUnit.HOURS.toNanos(1);
+            while (!startedAt.isEmpty() && now - startedAt.peekFirst() >= hour) startedAt.pollFirst();
+            if (startedAt.size() >= maxPerHour) return false;
+            startedAt.addLast(now);
+            return true;
+        }
+
+        private boolean isIdle(long now, long ttlNanos) {
+            Analysis current = analysis;
+            return pending.get() == 0 && !running && now - lastErrorAt >= ttlNanos
+                    && (current == null || now - current.expiresAt >= 0);
+        }
+    }
+}
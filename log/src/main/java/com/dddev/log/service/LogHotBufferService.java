@@ -0,0 +1,189 @@
+package com.dddev.log.service;
+
+import com.dddev.log.dto.CursorPage;
+import com.dddev.log.dto.ElasticSearchLog;
+import com.dddev.log.util.LogCursor;
+import com.dddev.log.util.OffHeapLogBuffer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+//최근 로그 hot buffer
+//그라운드별 최근 로그를 힙 밖 버퍼(OffHeapLogBuffer)에 두고, 최신 페이지와 최근 로그 조회를 저장소 검색 없이 처리한다.
+//저장소에 저장된 로그만 넣고, 처음 조회할 때 저장소의 최근 로그로 채운다(warm).
+//버퍼 범위를 넘는 페이지는 null을 반환하고 호출하는 쪽이 저장소에서 조회한다.
+//버퍼에는 이 서버가 저장한 로그만 들어가므로 서버가 한 대일 때만 켠다 (log.hot.enabled=true, 기본 꺼짐).
+//서버가 여러 대면 다른 서버가 저장한 로그가 빠진 최신 페이지를 반환하게 된다.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LogHotBufferService {
+
+    private final LogStore logStore;
+
+    //서버가 한 대일 때만 true
+    @Value("${log.hot.enabled:false}")
+    private boolean enabled;
+    @Value("${log.hot.lines-per-ground:1000}")
+    private int linesPerGround;
+    @Value("${log.hot.bytes-per-ground:262144}")
+    private int bytesPerGround;
+    @Value("${log.hot.max-grounds:256}")
+    private int maxGrounds;
+    //버퍼를 만든 뒤 이 시간이 지나야 저장소로 채움 (버퍼가 생기기 직전에 저장되어 아직 검색되지 않는 로그가 빠지지 않도록)
+    @Value("${log.hot.warm-delay-ms:2000}")
+    private long warmDelayMs;
+    //이 시간 동안 저장, 조회가 없는 그라운드의 버퍼는 반납
+    @Value("${log.hot.idle-minutes:30}")
+    private long idleMinutes;
+
+    private final ConcurrentHashMap<String, Ground> grounds = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    //저장된 로그 추가 (저장 경로에서 호출)
+    public void add(String groundId, List<ElasticSearchLog> logs) {
+        if (!enabled || logs.isEmpty()) return;
+        Ground ground = ground(groundId);
+        if (ground == null) return;
+        synchronized (ground) {
+            logs.forEach(ground.buffer::add);
+            if (ground.warmed) ground.total += logs.size();
+        }
+        ground.lastAccess = System.nanoTime();
+    }
+
+    //최신 순 page번째(cursor가 있으면 cursor 다음) 페이지, 버퍼 범위를 넘으면 null
+    public CursorPage<ElasticSearchLog> latest(String groundId, int page, String cursor) {
+        Ground ground = warmed(groundId);
+        if (ground == null) return miss();
+        LogCursor logCursor = cursor == null || cursor.isBlank() ? null : LogCursor.decode(cursor);
+        List<Object> searchAfter = logCursor == null ? null : logCursor.getSearchAfter();
+        if (logCursor != null && (logCursor.getPitId() != null || searchAfter.size() != 2
+                || !(searchAfter.get(0) instanceof Number) || !(searchAfter.get(1) instanceof String))) {
+            return miss();
+        }
+        PageRequest pageRequest = logCursor == null ? PageRequest.of(page, LogStore.PAGE_SIZE) : PageRequest.of(0, LogStore.PAGE_SIZE);
+        List<ElasticSearchLog> logs;
+        long total;
+        synchronized (ground) {
+            OffHeapLogBuffer buffer = ground.buffer;
+            long from = logCursor == null ? pageRequest.getOffset()
+                    : buffer.countAfter(((Number) searchAfter.get(0)).longValue(), (String) searchAfter.get(1));
+            if (from + LogStore.PAGE_SIZE > buffer.size() && !buffer.isComplete()) return miss();
+            logs = buffer.read((int) Math.min(from, Integer.MAX_VALUE), LogStore.PAGE_SIZE);
+            total = ground.total;
+        }
+        String nextCursor = null;
+        if (logs.size() == LogStore.PAGE_SIZE) {
+            ElasticSearchLog last = logs.get(logs.size() - 1);
+            //logId가 없는 예전 로그는 저장소마다 정렬 값이 달라 저장소에서 조회
+            if (last.getLogId() == null) return miss();
+            nextCursor = new LogCursor(List.of(OffHeapLogBuffer.millis(last.getLocalDateTime()), last.getLogId()), null).encode();
+        }
+        hits.increment();
+        return new CursorPage<>(logs, pageRequest, total, nextCursor);
+    }
+
+    //최근 로그 size줄 (최신 순), 버퍼 범위를 넘으면 null
+    public List<ElasticSearchLog> recent(String groundId, int size) {
+        Ground ground = warmed(groundId);
+        if (ground == null) return miss();
+        synchronized (ground) {
+            if (size > ground.buffer.size() && !ground.buffer.isComplete()) return miss();
+            hits.increment();
+            return ground.buffer.read(0, size);
+        }
+    }
+
+    //그라운드 로그를 모두 지웠을 때
+    public void clear(String groundId) {
+        grounds.remove(groundId);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int getGroundCount() {
+        return grounds.size();
+    }
+
+    @Scheduled(fixedDelayString = "${log.hot.cleanup-ms:60000}")
+    void releaseIdle() {
+        long idleNanos = TimeUnit.MINUTES.toNanos(idleMinutes);
+        long now = System.nanoTime();
+        grounds.entrySet().removeIf(a -> now - a.getValue().lastAccess > idleNanos);
+    }
+
+    //버퍼가 없으면 만듦, 그라운드 수가 최대치면 null
+    private Ground ground(String groundId) {
+        Ground ground = grounds.get(groundId);
+        if (ground != null || grounds.size() >= maxGrounds) return ground;
+        return grounds.computeIfAbsent(groundId, k -> new Ground(new OffHeapLogBuffer(bytesPerGround, linesPerGround)));
+    }
+
+    //저장소로 채운 버퍼, 아직 채울 수 없거나 다른 스레드가 채우는 중이면 null
+    private Ground warmed(String groundId) {
+        if (!enabled) return null;
+        Ground ground = ground(groundId);
+        if (ground == null) return null;
+        ground.lastAccess = System.nanoTime();
+        if (ground.warmed) return ground;
+        if (System.nanoTime() - ground.createdAt < TimeUnit.MILLISECONDS.toNanos(warmDelayMs) || !ground.warming.compareAndSet(false, true)) {
+            return null;
+        }
+        try {
+            List<ElasticSearchLog> logs = logStore.recent(groundId, linesPerGround);
+            long count = logStore.count(groundId);
+            synchronized (ground) {
+                logs.forEach(ground.buffer::add);
+                //저장소에 더 오래된 로그가 있을 수 있으므로 가져온 로그 중 가장 오래된 로그까지만 버퍼 범위
+                if (logs.size() == linesPerGround) ground.buffer.raiseFloor(logs.get(logs.size() - 1));
+                ground.total = count;
+                ground.warmed = true;
+            }
+            log.info("GROUND ID : {}, 최근 로그 버퍼 준비, {}줄", groundId, logs.size());
+            return ground;
+        } catch (Exception e) {
+            //로그가 없는 그라운드 등, 조회는 저장소에서 처리
+            grounds.remove(groundId, ground);
+            return null;
+        } finally {
+            ground.warming.set(false);
+        }
+    }
+
+    private <T> T miss() {
+        misses.increment();
+        return null;
+    }
+
+    private static class Ground {
+        private final OffHeapLogBuffer buffer;
+        private final long createdAt = System.nanoTime();
+        private final AtomicBoolean warming = new AtomicBoolean();
+        private volatile boolean warmed;
+        private volatile long lastAccess = createdAt;
+        //저장소 로그 수 (채울 때 수 + 이후 저장된 수)
+        private long total;
+
+        private Ground(OffHeapLogBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.dddev.log.service;
+
+import com.dddev.log.dto.ElasticSearchLog;
+import com.dddev.log.dto.res.LogMigrateRes;
+import com.dddev.log.util.ExpiringCache;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.elasticsearch.action.admin.indices.alias.Alias;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.index.reindex.BulkByScrollResponse;
+import org.elasticsearch.index.reindex.ReindexRequest;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.script.ScriptType;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.elasticsearch.NoSuchIndexException;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
+
+//그라운드별 로그 인덱스 관리
+//로그는 날짜별 인덱스(log-{groundId}-{yyyy.MM.dd})에 저장하고 alias(log-{groundId})로 묶어서 조회한다.
+//예전처럼 groundId 이름으로 만든 인덱스가 남아 있으면 조회 대상에 함께 포함한다.
+//로그 한 줄마다 exists()를 호출하지 않도록 확인 결과를 TTL 동안 기억한다.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "log.store.type", havingValue = "elasticsearch", matchIfMissing = true)
+public class LogIndexService {
+
+    private static final String PREFIX = "log-";
+    private static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormatter.ofPattern("yyyy.MM.dd");
+    private static final Pattern PARTITION_NAME = Pattern.compile("^log-(.+)-(\\d{4}\\.\\d{2}\\.\\d{2})$");
+
+    private final ElasticsearchOperations elasticsearchOperations;
+    private final RestHighLevelClient elasticsearchClient;
+
+    @Value("${log.index.cache.ttl-seconds:600}")
+    private long ttlSeconds;
+    @Value("${log.index.cache.missing-ttl-seconds:5}")
+    private long missingTtlSeconds;
+    @Value("${log.index.cache.max-size:10000}")
+    private int maxSize;
+    //보관 기간(일), 0 이하면 삭제하지 않음
+    @Value("${log.index.retention-days:30}")
+    private int retentionDays;
+    //기간 검색에서 날짜별 인덱스를 직접 고르는 최대 일수, 넘으면 alias 전체 검색
+    @Value("${log.index.max-routed-days:31}")
+    private int maxRoutedDays;
+    //예전 인덱스 이전 시 하루치 reindex 요청의 최대 대기 시간
+    @Value("${log.index.migrate-timeout-ms:600000}")
+    private int migrateTimeoutMs;
+
+    //ElasticSearchLog의 @Setting/@Mapping (n-gram 분석기와 부분 문자열 검색용 log.ngram 필드)
+    private Map<String, Object> logSettings;
+    private Document logMapping;
+
+    private ExpiringCache<String, Boolean> indexCache;
+    //인덱스 이름의 hash로 나눈 생성 락, 같은 인덱스를 여러 스레드가 동시에 만들지 않도록 (인덱스가 늘어도 락 수는 고정)
+    private static final int CREATE_LOCKS = 64;
+    private final Object[] createLocks = new Object[CREATE_LOCKS];
+
+    @PostConstruct
+    void init() {
+        indexCache = new ExpiringCache<>(maxSize, ttlSeconds, TimeUnit.SECONDS);
+        for (int i = 0; i < CREATE_LOCKS; i++) {
+            createLocks[i] = new Object();
+        }
+        IndexOperations indexOperations = elasticsearchOperations.indexOps(ElasticSearchLog.class);
+        logSettings = indexOperations.createSettings();
+        logMapping = indexOperations.createMapping();
+    }
+
+    //인덱스 존재 여부 (없는 인덱스는 짧게만 기억)
+    public boolean exists(String index) {
+        Boolean cached = indexCache.get(index);
+        if (cached != null) return cached;
+        boolean exists = indexOps(index).exists();
+        remember(index, exists);
+        return exists;
+    }
+
+    public String aliasOf(String groundId) {
+        return PREFIX + groundId;
+    }
+
+    public String partitionOf(String groundId, LocalDate date) {
+        return PREFIX + groundId + "-" + date.format(PARTITION_FORMAT);
+    }
+
+    //로그를 저장할 날짜별 인덱스, 없으면 alias와 함께 생성
+    public String writeIndex(String groundId, LocalDateTime localDateTime) {
+        String index = partitionOf(groundId, localDateTime.toLocalDate());
+        createIfAbsent(index, aliasOf(groundId));
+        return index;
+    }
+
+    //그라운드의 전체 로그 조회 대상 (alias + 예전 인덱스)
+    public IndexCoordinates readIndices(String groundId) {
+        List<String> indices = new ArrayList<>(2);
+        if (exists(aliasOf(groundId))) indices.add(aliasOf(groundId));
+        if (exists(groundId)) indices.add(groundId);
+        if (indices.isEmpty()) throw new NoSuchIndexException(groundId, null);
+        return IndexCoordinates.of(indices.toArray(new String[0]));
+    }
+
+    //기간과 겹치는 날짜별 인덱스만 조회 대상으로 (기간이 너무 길면 alias 전체)
+    public IndexCoordinates readIndices(String groundId, LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        LocalDate start = startDateTime.toLocalDate();
+        LocalDate end = endDateTime.toLocalDate();
+        if (end.isBefore(start) || ChronoUnit.DAYS.between(start, end) >= maxRoutedDays) {
+            return readIndices(groundId);
+        }
+        List<String> indices = new ArrayList<>();
+        for (LocalDate date = start; !date.isAfter(end); date = date.plusDays(1)) {
+            String index = partitionOf(groundId, date);
+            if (exists(index)) indices.add(index);
+        }
+        if (exists(groundId)) indices.add(groundId);
+        //기간에 해당하는 인덱스가 없으면 alias로 검색해 빈 결과(또는 인덱스 없음)를 그대로 돌려준다
+        if (indices.isEmpty()) return readIndices(groundId);
+        return IndexCoordinates.of(indices.toArray(new String[0]));
+    }
+
+    //조회할 로그가 하나라도 있는지
+    public boolean hasLogs(String groundId) {
+        return exists(aliasOf(groundId)) || exists(groundId);
+    }
+
+    //그라운드의 날짜별 인덱스 목록
+    public List<String> partitions(String groundId) {
+        return getIndices(PREFIX + groundId + "-*");
+    }
+
+    //그라운드의 모든 로그 인덱스 삭제, 지운 인덱스가 없으면 false
+    public boolean deleteAll(String groundId) {
+        List<String> indices = new ArrayList<>(partitions(groundId));
+        if (exists(groundId)) indices.add(groundId);
+        indices.forEach(this::delete);
+        invalidate(aliasOf(groundId));
+        return !indices.isEmpty();
+    }
+
+    //보관 기간이 지난 날짜별 인덱스를 통째로 삭제 (delete-by-query 없이 인덱스 단위로)
+    @Scheduled(cron = "${log.index.retention-cron:0 10 0 * * *}")
+    public void dropExpiredPartitions() {
+        if (retentionDays <= 0) return;
+        LocalDate expired = LocalDate.now().minusDays(retentionDays);
+        int dropped = 0;
+        for (String index : getIndices(PREFIX + "*")) {
+            Matcher matcher = PARTITION_NAME.matcher(index);
+            if (!matcher.matches()) continue;
+            try {
+                if (!LocalDate.parse(matcher.group(2), PARTITION_FORMAT).isAfter(expired)) {
+                    delete(index);
+                    invalidate(aliasOf(matcher.group(1)));
+                    dropped++;
+                }
+            } catch (DateTimeParseException e) {
+                log.warn("INDEX : {}, 날짜를 읽을 수 없는 인덱스", index);
+            } catch (RuntimeException e) {
+                log.error("INDEX : {}, 보관 기간 만료 인덱스 삭제 실패 {}", index, e.getMessage());
+            }
+        }
+        if (dropped > 0) log.info("보관 기간({}일) 지난 인덱스 {}개 삭제", retentionDays, dropped);
+    }
+
+    //groundId 이름의 예전 인덱스를 날짜별 인덱스로 이전 (n-gram 매핑 적용)
+    //하루 단위로 reindex하고, 전부 옮겨졌을 때만 예전 인덱스를 삭제한다. 남아 있는 동안은 조회에 함께 포함된다.
+    public LogMigrateRes migrateLegacy(String groundId) {
+        long total = elasticsearchOperations.count(Query.findAll(), IndexCoordinates.of(groundId));
+        long migrated = 0;
+        int partitions = 0;
+        RequestOptions options = RequestOptions.DEFAULT.toBuilder()
+                .setRequestConfig(RequestConfig.custom().setSocketTimeout(migrateTimeoutMs).build())
+                .build();
+        try {
+            for (LocalDate date : legacyDays(groundId)) {
+                String index = partitionOf(groundId, date);
+                createIfAbsent(index, aliasOf(groundId));
+                ReindexRequest reindexRequest = new ReindexRequest()
+                        .setSourceIndices(groundId)
+                        .setSourceQuery(rangeQuery("localDateTime").gte(date.toString()).lt(date.plusDays(1).toString()))
+                        .setDestIndex(index)
+                        .setRefresh(true);
+                //예전 로그에는 logId가 없으니 문서 id로 채움
+                reindexRequest.setScript(new Script(ScriptType.INLINE, "painless",
+                        "if (ctx._source.logId == null) { ctx._source.logId = ctx._id; }", Collections.emptyMap()));
+                BulkByScrollResponse response = elasticsearchClient.reindex(reindexRequest, options);
+                if (!response.getBulkFailures().isEmpty() || !response.getSearchFailures().isEmpty()) {
+                    log.error("INDEX : {} -> {}, 이전 중 {}건 실패", groundId, index,
+                            response.getBulkFailures().size() + response.getSearchFailures().size());
+                }
+                migrated += response.getCreated() + response.getUpdated();
+                partitions++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        boolean legacyDeleted = migrated == total;
+        if (legacyDeleted) {
+            delete(groundId);
+        }
+        log.info("INDEX : {}, 날짜별 인덱스 {}개로 {}/{}건 이전", groundId, partitions, migrated, total);
+        return LogMigrateRes.builder().total(total).migrated(migrated).partitions(partitions).legacyDeleted(legacyDeleted).build();
+    }
+
+    //예전 인덱스에 로그가 있는 날짜 목록
+    private List<LocalDate> legacyDays(String groundId) throws IOException {
+        SearchSourceBuilder source = new SearchSourceBuilder()
+                .size(0)
+                .aggregation(AggregationBuilders.dateHistogram("days")
+                        .field("localDateTime")
+                        .calendarInterval(DateHistogramInterval.DAY)
+                        .minDocCount(1));
+        SearchResponse response = elasticsearchClient.search(new SearchRequest(groundId).source(source), RequestOptions.DEFAULT);
+        Histogram days = response.getAggregations().get("days");
+        List<LocalDate> result = new ArrayList<>();
+        for (Histogram.Bucket bucket : days.getBuckets()) {
+            result.add(((ZonedDateTime) bucket.getKey()).toLocalDate());
+        }
+        return result;
+    }
+
+    //인덱스가 없으면 생성, 동시에 첫 로그가 들어와도 한 스레드만 생성
+    private void createIfAbsent(String index, String alias) {
+        if (Boolean.TRUE.equals(indexCache.get(index))) return;
+        synchronized (createLocks[(index.hashCode() & Integer.MAX_VALUE) % CREATE_LOCKS]) {
+            if (Boolean.TRUE.equals(indexCache.get(index))) return;
+            if (!indexOps(index).exists()) {
+                try {
+                    elasticsearchClient.indices().create(new CreateIndexRequest(index)
+                            .settings(logSettings)
+                            .mapping(logMapping)
+                            .alias(new Alias(alias)), RequestOptions.DEFAULT);
+                    log.info("INDEX : {}, 인덱스 생성", index);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (RuntimeException e) {
+                    //다른 서버가 먼저 만든 경우
+                    if (!indexOps(index).exists()) throw e;
+                }
+            } else {
+                //이전 버전 매핑으로 만든 인덱스에 새 필드 추가
+                try {
+                    indexOps(index).putMapping(logMapping);
+                } catch (RuntimeException e) {
+                    log.warn("INDEX : {}, 매핑 추가 실패 {}", index, e.getMessage());
+                }
+            }
+            remember(index, true);
+            remember(alias, true);
+        }
+    }
+
+    private List<String> getIndices(String pattern) {
+        try {
+            return Arrays.asList(elasticsearchClient.indices().get(new GetIndexRequest(pattern), RequestOptions.DEFAULT).getIndices());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //인덱스 삭제 후 캐시 무효화
+    public void delete(String index) {
+        try {
+            indexOps(index).delete();
+        } finally {
+            invalidate(index);
+        }
+    }
+
+    public void invalidate(String index) {
+        indexCache.invalidate(index);
+    }
+
+    private void remember(String index, boolean exists) {
+        if (exists) {
+            indexCache.put(index, true);
+        } else {
+            indexCache.put(index, false, missingTtlSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    private IndexOperations indexOps(String index) {
+        return elasticsearchOperations.indexOps(IndexCoordinates.of(index));
+    }
+}
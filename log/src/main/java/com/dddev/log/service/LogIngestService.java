@@ -0,0 +1,562 @@
+package com.dddev.log.service;
+
+import com.dddev.log.dto.ElasticSearchLog;
+import com.dddev.log.dto.res.IngestStatsRes;
+import com.dddev.log.dto.res.LogBulkRes;
+import com.dddev.log.util.LogRingBuffer;
+import com.dddev.log.util.LogWal;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+//로그 저장 요청을 대기열에 넣고 bulk로 저장소에 저장
+//log.ingest.wal.enabled(기본)면 로컬 디스크 WAL에 쓰고 바로 응답, replayer 스레드가 WAL을 순서대로 읽어 저장한다.
+//저장소가 응답하지 않은 그라운드는 간격을 늘려가며 잠시 저장을 미루고(park), 그 그라운드의 로그와 로그별로 저장에 실패한 로그는
+//retry WAL로 옮겨 나중에 다시 저장한다. 그 사이 다른 그라운드의 로그는 계속 저장한다.
+//checkpoint는 저장소 디스크에 반영(flush)되고 retry WAL에 옮긴 로그가 디스크에 반영된 뒤에만 옮긴다 (재시작해도 이어서 저장).
+//다시 시도할 횟수를 넘은 로그는 dead-letter WAL로 옮긴다. (dead-letter 경로를 log.ingest.wal.path로 지정해 시작하면 다시 저장)
+//WAL을 끄면 메모리 대기열과 flusher 스레드를 쓰고, 저장에 실패한 로그는 버린다.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LogIngestService {
+
+    private final ElasticSearchLogService elasticSearchLogService;
+
+    @Value("${log.ingest.queue-capacity:65536}")
+    private int queueCapacity;
+    @Value("${log.ingest.flusher-threads:2}")
+    private int flusherThreads;
+    @Value("${log.ingest.batch-size:500}")
+    private int batchSize;
+    @Value("${log.ingest.flush-interval-ms:200}")
+    private long flushIntervalMs;
+    @Value("${log.ingest.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
+    @Value("${log.ingest.wal.enabled:true}")
+    private boolean walEnabled;
+    @Value("${log.ingest.wal.path:./data/wal}")
+    private String walPath;
+    @Value("${log.ingest.wal.segment-mb:64}")
+    private int walSegmentMb;
+    @Value("${log.ingest.wal.max-mb:1024}")
+    private long walMaxMb;
+    //fsync 주기 (그 사이 쓴 로그를 한 번에 디스크에 반영)
+    @Value("${log.ingest.wal.fsync-interval-ms:100}")
+    private long fsyncIntervalMs;
+    //true면 fsync가 끝난 뒤 응답
+    @Value("${log.ingest.wal.sync-ack:false}")
+    private boolean syncAck;
+    //로그별 저장 실패 재시도 횟수, 넘으면 dead-letter로 옮김 (저장소 요청 자체가 실패하면 max-unavailable-retries)
+    @Value("${log.ingest.wal.max-retries:3}")
+    private int maxRetries;
+    //저장소 요청이 예외로 끝난 그라운드의 연속 재시도 횟수, 넘으면 그 그라운드의 로그를 dead-letter로 옮김 (0 이하면 될 때까지 재시도)
+    @Value("${log.ingest.wal.max-unavailable-retries:10}")
+    private int maxUnavailableRetries;
+    //다시 저장할 로그를 보관하는 WAL (크기 제한은 log.ingest.wal.max-mb, 가득 차면 dead-letter로 옮김)
+    @Value("${log.ingest.wal.retry-path:./data/wal-retry}")
+    private String retryPath;
+    @Value("${log.ingest.wal.dead-letter-path:./data/wal-dead-letter}")
+    private String deadLetterPath;
+    @Value("${log.ingest.wal.retry-backoff-ms:500}")
+    private long retryBackoffMs;
+    @Value("${log.ingest.wal.max-backoff-ms:30000}")
+    private long maxBackoffMs;
+
+    private LogRingBuffer<Entry> queue;
+    private LogWal wal;
+    private LogWal retries;
+    //처음 쓸 때 엶
+    private LogWal deadLetters;
+    //저장을 미룬 그라운드 (replayer 스레드에서만 사용)
+    private final Map<String, Parked> parked = new HashMap<>();
+    //retry WAL을 다시 읽을 시간 (replayer 스레드에서만 사용)
+    private boolean retryScheduled;
+    private long nextRetryNanos;
+    private final List<Thread> flushers = new ArrayList<>();
+    private volatile boolean running;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder flushed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder flushCount = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private final AtomicLong maxFlushMillis = new AtomicLong();
+    private volatile long lastFlushMillis;
+    //최근 bulk 저장 시간의 지수 이동 평균 (과부하 판단용)
+    private volatile double recentFlushMillis;
+
+    @PostConstruct
+    void start() throws IOException {
+        running = true;
+        if (walEnabled) {
+            wal = new LogWal(Paths.get(walPath), walSegmentMb << 20, walMaxMb << 20);
+            retries = new LogWal(Paths.get(retryPath), walSegmentMb << 20, walMaxMb << 20);
+            if (retries.getPending() > 0) scheduleRetry(System.nanoTime());
+            startThread(this::runReplayer, "log-wal-replayer");
+            startThread(this::runSyncer, "log-wal-sync");
+            log.info("로그 저장 WAL 시작, 경로 {}, segment {}MB, 최대 {}MB, 남은 로그 {}줄, 다시 저장할 로그 {}줄",
+                    walPath, walSegmentMb, walMaxMb, wal.getPending(), retries.getPending());
+            return;
+        }
+        queue = new LogRingBuffer<>(queueCapacity);
+        for (int i = 0; i < flusherThreads; i++) {
+            startThread(this::runFlusher, "log-flusher-" + i);
+        }
+        log.info("로그 저장 대기열 시작, 크기 {}, flusher {}개, batch {}줄, 주기 {}ms", queue.capacity(), flusherThreads, batchSize, flushIntervalMs);
+    }
+
+    //로그를 대기열에 추가, 대기열(WAL이면 디스크 한도)이 가득 찼거나 종료 중이면 false
+    public boolean enqueue(String groundId, ElasticSearchLog elasticSearchLog) {
+        return enqueueAll(groundId, List.of(elasticSearchLog))[0];
+    }
+
+    //여러 로그를 순서대로 대기열에 추가, 로그별 추가 여부 (sync-ack면 모두 쓴 뒤 한 번만 fsync를 기다림)
+    public boolean[] enqueueAll(String groundId, List<ElasticSearchLog> elasticSearchLogs) {
+        boolean[] accepted = new boolean[elasticSearchLogs.size()];
+        long last = -1;
+        for (int i = 0; i < accepted.length && running; i++) {
+            if (wal != null) {
+                long position = append(groundId, elasticSearchLogs.get(i));
+                accepted[i] = position >= 0;
+                if (accepted[i]) last = position;
+            } else {
+                accepted[i] = queue.offer(new Entry(groundId, elasticSearchLogs.get(i)));
+            }
+            if (accepted[i]) {
+                enqueued.increment();
+            } else {
+                rejected.increment();
+            }
+        }
+        if (syncAck && last >= 0) awaitSync(groundId, last);
+        return accepted;
+    }
+
+    public int getQueueDepth() {
+        return wal != null ? (int) Math.min(Integer.MAX_VALUE, wal.getPending()) : queue.size();
+    }
+
+    //WAL이면 0 (디스크 사용량은 getQueueUsage)
+    public int getQueueCapacity() {
+        return wal != null ? 0 : queue.capacity();
+    }
+
+    //대기열 적재율 (WAL이면 남은 로그가 차지하는 디스크 / 최대 크기)
+    public double getQueueUsage() {
+        return wal != null ? wal.getPendingBytes() / (double) wal.getMaxBytes() : queue.size() / (double) queue.capacity();
+    }
+
+    public double getRecentFlushMillis() {
+        return recentFlushMillis;
+    }
+
+    public IngestStatsRes getStats() {
+        long count = flushCount.sum();
+        return IngestStatsRes.builder()
+                .queueDepth(getQueueDepth())
+                .queueCapacity(getQueueCapacity())
+                .queueUsage(getQueueUsage())
+                .walBytes(wal == null ? 0 : wal.getPendingBytes())
+                .walMaxBytes(wal == null ? 0 : wal.getMaxBytes())
+                .deferred(retries == null ? 0 : retries.getPending())
+                .enqueued(enqueued.sum())
+                .rejected(rejected.sum())
+                .flushed(flushed.sum())
+                .failed(failed.sum())
+                .flushCount(count)
+                .avgFlushMillis(count == 0 ? 0 : flushNanos.sum() / 1_000_000.0 / count)
+                .maxFlushMillis(maxFlushMillis.get())
+                .lastFlushMillis(lastFlushMillis)
+                .build();
+    }
+
+    //batch가 가득 차거나 첫 로그가 들어온 뒤 flushIntervalMs가 지나면 저장
+    private void runFlusher() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        long deadline = 0;
+        while (running || !queue.isEmpty()) {
+            boolean wasEmpty = batch.isEmpty();
+            int drained = queue.drainTo(batch, batchSize - batch.size());
+            if (wasEmpty && drained > 0) {
+                deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+            }
+            if (!batch.isEmpty() && (batch.size() >= batchSize || System.nanoTime() - deadline >= 0 || !running)) {
+                flush(batch);
+                batch.clear();
+            } else if (drained == 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+        if (!batch.isEmpty()) {
+            flush(batch);
+        }
+    }
+
+    private void flush(List<Entry> batch) {
+        Flush result = save(batch);
+        failed.add(result.getUnavailable().size() + result.getFailed().size());
+    }
+
+    //WAL에 쓴 순서대로 batch를 읽어 저장 (batch 크기, 주기는 flusher와 같음)
+    private void runReplayer() {
+        List<LogWal.Record> batch = new ArrayList<>(batchSize);
+        long position = wal.getCheckpoint();
+        long deadline = 0;
+        while (running) {
+            boolean wasEmpty = batch.isEmpty();
+            List<LogWal.Record> records = wal.read(position, batchSize - batch.size());
+            if (!records.isEmpty()) {
+                batch.addAll(records);
+                position = records.get(records.size() - 1).getPosition();
+                if (wasEmpty) {
+                    deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                }
+            }
+            //로그가 계속 들어와도 미룬 로그를 다시 저장할 수 있도록 batch 저장과 별개로 확인
+            boolean retryDue = retryScheduled && System.nanoTime() - nextRetryNanos >= 0;
+            if (!batch.isEmpty() && (batch.size() >= batchSize || System.nanoTime() - deadline >= 0)) {
+                replay(batch);
+                batch.clear();
+            } else if (records.isEmpty() && !retryDue) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+            if (retryDue) {
+                retryDeferred();
+            }
+        }
+        if (!batch.isEmpty()) {
+            replay(batch);
+        }
+    }
+
+    //batch를 저장하고 저장하지 못한 로그는 retry WAL로 옮긴 뒤, 저장소가 flush하면 checkpoint 이동
+    //종료 중이라 flush하지 못하면 checkpoint를 옮기지 않고 다음 시작 때 다시 저장
+    //같은 WAL 위치의 로그는 항상 같은 logId라 다시 저장해도 저장소에서 중복되지 않음
+    private void replay(List<LogWal.Record> records) {
+        List<Entry> entries = new ArrayList<>(records.size());
+        records.forEach(a -> entries.add(decode(a)));
+        store(entries);
+        checkpoint(wal, records);
+    }
+
+    //retry WAL의 지금까지 쌓인 로그를 다시 저장, 아직 미룬 그라운드의 로그와 다시 실패한 로그는 retry WAL 뒤에 다시 씀
+    private void retryDeferred() {
+        retryScheduled = false;
+        long remaining = retries.getPending();
+        long position = retries.getCheckpoint();
+        while (remaining > 0 && running) {
+            List<LogWal.Record> records = retries.read(position, (int) Math.min(batchSize, remaining));
+            if (records.isEmpty()) break;
+            List<Entry> entries = new ArrayList<>(records.size());
+            records.forEach(a -> entries.add(decodeRetry(a)));
+            store(entries);
+            if (!checkpoint(retries, records)) return;
+            position = records.get(records.size() - 1).getPosition();
+            remaining -= records.size();
+        }
+    }
+
+    //미룬 그라운드의 로그는 저장하지 않고 retry WAL로, 나머지는 저장하고 실패하면 retry WAL로 (횟수를 넘으면 dead-letter)
+    private void store(List<Entry> entries) {
+        long now = System.nanoTime();
+        List<Entry> ready = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            Parked ground = parked.get(entry.getGroundId());
+            if (ground != null && now - ground.retryAt < 0) {
+                defer(entry);
+                scheduleRetry(ground.retryAt);
+            } else {
+                ready.add(entry);
+            }
+        }
+        if (ready.isEmpty()) return;
+        Flush result = save(ready);
+        Map<String, List<Entry>> unavailable = new LinkedHashMap<>();
+        result.getUnavailable().forEach(a -> unavailable.computeIfAbsent(a.getGroundId(), k -> new ArrayList<>()).add(a));
+        ready.forEach(a -> {
+            if (!unavailable.containsKey(a.getGroundId()) && parked.remove(a.getGroundId()) != null) {
+                log.info("GROUND ID : {}, 저장소 응답, 미룬 로그 다시 저장", a.getGroundId());
+            }
+        });
+        unavailable.forEach((groundId, failedEntries) -> {
+            Parked ground = parked.computeIfAbsent(groundId, k -> new Parked());
+            ground.failures++;
+            ground.retryAt = now + TimeUnit.MILLISECONDS.toNanos(backoff(ground.failures));
+            if (maxUnavailableRetries > 0 && ground.failures > maxUnavailableRetries) {
+                deadLetter(groundId, failedEntries, "저장소 " + ground.failures + "번 연속 응답 없음");
+                return;
+            }
+            failedEntries.forEach(this::defer);
+            scheduleRetry(ground.retryAt);
+            log.warn("GROUND ID : {}, 로그 {}줄 {}ms 뒤 다시 저장 ({}번째 실패)", groundId, failedEntries.size(), backoff(ground.failures), ground.failures);
+        });
+        Map<String, List<Entry>> exhausted = new LinkedHashMap<>();
+        for (Entry entry : result.getFailed()) {
+            Entry next = new Entry(entry.getGroundId(), entry.getLog(), entry.getAttempts() + 1);
+            if (next.getAttempts() > maxRetries) {
+                exhausted.computeIfAbsent(next.getGroundId(), k -> new ArrayList<>()).add(next);
+            } else {
+                defer(next);
+                scheduleRetry(now + TimeUnit.MILLISECONDS.toNanos(backoff(next.getAttempts())));
+            }
+        }
+        exhausted.forEach((groundId, failedEntries) -> deadLetter(groundId, failedEntries, "로그별 저장 " + (maxRetries + 1) + "번 실패"));
+    }
+
+    //retry WAL에 보관, 가득 찼거나 쓰지 못하면 dead-letter로
+    private void defer(Entry entry) {
+        try {
+            if (retries.append(encodeRetry(entry)) >= 0) return;
+        } catch (IOException e) {
+            log.error("GROUND ID : {}, retry WAL 쓰기 실패 {}", entry.getGroundId(), e.getMessage());
+        }
+        deadLetter(entry.getGroundId(), List.of(entry), "retry WAL 가득 참");
+    }
+
+    private void scheduleRetry(long at) {
+        if (!retryScheduled || at - nextRetryNanos < 0) {
+            nextRetryNanos = at;
+            retryScheduled = true;
+        }
+    }
+
+    //실패 횟수만큼 두 배씩, 최대 max-backoff-ms
+    private long backoff(int failures) {
+        return Math.min(retryBackoffMs << Math.min(failures - 1, 20), maxBackoffMs);
+    }
+
+    //retry WAL에 옮긴 로그와 저장소에 저장한 로그가 디스크에 반영된 뒤 records까지 checkpoint, 종료 중이라 flush하지 못하면 false
+    private boolean checkpoint(LogWal target, List<LogWal.Record> records) {
+        retries.sync();
+        if (!flushStore()) return false;
+        try {
+            target.checkpoint(records.get(records.size() - 1).getPosition(), records.size());
+        } catch (IOException e) {
+            log.error("WAL checkpoint 저장 실패 {}", e.getMessage());
+        }
+        return true;
+    }
+
+    //저장을 포기한 로그를 dead-letter WAL에 같은 형식으로 보관, 보관하지 못하면 버림
+    private void deadLetter(String groundId, List<Entry> entries, String reason) {
+        int kept = 0;
+        try {
+            if (deadLetters == null) deadLetters = new LogWal(Paths.get(deadLetterPath), walSegmentMb << 20, walMaxMb << 20);
+            for (Entry entry : entries) {
+                if (deadLetters.append(encode(groundId, entry.getLog())) < 0) break;
+                kept++;
+            }
+            deadLetters.sync();
+        } catch (IOException e) {
+            log.error("GROUND ID : {}, dead-letter WAL 쓰기 실패 {}", groundId, e.getMessage());
+        }
+        failed.add(entries.size());
+        log.error("GROUND ID : {}, 로그 {}줄 저장 포기 ({}), dead-letter {}줄 보관 ({})", groundId, entries.size(), reason, kept, deadLetterPath);
+    }
+
+    //저장소가 flush할 때까지 간격을 늘려가며 재시도, 종료 중이라 끝내지 못하면 false
+    private boolean flushStore() {
+        long backoff = retryBackoffMs;
+        while (true) {
+            try {
+                elasticSearchLogService.flush();
+                return true;
+            } catch (Exception e) {
+                log.error("저장소 flush 실패 {}", e.getMessage());
+            }
+            if (!running) {
+                log.warn("저장소 flush 하지 못하고 종료, 다음 시작 때 WAL에서 다시 저장");
+                return false;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(backoff));
+            backoff = Math.min(backoff * 2, maxBackoffMs);
+        }
+    }
+
+    //fsyncIntervalMs마다 그 사이 WAL에 쓴 로그를 디스크에 반영
+    private void runSyncer() {
+        while (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMs));
+            wal.sync();
+        }
+    }
+
+    //WAL에 쓴 위치, 가득 찼거나 쓰지 못하면 -1
+    private long append(String groundId, ElasticSearchLog elasticSearchLog) {
+        try {
+            return wal.append(encode(groundId, elasticSearchLog));
+        } catch (IOException e) {
+            log.error("GROUND ID : {}, WAL 쓰기 실패 {}", groundId, e.getMessage());
+            return -1;
+        }
+    }
+
+    private void awaitSync(String groundId, long position) {
+        try {
+            if (!wal.awaitSync(position, shutdownTimeoutMs)) {
+                log.warn("GROUND ID : {}, WAL fsync 대기 시간 초과", groundId);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //그라운드별로 bulk 저장, 저장소가 응답하지 않은 로그(unavailable)와 로그별로 저장에 실패한 로그(failed) 반환
+    private Flush save(List<Entry> batch) {
+        Map<String, List<Entry>> byGround = new LinkedHashMap<>();
+        batch.forEach(a -> byGround.computeIfAbsent(a.getGroundId(), k -> new ArrayList<>()).add(a));
+        Flush result = new Flush();
+        long start = System.nanoTime();
+        byGround.forEach((groundId, entries) -> {
+            List<ElasticSearchLog> logs = new ArrayList<>(entries.size());
+            entries.forEach(a -> logs.add(a.getLog()));
+            try {
+                List<LogBulkRes.Item> items = elasticSearchLogService.saveAll(groundId, logs);
+                for (int i = 0; i < items.size(); i++) {
+                    int status = items.get(i).getStatus();
+                    if (status == HttpStatus.CREATED.value()) {
+                        flushed.increment();
+                    } else if (status == HttpStatus.INTERNAL_SERVER_ERROR.value()) {
+                        result.getFailed().add(entries.get(i));
+                    } else {
+                        failed.increment();
+                    }
+                }
+            } catch (Exception e) {
+                log.error("GROUND ID : {}, 대기열 로그 {}줄 저장 실패 {}", groundId, logs.size(), e.getMessage());
+                result.getUnavailable().addAll(entries);
+            }
+        });
+        long elapsed = System.nanoTime() - start;
+        long millis = TimeUnit.NANOSECONDS.toMillis(elapsed);
+        flushCount.increment();
+        flushNanos.add(elapsed);
+        maxFlushMillis.accumulateAndGet(millis, Math::max);
+        lastFlushMillis = millis;
+        recentFlushMillis = recentFlushMillis * 0.8 + millis * 0.2;
+        return result;
+    }
+
+    //WAL 레코드 : [그라운드 id 길이][그라운드 id][저장 시간 epoch 초][나노초][로그 길이][로그](+[로그 시간 epoch 초][나노초]), 문자열은 UTF-8
+    //로그 시간은 요청의 저장 시간을 쓰지 않았을 때만 (없는 예전 레코드도 그대로 읽음)
+    private static byte[] encode(String groundId, ElasticSearchLog elasticSearchLog) {
+        byte[] ground = groundId.getBytes(StandardCharsets.UTF_8);
+        byte[] line = elasticSearchLog.getLog() == null ? new byte[0] : elasticSearchLog.getLog().getBytes(StandardCharsets.UTF_8);
+        LocalDateTime localDateTime = elasticSearchLog.getLocalDateTime() == null ? LocalDateTime.now() : elasticSearchLog.getLocalDateTime();
+        LocalDateTime eventTime = elasticSearchLog.getEventTime();
+        ByteBuffer buffer = ByteBuffer.allocate(4 + ground.length + 12 + 4 + line.length + (eventTime == null ? 0 : 12))
+                .putInt(ground.length).put(ground)
+                .putLong(localDateTime.toEpochSecond(ZoneOffset.UTC)).putInt(localDateTime.getNano())
+                .putInt(line.length).put(line);
+        if (eventTime != null) buffer.putLong(eventTime.toEpochSecond(ZoneOffset.UTC)).putInt(eventTime.getNano());
+        return buffer.array();
+    }
+
+    //logId는 WAL id와 위치로 만듦 (다시 저장해도 같은 id)
+    private Entry decode(LogWal.Record record) {
+        String logId = UUID.nameUUIDFromBytes((wal.getId() + ":" + record.getPosition()).getBytes(StandardCharsets.UTF_8)).toString();
+        return decode(ByteBuffer.wrap(record.getPayload()), logId, 0);
+    }
+
+    //retry WAL 레코드 : [재시도 횟수][logId 길이][logId][WAL 레코드] (처음 WAL의 logId를 그대로 씀)
+    private static byte[] encodeRetry(Entry entry) {
+        byte[] logId = entry.getLog().getLogId().getBytes(StandardCharsets.UTF_8);
+        byte[] payload = encode(entry.getGroundId(), entry.getLog());
+        return ByteBuffer.allocate(4 + 4 + logId.length + payload.length)
+                .putInt(entry.getAttempts()).putInt(logId.length).put(logId).put(payload).array();
+    }
+
+    private static Entry decodeRetry(LogWal.Record record) {
+        ByteBuffer buffer = ByteBuffer.wrap(record.getPayload());
+        int attempts = buffer.getInt();
+        byte[] logId = new byte[buffer.getInt()];
+        buffer.get(logId);
+        return decode(buffer, new String(logId, StandardCharsets.UTF_8), attempts);
+    }
+
+    private static Entry decode(ByteBuffer buffer, String logId, int attempts) {
+        byte[] ground = new byte[buffer.getInt()];
+        buffer.get(ground);
+        LocalDateTime localDateTime = LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+        byte[] line = new byte[buffer.getInt()];
+        buffer.get(line);
+        LocalDateTime eventTime = buffer.remaining() >= 12 ? LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC) : null;
+        return new Entry(new String(ground, StandardCharsets.UTF_8), ElasticSearchLog.builder()
+                .logId(logId).localDateTime(localDateTime).eventTime(eventTime).log(new String(line, StandardCharsets.UTF_8)).build(), attempts);
+    }
+
+    private void startThread(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        flushers.add(thread);
+    }
+
+    //종료 시 남은 로그를 모두 저장한 뒤 종료 (WAL이면 저장 중인 batch까지만, 나머지는 WAL에 남김)
+    @PreDestroy
+    void shutdown() {
+        running = false;
+        long deadline = System.currentTimeMillis() + shutdownTimeoutMs;
+        for (Thread flusher : flushers) {
+            try {
+                flusher.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (wal != null) {
+            wal.close();
+            retries.close();
+        }
+        if (deadLetters != null) {
+            deadLetters.close();
+        }
+        log.info("로그 저장 대기열 종료, 남은 로그 {}줄", getQueueDepth());
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class Entry {
+        private final String groundId;
+        private final ElasticSearchLog log;
+        //저장에 실패해 다시 시도한 횟수
+        private final int attempts;
+
+        private Entry(String groundId, ElasticSearchLog log) {
+            this(groundId, log, 0);
+        }
+    }
+
+    private static class Parked {
+        //연속으로 저장소가 응답하지 않은 횟수
+        private int failures;
+        private long retryAt;
+    }
+
+    @Getter
+    private static class Flush {
+        private final List<Entry> unavailable = new ArrayList<>();
+        private final List<Entry> failed = new ArrayList<>();
+    }
+}
@@ -0,0 +1,205 @@
+package com.dddev.log.service;
+
+import com.dddev.log.dto.ElasticSearchLog;
+import com.dddev.log.exception.LogIngestException;
+import com.dddev.log.util.ExpiringCache;
+import com.dddev.log.util.LogCollapser;
+import com.dddev.log.util.LogLineParser;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+//로그 저장 과부하 정책
+//한도를 넘거나 서버가 밀리면 로그와 인덱스를 지우지 않고 단계적으로 받는 양을 줄인다.
+//1. 한도 초과 : 429 + Retry-After
+//2. 초과가 계속되거나 대기열/bulk 저장 시간이 늘어나면 : TRACE/DEBUG/INFO 로그는 버리고 WARN 이상만 저장
+//3. 그래도 계속 초과하면 : 일정 시간 격리 (모든 요청 429)
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LogOverloadService {
+
+    private static final Set<String> LOW_LEVELS = Set.of("TRACE", "DEBUG", "INFO");
+
+    private final UserLogAccessService userLogAccessService;
+    private final LogIngestService logIngestService;
+
+    //과부하 정도(대기열 적재율, bulk 저장 시간 / 목표 시간 중 큰 값)가 이 값을 넘으면 낮은 레벨 로그 제외
+    @Value("${log.overload.shed-pressure:0.5}")
+    private double shedPressure;
+    //이 값을 넘으면 모든 그라운드 429
+    @Value("${log.overload.throttle-pressure:0.9}")
+    private double throttlePressure;
+    @Value("${log.overload.target-flush-ms:1000}")
+    private long targetFlushMs;
+    @Value("${log.overload.retry-after-seconds:5}")
+    private long retryAfterSeconds;
+    //창 안에서 한도 초과 횟수가 이만큼 쌓이면 낮은 레벨 로그 제외, 격리
+    @Value("${log.overload.shed-after-strikes:5}")
+    private int shedAfterStrikes;
+    @Value("${log.overload.quarantine-after-strikes:50}")
+    private int quarantineAfterStrikes;
+    @Value("${log.overload.strike-window-seconds:60}")
+    private long strikeWindowSeconds;
+    @Value("${log.overload.quarantine-seconds:300}")
+    private long quarantineSeconds;
+    @Value("${log.ingest.collapse.window-ms:10000}")
+    private long collapseWindowMs;
+    //앞 줄과 같은 줄은 이 수만큼 쌓일 때마다 한 줄로 셈 (1 이하면 모두 셈)
+    @Value("${log.ingest.collapse.repeat-charge-every:10}")
+    private int repeatChargeEvery;
+
+    private ExpiringCache<String, AtomicInteger> strikes;
+    //격리 끝나는 시간(ms)
+    private ExpiringCache<String, Long> quarantined;
+    //그라운드별 마지막으로 받은 로그와 아직 세지 않은 같은 줄 수
+    private ExpiringCache<String, Run> runs;
+
+    private final LongAdder throttledCount = new LongAdder();
+    private final LongAdder shedCount = new LongAdder();
+    private final LongAdder quarantineCount = new LongAdder();
+
+    @PostConstruct
+    void init() {
+        strikes = new ExpiringCache<>(10000, strikeWindowSeconds, TimeUnit.SECONDS);
+        quarantined = new ExpiringCache<>(10000, quarantineSeconds, TimeUnit.SECONDS);
+        runs = new ExpiringCache<>(10000, Math.max(1, collapseWindowMs), TimeUnit.MILLISECONDS);
+    }
+
+    //저장할 로그를 골라 true로 표시 (낮은 레벨이라 버린 로그는 false), 모두 받을 수 없으면 RateLimitedException
+    public boolean[] admit(String groundId, List<ElasticSearchLog> logs) {
+        Long until = quarantined.get(groundId);
+        if (until != null) {
+            throttledCount.add(logs.size());
+            throw new LogIngestException.RateLimitedException("한도를 계속 초과해 로그 저장이 잠시 중지되었습니다.",
+                    Math.max(1, TimeUnit.MILLISECONDS.toSeconds(until - System.currentTimeMillis())));
+        }
+        double pressure = getPressure();
+        if (pressure >= throttlePressure) {
+            throttledCount.add(logs.size());
+            throw new LogIngestException.RateLimitedException("로그 저장이 밀려 있습니다. 잠시 후 다시 시도하세요.", retryAfterSeconds);
+        }
+        boolean shed = pressure >= shedPressure || getStrikes(groundId) >= shedAfterStrikes;
+        boolean[] accepted = new boolean[logs.size()];
+        int count = select(logs, accepted, shed);
+        //앞 줄과 같은 줄은 한 로그로 묶여 저장되므로 repeat-charge-every줄마다 한 줄로만 셈
+        int charged = count - freeRepeats(groundId, logs, accepted);
+        if (charged > 0) {
+            try {
+                userLogAccessService.count(groundId, charged);
+            } catch (LogIngestException.RateLimitedException e) {
+                int strike = strike(groundId);
+                if (strike >= quarantineAfterStrikes) {
+                    quarantined.put(groundId, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(quarantineSeconds));
+                    strikes.invalidate(groundId);
+                    quarantineCount.increment();
+                    log.warn("GROUND ID : {}, 한도 초과 {}번으로 {}초 동안 격리", groundId, strike, quarantineSeconds);
+                    throw new LogIngestException.RateLimitedException("한도를 계속 초과해 로그 저장이 잠시 중지되었습니다.", quarantineSeconds);
+                }
+                //초과가 계속되면 WARN 이상 로그만 한도와 상관없이 저장
+                if (strike < shedAfterStrikes || select(logs, accepted, true) == 0) {
+                    throttledCount.add(logs.size());
+                    throw e;
+                }
+                count = select(logs, accepted, true);
+            }
+        }
+        if (count < logs.size()) {
+            shedCount.add(logs.size() - count);
+            log.info("GROUND ID : {}, 과부하로 낮은 레벨 로그 {}줄 제외", groundId, logs.size() - count);
+        }
+        return accepted;
+    }
+
+    //대기열(WAL이면 디스크) 적재율과 최근 bulk 저장 시간 중 큰 값 (대기열이 비어 있으면 저장 시간은 보지 않음)
+    public double getPressure() {
+        int depth = logIngestService.getQueueDepth();
+        double queuePressure = logIngestService.getQueueUsage();
+        double latencyPressure = depth == 0 ? 0 : logIngestService.getRecentFlushMillis() / targetFlushMs;
+        return Math.max(queuePressure, latencyPressure);
+    }
+
+    public long getThrottledCount() {
+        return throttledCount.sum();
+    }
+
+    public long getShedCount() {
+        return shedCount.sum();
+    }
+
+    public long getQuarantineCount() {
+        return quarantineCount.sum();
+    }
+
+    private int select(List<ElasticSearchLog> logs, boolean[] accepted, boolean shed) {
+        int count = 0;
+        for (int i = 0; i < logs.size(); i++) {
+            accepted[i] = !shed || !isLowPriority(logs.get(i));
+            if (accepted[i]) count++;
+        }
+        return count;
+    }
+
+    //받은 로그 중 바로 앞 로그(이전 요청 포함)와 같은 줄이라 한도에서 빼는 수
+    //같은 줄은 요청을 넘어 그라운드별로 쌓아 repeatChargeEvery줄마다 한 줄은 셈 (같은 줄을 반복해 한도를 피하지 못하도록)
+    private int freeRepeats(String groundId, List<ElasticSearchLog> logs, boolean[] accepted) {
+        if (collapseWindowMs <= 0 || repeatChargeEvery <= 1) return 0;
+        Run run = runs.get(groundId);
+        if (run == null) run = new Run();
+        //받을 때마다 다시 넣어 만료 시간을 늘림
+        runs.put(groundId, run);
+        synchronized (run) {
+            ElasticSearchLog previous = run.last;
+            int repeats = 0;
+            for (int i = 0; i < logs.size(); i++) {
+                if (!accepted[i]) continue;
+                ElasticSearchLog current = logs.get(i);
+                if (current.getLevel() == null) {
+                    LogLineParser.parse(current.getLog(), current);
+                }
+                if (previous != null && LogCollapser.isRepeat(previous, current, collapseWindowMs)) repeats++;
+                previous = current;
+            }
+            run.last = previous;
+            run.uncharged += repeats;
+            int charged = run.uncharged / repeatChargeEvery;
+            run.uncharged %= repeatChargeEvery;
+            return repeats - charged;
+        }
+    }
+
+    //형식을 읽을 수 없는 줄(스택트레이스 등)은 낮은 레벨로 보지 않음
+    private boolean isLowPriority(ElasticSearchLog elasticSearchLog) {
+        if (elasticSearchLog.getLevel() == null) {
+            LogLineParser.parse(elasticSearchLog.getLog(), elasticSearchLog);
+        }
+        return elasticSearchLog.getLevel() != null && LOW_LEVELS.contains(elasticSearchLog.getLevel());
+    }
+
+    private int getStrikes(String groundId) {
+        AtomicInteger count = strikes.get(groundId);
+        return count == null ? 0 : count.get();
+    }
+
+    private int strike(String groundId) {
+        AtomicInteger count = strikes.get(groundId);
+        if (count == null) {
+            count = new AtomicInteger();
+            strikes.put(groundId, count);
+        }
+        return count.incrementAndGet();
+    }
+
+    private static class Run {
+        private ElasticSearchLog last;
+        private int uncharged;
+    }
+}
@@ -0,0 +1,65 @@
+package com.dddev.log.service;
+
+import com.dddev.log.dto.BoundedPage;
+import com.dddev.log.dto.CursorPage;
+import com.dddev.log.dto.ElasticSearchLog;
+import com.dddev.log.dto.res.LogMigrateRes;
+import com.dddev.log.exception.ElasticSearchException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+//로그 저장소
+//log.store.type으로 구현을 고른다. elasticsearch(기본)는 원격 Elasticsearch, lucene은 로컬 디스크의 Lucene 인덱스
+//저장 전 처리(logId, 필드 파싱), 실시간 tail, 지표는 ElasticSearchLogService가 하고 저장소는 저장과 검색만 한다.
+//그라운드의 로그가 하나도 없으면 조회는 NoSuchIndexException, 페이지는 30개씩 최신 순
+public interface LogStore {
+
+    int PAGE_SIZE = 30;
+
+    //로그 한 줄 저장 (logId, 파싱된 필드가 채워진 상태)
+    void save(String groundId, ElasticSearchLog elasticSearchLog);
+
+    //여러 줄 저장, 실패한 로그의 logId -> 실패 이유
+    Map<String, String> saveAll(String groundId, List<ElasticSearchLog> elasticSearchLogs);
+
+    //지금까지 저장한 로그를 서버가 죽어도 남도록 디스크에 반영, 실패하면 예외 (WAL checkpoint 전에 호출)
+    //Elasticsearch는 저장 응답 전에 translog에 기록하므로 할 일 없음
+    default void flush() {
+    }
+
+    //조회할 로그가 하나라도 있는지
+    boolean hasLogs(String groundId);
+
+    //최근 로그 size줄 (최신 순)
+    List<ElasticSearchLog> recent(String groundId, int size);
+
+    //저장된 로그 수
+    long count(String groundId);
+
+    CursorPage<ElasticSearchLog> latest(String groundId, int page, String cursor, boolean pit);
+
+    //부분 문자열 검색
+    CursorPage<ElasticSearchLog> keyword(String groundId, String keyword, int page, String cursor, boolean pit);
+
+    //로그 전체가 정규표현식과 일치하는 로그, 다음 페이지의 첫 로그를 찾으면 더 읽지 않고 그때까지의 수를 전체 수(최소값)로 반환
+    BoundedPage<ElasticSearchLog> regexp(String groundId, String regexp, int page);
+
+    //저장 시간 범위
+    CursorPage<ElasticSearchLog> time(String groundId, LocalDateTime startDateTime, LocalDateTime endDateTime, int page, String cursor, boolean pit);
+
+    //저장 시간 범위 + 부분 문자열
+    CursorPage<ElasticSearchLog> timeAndKeyword(String groundId, LocalDateTime startDateTime, LocalDateTime endDateTime, String keyword, int page, String cursor, boolean pit);
+
+    //레벨(여러 개), 로거(끝이 *면 prefix), 로그에 찍힌 시간으로 검색 (로그에 찍힌 시간 최신 순)
+    CursorPage<ElasticSearchLog> filter(String groundId, List<String> levels, String logger, LocalDateTime startDateTime, LocalDateTime endDateTime, int page, String cursor, boolean pit);
+
+    //그라운드의 로그 전체 삭제, 지운 로그가 없으면 false
+    boolean delete(String groundId);
+
+    //예전 형식 인덱스 이전 (예전 인덱스가 있는 저장소만)
+    default LogMigrateRes migrate(String groundId) {
+        throw new ElasticSearchException.NoIndexException("이전할 인덱스가 없습니다.");
+    }
+}
@@ -0,0 +1,225 @@
+package com.dddev.log.service;
+
+import com.dddev.log.dto.ElasticSearchLog;
+import com.dddev.log.exception.LogTailException;
+import com.dddev.log.util.LogRingBuffer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+//실시간 로그 tail (SSE)
+//저장된 로그를 그라운드 구독자들에게 한 번만 나눠주고(fan-out), Elasticsearch를 다시 검색하지 않는다.
+//구독자마다 크기가 정해진 대기열을 두고, 느린 구독자는 정책에 따라 로그를 버리거나 연결을 끊어 저장 경로를 막지 않는다.
+@Slf4j
+@Service
+public class LogTailService {
+
+    //구독자 대기열이 가득 찼을 때
+    public enum DropPolicy {
+        //새로 들어온 로그를 버림
+        DROP_NEWEST,
+        //가장 오래된 로그를 버리고 새 로그를 넣음
+        DROP_OLDEST,
+        //연결을 끊음
+        DISCONNECT
+    }
+
+    @Value("${log.tail.max-subscribers-per-ground:20}")
+    private int maxSubscribersPerGround;
+    @Value("${log.tail.queue-size:1000}")
+    private int queueSize;
+    @Value("${log.tail.send-batch-size:100}")
+    private int sendBatchSize;
+    @Value("${log.tail.timeout-ms:1800000}")
+    private long timeoutMs;
+    @Value("${log.tail.sender-threads:2}")
+    private int senderThreads;
+
+    private final ConcurrentHashMap<String, CopyOnWriteArrayList<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private ExecutorService sender;
+
+    @PostConstruct
+    void start() {
+        AtomicInteger sequence = new AtomicInteger();
+        sender = Executors.newFixedThreadPool(senderThreads, r -> {
+            Thread thread = new Thread(r, "log-tail-" + sequence.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    //구독 시작, keyword는 대소문자 무시 포함 검사, level은 쉼표로 여러 개
+    public SseEmitter subscribe(String groundId, String keyword, String level, DropPolicy dropPolicy) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(groundId, emitter, keyword, level, dropPolicy, queueSize);
+        //구독자가 모두 나가서 목록이 지워지는 것과 겹치지 않도록 compute 안에서 추가
+        List<Subscriber> groundSubscribers = subscribers.compute(groundId, (k, v) -> {
+            if (v == null) v = new CopyOnWriteArrayList<>();
+            if (v.size() >= maxSubscribersPerGround) {
+                throw new LogTailException.TooManySubscribersException("실시간 로그 구독자가 너무 많습니다. (최대 " + maxSubscribersPerGround + "명)");
+            }
+            v.add(subscriber);
+            return v;
+        });
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(() -> remove(subscriber));
+        emitter.onError(e -> remove(subscriber));
+        log.info("GROUND ID : {}, 실시간 로그 구독 시작, 구독자 {}명", groundId, groundSubscribers.size());
+        return emitter;
+    }
+
+    //저장된 로그를 구독자 대기열에 나눠줌 (저장 경로에서 호출, 전송은 sender 스레드가 처리)
+    public void publish(String groundId, List<ElasticSearchLog> logs) {
+        List<Subscriber> groundSubscribers = subscribers.get(groundId);
+        if (groundSubscribers == null || groundSubscribers.isEmpty() || logs.isEmpty()) return;
+        for (Subscriber subscriber : groundSubscribers) {
+            boolean added = false;
+            for (ElasticSearchLog elasticSearchLog : logs) {
+                if (!subscriber.matches(elasticSearchLog)) continue;
+                if (!subscriber.offer(elasticSearchLog)) {
+                    remove(subscriber);
+                    subscriber.emitter.complete();
+                    break;
+                }
+                added = true;
+            }
+            if (added) schedule(subscriber);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.values().stream().mapToInt(List::size).sum();
+    }
+
+    //연결이 끊긴 구독자를 찾아내기 위해 주기적으로 주석 이벤트 전송
+    //로그 전송과 겹치지 않도록 직접 보내지 않고 drain에서 보냄
+    @Scheduled(fixedDelayString = "${log.tail.heartbeat-ms:15000}")
+    public void heartbeat() {
+        subscribers.values().forEach(a -> a.forEach(subscriber -> {
+            subscriber.ping.set(true);
+            schedule(subscriber);
+        }));
+    }
+
+    //전송 중이 아니면 sender 스레드에 drain 요청
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.scheduled.compareAndSet(false, true)) {
+            sender.execute(() -> drain(subscriber));
+        }
+    }
+
+    //대기열의 로그를 batch로 묶어 전송, 한 구독자는 한 번에 한 스레드만 전송
+    private void drain(Subscriber subscriber) {
+        try {
+            while (true) {
+                if (subscriber.ping.getAndSet(false)) {
+                    subscriber.emitter.send(SseEmitter.event().comment("ping"));
+                }
+                long dropped = subscriber.dropped.getAndSet(0);
+                if (dropped > 0) {
+                    subscriber.emitter.send(SseEmitter.event().name("dropped").data(dropped));
+                }
+                List<ElasticSearchLog> batch = new ArrayList<>(sendBatchSize);
+                subscriber.queue.drainTo(batch, sendBatchSize);
+                if (batch.isEmpty()) {
+                    subscriber.scheduled.set(false);
+                    //flag를 내리는 사이 새 로그나 ping이 들어왔으면 이어서 전송
+                    if ((subscriber.queue.isEmpty() && !subscriber.ping.get()) || !subscriber.scheduled.compareAndSet(false, true)) return;
+                    continue;
+                }
+                subscriber.emitter.send(SseEmitter.event().name("log").data(batch));
+            }
+        } catch (IOException | IllegalStateException e) {
+            log.info("GROUND ID : {}, 실시간 로그 전송 실패로 구독 종료 {}", subscriber.groundId, e.getMessage());
+            remove(subscriber);
+        }
+    }
+
+    private void remove(Subscriber subscriber) {
+        subscribers.computeIfPresent(subscriber.groundId, (k, v) -> {
+            v.remove(subscriber);
+            return v.isEmpty() ? null : v;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        subscribers.values().forEach(a -> a.forEach(subscriber -> subscriber.emitter.complete()));
+        subscribers.clear();
+        sender.shutdown();
+    }
+
+    private static class Subscriber {
+        private final String groundId;
+        private final SseEmitter emitter;
+        private final String keyword;
+        private final Set<String> levels;
+        private final DropPolicy dropPolicy;
+        private final LogRingBuffer<ElasticSearchLog> queue;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicBoolean ping = new AtomicBoolean();
+
+        private Subscriber(String groundId, SseEmitter emitter, String keyword, String level, DropPolicy dropPolicy, int queueSize) {
+            this.groundId = groundId;
+            this.emitter = emitter;
+            this.keyword = keyword == null || keyword.isEmpty() ? null : keyword;
+            this.levels = level == null || level.isBlank() ? null : parseLevels(level);
+            this.dropPolicy = dropPolicy == null ? DropPolicy.DROP_OLDEST : dropPolicy;
+            this.queue = new LogRingBuffer<>(queueSize);
+        }
+
+        private boolean matches(ElasticSearchLog elasticSearchLog) {
+            if (levels != null && (elasticSearchLog.getLevel() == null || !levels.contains(elasticSearchLog.getLevel()))) {
+                return false;
+            }
+            return keyword == null || containsIgnoreCase(elasticSearchLog.getLog(), keyword);
+        }
+
+        //대기열에 추가, DISCONNECT 정책에서 가득 차면 false
+        private boolean offer(ElasticSearchLog elasticSearchLog) {
+            if (queue.offer(elasticSearchLog)) return true;
+            switch (dropPolicy) {
+                case DISCONNECT:
+                    return false;
+                case DROP_OLDEST:
+                    while (!queue.offer(elasticSearchLog)) {
+                        if (queue.poll() != null) dropped.incrementAndGet();
+                    }
+                    return true;
+                default:
+                    dropped.incrementAndGet();
+                    return true;
+            }
+        }
+
+        private static Set<String> parseLevels(String level) {
+            Set<String> levels = new HashSet<>();
+            for (String a : level.split(",")) {
+                if (!a.isBlank()) levels.add(a.trim().toUpperCase(Locale.ROOT));
+            }
+            return levels;
+        }
+
+        //로그마다 소문자 문자열을 만들지 않도록 regionMatches로 검사
+        private static boolean containsIgnoreCase(String text, String keyword) {
+            if (text == null) return false;
+            int last = text.length() - keyword.length();
+            for (int i = 0; i <= last; i++) {
+                if (text.regionMatches(true, i, keyword, 0, keyword.length())) return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,594 @@
+package com.dddev.log.service;
+
+import com.dddev.log.dto.BoundedPage;
+import com.dddev.log.dto.CursorPage;
+import com.dddev.log.dto.ElasticSearchLog;
+import com.dddev.log.exception.ElasticSearchException;
+import com.dddev.log.util.LogCursor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.ngram.NGramTokenizer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.*;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.QueryBuilder;
+import org.elasticsearch.core.TimeValue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.NoSuchIndexException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+//Lucene 로그 저장소 (log.store.type=lucene)
+//Elasticsearch 없이 한 서버에서 저장과 검색 전체를 돌리기 위한 저장소, 그라운드마다 log.store.lucene.path/{groundId}에 인덱스 하나
+//near-real-time: refresh-ms마다 새 로그가 검색에 보이고(Elasticsearch refresh와 같음), commit-ms마다(또는 flush 때) 디스크에 commit
+//같은 logId로 다시 저장하면 이전 문서를 바꿔 WAL에서 다시 저장해도 중복되지 않음
+//필드와 분석기는 log-mapping.json, log-settings.json과 같게 (log는 standard, log.ngram은 3-gram + 소문자)
+//pit 검색은 그 시점의 searcher를 keep-alive 동안 붙잡아 두고 커서에 searcher 버전을 담는다.
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "log.store.type", havingValue = "lucene")
+public class LuceneLogStore implements LogStore {
+
+    private static final String LOCAL_DATE_TIME = "localDateTime";
+    private static final String LOG_ID = "logId";
+    private static final String EVENT_TIME = "eventTime";
+    private static final String LEVEL = "level";
+    private static final String PID = "pid";
+    private static final String THREAD = "thread";
+    private static final String LOGGER = "logger";
+    private static final String REPEAT_COUNT = "repeatCount";
+    private static final String LAST_LOCAL_DATE_TIME = "lastLocalDateTime";
+    private static final String LAST_EVENT_TIME = "lastEventTime";
+    private static final String LOG = "log";
+    private static final String LOG_NGRAM = "log.ngram";
+    private static final int NGRAM_SIZE = 3;
+    //Elasticsearch 기본 track_total_hits와 같게 10000건까지만 정확히 셈
+    private static final int TOTAL_HITS_THRESHOLD = 10000;
+    private static final Pattern GROUND_ID = Pattern.compile("[A-Za-z0-9_-]+");
+
+    //저장 시간, 로그 id 최신 순 (인덱스도 이 순서로 정렬해 두어 최신 로그 검색은 앞부분만 읽고 끝남)
+    private static final Sort LOG_SORT = new Sort(
+            new SortField(LOCAL_DATE_TIME, SortField.Type.LONG, true),
+            new SortField(LOG_ID, SortField.Type.STRING, true));
+    //로그에 찍힌 시간 최신 순 (시간이 없는 로그는 뒤로)
+    private static final Sort EVENT_SORT;
+
+    static {
+        SortField eventTime = new SortField(EVENT_TIME, SortField.Type.LONG, true);
+        eventTime.setMissingValue(Long.MIN_VALUE);
+        EVENT_SORT = new Sort(eventTime, new SortField(LOG_ID, SortField.Type.STRING, true));
+    }
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${log.store.lucene.path:./data/lucene}")
+    private String path;
+    @Value("${log.store.lucene.refresh-ms:1000}")
+    private long refreshMs;
+    @Value("${log.store.lucene.commit-ms:5000}")
+    private long commitMs;
+    @Value("${log.store.lucene.ram-buffer-mb:64}")
+    private double ramBufferMb;
+    @Value("${log.regexp.batch-size:1000}")
+    private int regexpBatchSize;
+    @Value("${log.cursor.pit-keep-alive:1m}")
+    private String pitKeepAlive;
+    //보관 기간(일), 0 이하면 삭제하지 않음
+    @Value("${log.index.retention-days:30}")
+    private int retentionDays;
+
+    private final Analyzer analyzer = new PerFieldAnalyzerWrapper(new StandardAnalyzer(), Map.of(LOG_NGRAM, new Analyzer() {
+        @Override
+        protected TokenStreamComponents createComponents(String fieldName) {
+            Tokenizer tokenizer = new NGramTokenizer(NGRAM_SIZE, NGRAM_SIZE);
+            return new TokenStreamComponents(tokenizer, new LowerCaseFilter(tokenizer));
+        }
+    }));
+
+    private final ConcurrentHashMap<String, Ground> grounds = new ConcurrentHashMap<>();
+    private Path root;
+    private long keepAliveSeconds;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void start() throws IOException {
+        root = Files.createDirectories(Paths.get(path)).toAbsolutePath();
+        keepAliveSeconds = Math.max(1, TimeValue.parseTimeValue(pitKeepAlive, "keep_alive").seconds());
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "lucene-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refresh, refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(() -> grounds.forEach(this::commit), commitMs, commitMs, TimeUnit.MILLISECONDS);
+        log.info("Lucene 로그 저장소 시작, 경로 {}, refresh {}ms, commit {}ms", root, refreshMs, commitMs);
+    }
+
+    //새로 저장한 로그를 검색에 반영하고 keep-alive가 지난 pit 정리
+    void refresh() {
+        grounds.forEach((groundId, ground) -> {
+            if (ground.closed) return;
+            try {
+                ground.searcherManager.maybeRefresh();
+                ground.pits.prune(new SearcherLifetimeManager.PruneByAge(keepAliveSeconds));
+            } catch (IOException | AlreadyClosedException e) {
+                log.warn("GROUND ID : {}, Lucene refresh 실패 {}", groundId, e.getMessage());
+            }
+        });
+    }
+
+    //남은 로그를 commit하고 종료
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+        grounds.forEach((groundId, ground) -> {
+            commit(groundId, ground);
+            ground.close();
+        });
+        grounds.clear();
+    }
+
+    @Override
+    public void save(String groundId, ElasticSearchLog elasticSearchLog) {
+        try {
+            ground(groundId).writer.updateDocument(new Term(LOG_ID, elasticSearchLog.getLogId()), toDocument(elasticSearchLog));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //logId별로 추가 또는 교체, 중간에 실패하면 묶음 전체를 실패로 반환 (다시 저장해도 교체라 중복 없음)
+    @Override
+    public Map<String, String> saveAll(String groundId, List<ElasticSearchLog> elasticSearchLogs) {
+        List<Document> documents = elasticSearchLogs.stream().map(this::toDocument).collect(Collectors.toList());
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            IndexWriter writer = ground(groundId).writer;
+            for (int i = 0; i < documents.size(); i++) {
+                writer.updateDocument(new Term(LOG_ID, elasticSearchLogs.get(i).getLogId()), documents.get(i));
+            }
+            return Map.of();
+        } catch (IOException | RuntimeException e) {
+            log.error("GROUND ID : {}, 로그 일괄 저장 중 {}건 실패 {}", groundId, documents.size(), e.getMessage());
+            meterRegistry.counter("log.lucene.bulk.failed").increment(documents.size());
+            Map<String, String> failed = new HashMap<>();
+            elasticSearchLogs.forEach(a -> failed.put(a.getLogId(), e.getMessage()));
+            return failed;
+        } finally {
+            sample.stop(Timer.builder("log.lucene.bulk").publishPercentileHistogram().register(meterRegistry));
+        }
+    }
+
+    //저장한 로그를 모두 commit (다음 commit 주기를 기다리지 않음)
+    @Override
+    public void flush() {
+        grounds.forEach((groundId, ground) -> {
+            try {
+                if (!ground.closed && ground.writer.hasUncommittedChanges()) ground.writer.commit();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (AlreadyClosedException e) {
+                //삭제된 그라운드
+            }
+        });
+    }
+
+    @Override
+    public boolean hasLogs(String groundId) {
+        return grounds.containsKey(groundId) || (GROUND_ID.matcher(groundId).matches() && Files.isDirectory(root.resolve(groundId)));
+    }
+
+    @Override
+    public List<ElasticSearchLog> recent(String groundId, int size) {
+        Ground ground = existing(groundId);
+        IndexSearcher searcher = acquire(ground);
+        try {
+            TopDocs topDocs = searcher.search(new MatchAllDocsQuery(), size, LOG_SORT);
+            List<ElasticSearchLog> logs = new ArrayList<>(topDocs.scoreDocs.length);
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                logs.add(toLog(searcher.doc(scoreDoc.doc)));
+            }
+            return logs;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            release(ground, searcher);
+        }
+    }
+
+    @Override
+    public long count(String groundId) {
+        Ground ground = existing(groundId);
+        IndexSearcher searcher = acquire(ground);
+        try {
+            return searcher.getIndexReader().numDocs();
+        } finally {
+            release(ground, searcher);
+        }
+    }
+
+    @Override
+    public CursorPage<ElasticSearchLog> latest(String groundId, int page, String cursor, boolean pit) {
+        return search(groundId, new MatchAllDocsQuery(), page, cursor, pit, LOG_SORT);
+    }
+
+    @Override
+    public CursorPage<ElasticSearchLog> keyword(String groundId, String keyword, int page, String cursor, boolean pit) {
+        return search(groundId, keywordQuery(keyword), page, cursor, pit, LOG_SORT);
+    }
+
+    //한 번 컴파일한 정규표현식으로 같은 searcher에서 최신 로그부터 batch로 나눠 읽으며 검사하고, 요청한 페이지만 메모리에 보관
+    //다음 페이지의 첫 로그를 찾으면 멈추고 전체 수는 최소값으로 반환
+    @Override
+    public BoundedPage<ElasticSearchLog> regexp(String groundId, String regexp, int page) {
+        Matcher matcher = Pattern.compile(regexp).matcher("");
+        PageRequest pageRequest = PageRequest.of(page, PAGE_SIZE);
+        long offset = pageRequest.getOffset();
+        List<ElasticSearchLog> result = new ArrayList<>(pageRequest.getPageSize());
+        long total = 0;
+        Ground ground = existing(groundId);
+        IndexSearcher searcher = acquire(ground);
+        try {
+            Set<String> logField = Set.of(LOG);
+            ScoreDoc after = null;
+            while (true) {
+                TopDocs batch = searcher.searchAfter(after, new MatchAllDocsQuery(), regexpBatchSize, LOG_SORT);
+                for (ScoreDoc scoreDoc : batch.scoreDocs) {
+                    String line = searcher.doc(scoreDoc.doc, logField).get(LOG);
+                    if (line == null || !matcher.reset(line).matches()) continue;
+                    if (total >= offset && result.size() < pageRequest.getPageSize()) {
+                        result.add(toLog(searcher.doc(scoreDoc.doc)));
+                    }
+                    if (++total > offset + pageRequest.getPageSize()) {
+                        return new BoundedPage<>(result, pageRequest, total, false);
+                    }
+                }
+                if (batch.scoreDocs.length < regexpBatchSize) break;
+                after = batch.scoreDocs[batch.scoreDocs.length - 1];
+            }
+            return new BoundedPage<>(result, pageRequest, total, true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            release(ground, searcher);
+        }
+    }
+
+    @Override
+    public CursorPage<ElasticSearchLog> time(String groundId, LocalDateTime startDateTime, LocalDateTime endDateTime, int page, String cursor, boolean pit) {
+        return search(groundId, timeQuery(startDateTime, endDateTime), page, cursor, pit, LOG_SORT);
+    }
+
+    @Override
+    public CursorPage<ElasticSearchLog> timeAndKeyword(String groundId, LocalDateTime startDateTime, LocalDateTime endDateTime, String keyword, int page, String cursor, boolean pit) {
+        Query query = new BooleanQuery.Builder()
+                .add(timeQuery(startDateTime, endDateTime), BooleanClause.Occur.FILTER)
+                .add(keywordQuery(keyword), BooleanClause.Occur.MUST)
+                .build();
+        return search(groundId, query, page, cursor, pit, LOG_SORT);
+    }
+
+    @Override
+    public CursorPage<ElasticSearchLog> filter(String groundId, List<String> levels, String logger, LocalDateTime startDateTime, LocalDateTime endDateTime, int page, String cursor, boolean pit) {
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        boolean filtered = false;
+        if (!levels.isEmpty()) {
+            query.add(new TermInSetQuery(LEVEL, levels.stream().map(BytesRef::new).collect(Collectors.toList())), BooleanClause.Occur.FILTER);
+            filtered = true;
+        }
+        if (logger != null && !logger.isBlank()) {
+            query.add(logger.endsWith("*")
+                    ? new PrefixQuery(new Term(LOGGER, logger.substring(0, logger.length() - 1)))
+                    : new TermQuery(new Term(LOGGER, logger)), BooleanClause.Occur.FILTER);
+            filtered = true;
+        }
+        if (startDateTime != null || endDateTime != null) {
+            query.add(LongPoint.newRangeQuery(EVENT_TIME,
+                    startDateTime == null ? Long.MIN_VALUE : toMillis(startDateTime),
+                    endDateTime == null ? Long.MAX_VALUE : toMillis(endDateTime)), BooleanClause.Occur.FILTER);
+            filtered = true;
+        }
+        return search(groundId, filtered ? query.build() : new MatchAllDocsQuery(), page, cursor, pit, EVENT_SORT);
+    }
+
+    //writer를 닫고 디렉터리째 삭제
+    @Override
+    public boolean delete(String groundId) {
+        if (!GROUND_ID.matcher(groundId).matches()) return false;
+        boolean[] deleted = new boolean[1];
+        grounds.compute(groundId, (k, ground) -> {
+            if (ground != null) ground.close();
+            try {
+                deleted[0] = FileSystemUtils.deleteRecursively(root.resolve(groundId));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+        return deleted[0];
+    }
+
+    //보관 기간이 지난 로그 삭제 (Elasticsearch 날짜별 인덱스 삭제와 같은 기준)
+    @Scheduled(cron = "${log.index.retention-cron:0 10 0 * * *}")
+    public void dropExpiredLogs() {
+        if (retentionDays <= 0) return;
+        long expired = toMillis(LocalDate.now().minusDays(retentionDays).plusDays(1).atStartOfDay());
+        try (Stream<Path> directories = Files.list(root)) {
+            directories.filter(Files::isDirectory).map(a -> a.getFileName().toString()).forEach(groundId -> {
+                try {
+                    ground(groundId).writer.deleteDocuments(LongPoint.newRangeQuery(LOCAL_DATE_TIME, Long.MIN_VALUE, expired - 1));
+                } catch (IOException | RuntimeException e) {
+                    log.error("GROUND ID : {}, 보관 기간 만료 로그 삭제 실패 {}", groundId, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.error("보관 기간 만료 로그 삭제 실패 {}", e.getMessage());
+        }
+    }
+
+    //최신 순으로 30개씩 검색
+    //cursor가 없으면 page로 가져오고, 있으면 search_after처럼 마지막 정렬 값 다음부터 가져온다
+    //pit가 true면 지금 searcher를 기록해 두고 커서로 같은 searcher를 다시 사용 (스크롤하는 동안 새 로그에 밀리지 않음)
+    private CursorPage<ElasticSearchLog> search(String groundId, Query query, int page, String cursor, boolean pit, Sort sort) {
+        LogCursor logCursor = cursor == null || cursor.isBlank() ? null : LogCursor.decode(cursor);
+        Ground ground = existing(groundId);
+        PageRequest pageRequest = logCursor == null ? PageRequest.of(page, PAGE_SIZE) : PageRequest.of(0, PAGE_SIZE);
+        FieldDoc after = logCursor == null ? null : toFieldDoc(logCursor.getSearchAfter());
+        String pitId = logCursor == null ? null : logCursor.getPitId();
+        boolean pinned = pitId != null;
+        IndexSearcher searcher;
+        if (pinned) {
+            searcher = ground.pits.acquire(parsePitId(pitId));
+            if (searcher == null) throw new ElasticSearchException.IncorrectCursorException("커서가 만료되었습니다.");
+        } else {
+            searcher = acquire(ground);
+        }
+        try {
+            if (pit && pitId == null) {
+                pitId = String.valueOf(ground.pits.record(searcher));
+            }
+            int from = (int) pageRequest.getOffset();
+            TopFieldCollector collector = TopFieldCollector.create(sort, from + PAGE_SIZE, after, TOTAL_HITS_THRESHOLD);
+            searcher.search(query, collector);
+            TopDocs topDocs = collector.topDocs(from, PAGE_SIZE);
+            List<ElasticSearchLog> logs = new ArrayList<>(topDocs.scoreDocs.length);
+            for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+                logs.add(toLog(searcher.doc(scoreDoc.doc)));
+            }
+            String nextCursor = null;
+            //마지막 페이지의 pit는 keep-alive가 지나면 정리
+            if (logs.size() == PAGE_SIZE) {
+                nextCursor = new LogCursor(sortValues((FieldDoc) topDocs.scoreDocs[topDocs.scoreDocs.length - 1]), pitId).encode();
+            }
+            return new CursorPage<>(logs, pageRequest, topDocs.totalHits.value, nextCursor);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (pinned) {
+                releasePit(ground, searcher);
+            } else {
+                release(ground, searcher);
+            }
+        }
+    }
+
+    //부분 문자열 검색
+    //3글자 이상이면 log.ngram에 phrase 검색 (연속된 3-gram), 3글자 미만은 log 필드 와일드카드
+    private Query keywordQuery(String keyword) {
+        if (keyword.codePointCount(0, keyword.length()) < NGRAM_SIZE) {
+            return new WildcardQuery(new Term(LOG, "*" + keyword.toLowerCase(Locale.ROOT) + "*"));
+        }
+        Query phrase = new QueryBuilder(analyzer).createPhraseQuery(LOG_NGRAM, keyword);
+        return phrase == null ? new MatchNoDocsQuery() : phrase;
+    }
+
+    private Query timeQuery(LocalDateTime startDateTime, LocalDateTime endDateTime) {
+        return LongPoint.newRangeQuery(LOCAL_DATE_TIME, toMillis(startDateTime), toMillis(endDateTime));
+    }
+
+    //필드 구성은 log-mapping.json과 같게, 정렬과 범위 검색에 쓰는 필드는 doc values와 point도 함께 저장
+    private Document toDocument(ElasticSearchLog elasticSearchLog) {
+        Document document = new Document();
+        addTime(document, LOCAL_DATE_TIME, elasticSearchLog.getLocalDateTime());
+        document.add(new StringField(LOG_ID, elasticSearchLog.getLogId(), Field.Store.YES));
+        document.add(new SortedDocValuesField(LOG_ID, new BytesRef(elasticSearchLog.getLogId())));
+        if (elasticSearchLog.getEventTime() != null) {
+            addTime(document, EVENT_TIME, elasticSearchLog.getEventTime());
+        }
+        addKeyword(document, LEVEL, elasticSearchLog.getLevel());
+        addKeyword(document, PID, elasticSearchLog.getPid());
+        addKeyword(document, THREAD, elasticSearchLog.getThread());
+        addKeyword(document, LOGGER, elasticSearchLog.getLogger());
+        //묶인 로그 정보는 검색하지 않으므로 저장만
+        if (elasticSearchLog.getRepeatCount() != null) {
+            document.add(new StoredField(REPEAT_COUNT, elasticSearchLog.getRepeatCount()));
+        }
+        if (elasticSearchLog.getLastLocalDateTime() != null) {
+            document.add(new StoredField(LAST_LOCAL_DATE_TIME, toMillis(elasticSearchLog.getLastLocalDateTime())));
+        }
+        if (elasticSearchLog.getLastEventTime() != null) {
+            document.add(new StoredField(LAST_EVENT_TIME, toMillis(elasticSearchLog.getLastEventTime())));
+        }
+        if (elasticSearchLog.getLog() != null) {
+            document.add(new TextField(LOG, elasticSearchLog.getLog(), Field.Store.YES));
+            document.add(new TextField(LOG_NGRAM, elasticSearchLog.getLog(), Field.Store.NO));
+        }
+        return document;
+    }
+
+    private static void addTime(Document document, String field, LocalDateTime localDateTime) {
+        long millis = toMillis(localDateTime);
+        document.add(new LongPoint(field, millis));
+        document.add(new NumericDocValuesField(field, millis));
+        document.add(new StoredField(field, millis));
+    }
+
+    private static void addKeyword(Document document, String field, String value) {
+        if (value != null) document.add(new StringField(field, value, Field.Store.YES));
+    }
+
+    private static ElasticSearchLog toLog(Document document) {
+        return ElasticSearchLog.builder()
+                .localDateTime(toDateTime(document.getField(LOCAL_DATE_TIME)))
+                .log(document.get(LOG))
+                .logId(document.get(LOG_ID))
+                .eventTime(toDateTime(document.getField(EVENT_TIME)))
+                .level(document.get(LEVEL))
+                .pid(document.get(PID))
+                .thread(document.get(THREAD))
+                .logger(document.get(LOGGER))
+                .repeatCount(document.getField(REPEAT_COUNT) == null ? null : document.getField(REPEAT_COUNT).numericValue().intValue())
+                .lastLocalDateTime(toDateTime(document.getField(LAST_LOCAL_DATE_TIME)))
+                .lastEventTime(toDateTime(document.getField(LAST_EVENT_TIME)))
+                .build();
+    }
+
+    //Elasticsearch 매핑처럼 LocalDateTime을 UTC 시각으로 보고 ms 단위로 저장
+    private static long toMillis(LocalDateTime localDateTime) {
+        return localDateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime toDateTime(IndexableField field) {
+        return field == null ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(field.numericValue().longValue()), ZoneOffset.UTC);
+    }
+
+    //커서의 정렬 값 [시간(ms), 로그 id]
+    private static List<Object> sortValues(FieldDoc fieldDoc) {
+        return List.of(fieldDoc.fields[0], ((BytesRef) fieldDoc.fields[1]).utf8ToString());
+    }
+
+    //로그 id가 고유해서 정렬 값만으로 위치가 정해지므로 문서 번호는 쓰지 않음
+    private static FieldDoc toFieldDoc(List<Object> searchAfter) {
+        if (searchAfter.size() != 2 || !(searchAfter.get(0) instanceof Number) || !(searchAfter.get(1) instanceof String)) {
+            throw new ElasticSearchException.IncorrectCursorException("커서가 올바르지 않습니다.");
+        }
+        return new FieldDoc(Integer.MAX_VALUE, Float.NaN,
+                new Object[]{((Number) searchAfter.get(0)).longValue(), new BytesRef((String) searchAfter.get(1))});
+    }
+
+    private static long parsePitId(String pitId) {
+        try {
+            return Long.parseLong(pitId);
+        } catch (NumberFormatException e) {
+            throw new ElasticSearchException.IncorrectCursorException("커서가 올바르지 않습니다.");
+        }
+    }
+
+    //조회용, 로그가 저장된 적 없는 그라운드는 Elasticsearch와 같이 NoSuchIndexException
+    private Ground existing(String groundId) {
+        if (!hasLogs(groundId)) throw new NoSuchIndexException(groundId, null);
+        return ground(groundId);
+    }
+
+    //그라운드 인덱스, 처음 쓰면 생성
+    private Ground ground(String groundId) {
+        if (!GROUND_ID.matcher(groundId).matches()) {
+            throw new ElasticSearchException.NoIndexException("해당 하는 그룹 id는 없습니다.");
+        }
+        return grounds.computeIfAbsent(groundId, k -> {
+            try {
+                return new Ground(root.resolve(k), new IndexWriterConfig(analyzer)
+                        .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND)
+                        .setRAMBufferSizeMB(ramBufferMb)
+                        .setIndexSort(LOG_SORT));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private IndexSearcher acquire(Ground ground) {
+        try {
+            return ground.searcherManager.acquire();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void release(Ground ground, IndexSearcher searcher) {
+        try {
+            ground.searcherManager.release(searcher);
+        } catch (IOException e) {
+            log.warn("Lucene searcher 반환 실패 {}", e.getMessage());
+        }
+    }
+
+    private void releasePit(Ground ground, IndexSearcher searcher) {
+        try {
+            ground.pits.release(searcher);
+        } catch (IOException e) {
+            log.warn("Lucene searcher 반환 실패 {}", e.getMessage());
+        }
+    }
+
+    private void commit(String groundId, Ground ground) {
+        try {
+            if (!ground.closed && ground.writer.hasUncommittedChanges()) ground.writer.commit();
+        } catch (IOException | AlreadyClosedException e) {
+            log.warn("GROUND ID : {}, Lucene commit 실패 {}", groundId, e.getMessage());
+        }
+    }
+
+    private static class Ground {
+        private final FSDirectory directory;
+        private final IndexWriter writer;
+        private final SearcherManager searcherManager;
+        //pit 검색용으로 기록해 둔 searcher
+        private final SearcherLifetimeManager pits = new SearcherLifetimeManager();
+        //삭제 중이면 refresh, commit 하지 않음
+        private volatile boolean closed;
+
+        private Ground(Path path, IndexWriterConfig config) throws IOException {
+            directory = FSDirectory.open(path);
+            writer = new IndexWriter(directory, config);
+            searcherManager = new SearcherManager(writer, null);
+        }
+
+        private void close() {
+            closed = true;
+            try {
+                pits.close();
+                searcherManager.close();
+                writer.close();
+                directory.close();
+            } catch (IOException | AlreadyClosedException e) {
+                log.warn("Lucene 인덱스 종료 실패 {}", e.getMessage());
+            }
+        }
+    }
+}
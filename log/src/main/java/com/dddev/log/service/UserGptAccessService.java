@@ -1,47 +1,160 @@
 package com.dddev.log.service;
 
-import com.dddev.log.entity.UserGptAccess;
-import com.dddev.log.entity.UserLogAccess;
-import com.dddev.log.exception.UserUnAuthException;
+import com.dddev.log.dto.res.GptQuotaRes;
 import com.dddev.log.exception.UserUnAuthGptException;
-import com.dddev.log.repository.UserGptAccessRepository;
-import com.dddev.log.repository.UserLogAccessRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.stereotype.Service;
 
-import java.util.Optional;
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+//GPT 사용 한도 (token 단위)
+//그라운드별, 사용자별 bucket에서 OpenAI 응답의 usage(prompt + completion token)만큼 차감해 큰 로그 분석일수록 한도를 많이 쓴다.
+//호출 전에 질문 token 어림값 + 답변 최대 token(max_tokens, 설정하면 completion-tokens)을 예약하고(한도를 넘으면 거절), 응답이 오면 실제 사용량과의 차이만큼 맞춘다.
+//질문만 예약하면 동시에 들어온 긴 답변 요청들이 모두 통과한 뒤 한도를 크게 넘길 수 있다.
+//userId는 인증되지 않은 header 값이라 빼거나 바꾸면 사용자 bucket을 피할 수 있다. 실제로 보장되는 한도는 그라운드 bucket뿐이고,
+//사용자 bucket은 같은 그라운드 안에서 사용자끼리 한도를 나눠 쓰도록 돕는 용도다.
+//캐시된 답변은 OpenAI를 호출하지 않으므로 차감하지 않는다.
+//요청이 취소되거나 시간 초과돼도 이미 시작한 블로킹 호출은 끝까지 가므로, 예약은 OpenAI를 호출한 적이 없을 때만 돌려준다.
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class UserGptAccessService {
 
-    private final UserGptAccessRepository userGptAccessRepository;
-
-    //GPT 요청에 따른 COUNT 증가
-    public void count(String groundId){
-        Optional<UserGptAccess> temp = userGptAccessRepository.findById(groundId);
-        //만약 groupt_id가 존재하지 않으면 redis에 생성
-        if(!temp.isPresent()){
-            userGptAccessRepository.save( UserGptAccess.builder()
-                                                                    .groundId(groundId)
-                                                                    .count(1)
-                                                                    .expiration(3600L)
-                                                                    .build());
-            log.info("GROUND ID: {} GPT 사용 URI 접근", groundId);
-            return;
+    private static final String GROUND_KEY = "gpt:quota:ground:";
+    private static final String USER_KEY = "gpt:quota:user:";
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${log.gpt.quota.ground-tokens:200000}")
+    private long groundTokens;
+    @Value("${log.gpt.quota.user-tokens:50000}")
+    private long userTokens;
+    @Value("${log.gpt.quota.window-seconds:3600}")
+    private long windowSeconds;
+    //답변 token 예약량, 0이면 요청의 max_tokens 전체 (max_tokens보다 크게 잡지 않음)
+    @Value("${log.gpt.quota.completion-tokens:0}")
+    private long completionTokens;
+
+    private RedisScript<List> quotaScript;
+
+    @PostConstruct
+    void init() {
+        DefaultRedisScript<List> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource("scripts/gpt-token-quota.lua")));
+        script.setResultType(List.class);
+        quotaScript = script;
+    }
+
+    //질문 token + 답변 최대 token만큼 예약, 그라운드나 사용자(userId가 있으면) 한도를 넘으면 UserUnAuthGptException
+    public Reservation reserve(String groundId, String userId, long promptTokens, long maxTokens) {
+        long tokens = promptTokens + (completionTokens > 0 ? Math.min(completionTokens, maxTokens) : maxTokens);
+        List<Long> result = execute(groundId, userId, tokens, true);
+        if (result.get(0) == 0) {
+            long minutes = Math.max(1, (result.get(1) + 59_999) / 60_000);
+            log.warn("GROUND ID: {}, USER ID: {}, GPT 사용 한도 초과 (예상 {} token)", groundId, userId, tokens);
+            throw new UserUnAuthGptException("최근 " + windowSeconds / 60 + "분 동안 GPT 사용 한도를 초과했습니다. " + minutes + "분 후 다시 시도하세요.");
+        }
+        return new Reservation(groundId, userId, tokens);
+    }
+
+    //OpenAI가 알려준 실제 사용량으로 예약분을 맞춤 (예약마다 한 번만)
+    public void settle(Reservation reservation, long tokens) {
+        if (!reservation.settled.compareAndSet(false, true)) return;
+        long delta = tokens - reservation.tokens;
+        //실제 사용한 token (블로킹, 스트리밍 모두 여기서 정산)
+        meterRegistry.counter("log.gpt.tokens").increment(tokens);
+        if (delta == 0) return;
+        try {
+            execute(reservation.groundId, reservation.userId, delta, false);
+        } catch (Exception e) {
+            log.warn("GROUND ID: {}, GPT 사용량 {} token 반영 실패 {}", reservation.groundId, tokens, e.getMessage());
+        }
+    }
+
+    //worker에서 OpenAI 호출 시작 (재시도마다)
+    public void started(Reservation reservation) {
+        reservation.started = true;
+        reservation.inFlight.incrementAndGet();
+    }
+
+    //worker의 호출이 끝남, 응답을 받았으면 실제 사용량(tokens)으로 정산(받지 못했으면 음수)
+    //요청이 이미 끝났으면(취소, 시간 초과, 실패) 예약분 그대로 정산
+    public void finished(Reservation reservation, long tokens) {
+        if (tokens >= 0) settle(reservation, tokens);
+        reservation.inFlight.decrementAndGet();
+        if (reservation.completed) settle(reservation, reservation.tokens);
+    }
+
+    //요청이 끝남 (성공, 실패, 취소), 호출한 적이 없으면 예약을 돌려주고 진행 중인 호출이 있으면 그 호출이 끝날 때 정산
+    public void completed(Reservation reservation) {
+        reservation.completed = true;
+        if (reservation.inFlight.get() == 0) settle(reservation, reservation.started ? reservation.tokens : 0);
+    }
+
+    //남은 한도 조회 (차감 없음)
+    public GptQuotaRes getQuota(String groundId, String userId) {
+        List<Long> result = execute(groundId, userId, 0, false);
+        long groundUsed = result.get(2);
+        long remaining = Math.max(0, groundTokens - groundUsed);
+        GptQuotaRes.GptQuotaResBuilder quota = GptQuotaRes.builder()
+                .groundLimit(groundTokens)
+                .groundUsed(groundUsed)
+                .windowSeconds(windowSeconds)
+                .resetMillis(result.get(1));
+        if (result.size() > 4) {
+            long userUsed = result.get(4);
+            quota.userLimit(userTokens).userUsed(userUsed);
+            remaining = Math.min(remaining, Math.max(0, userTokens - userUsed));
         }
-        //만약 group_id가 존재하면 1분당 로그 수 + 1
-        UserGptAccess userGptAccess = temp.get();
-        userGptAccess.increase();
-        log.warn("GROUND ID: {}, GPT 사용 URI 접근 최근 1시간 {}번 접근", groundId, userGptAccess.getCount());
-        //1시간에 60번 이상 GPT 요청 불가!
-        if(userGptAccess.getCount() >= 60) {
-            log.error("GROUND ID: {}, GPT 사용 URI 접근 최근 1시간 60번 이상 접근으로 비정상접근으로 판단!", groundId);
-            if(userGptAccess.getExpiration() == -1 ) userGptAccessRepository.delete(userGptAccess);
-            throw new UserUnAuthGptException("1시간에 60번만 GPT 요청이 가능합니다. 첫 시도 후 1시간 후 다시 시도하세요.");
+        return quota.remaining(remaining).build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Long> execute(String groundId, String userId, long tokens, boolean check) {
+        List<String> keys = new ArrayList<>(2);
+        List<Object> args = new ArrayList<>(6);
+        args.add(String.valueOf(System.currentTimeMillis()));
+        args.add(String.valueOf(windowSeconds * 1000));
+        args.add(String.valueOf(tokens));
+        args.add(check ? "1" : "0");
+        keys.add(GROUND_KEY + groundId);
+        args.add(String.valueOf(groundTokens));
+        if (userId != null && !userId.isBlank()) {
+            keys.add(USER_KEY + userId);
+            args.add(String.valueOf(userTokens));
+        }
+        return meterRegistry.timer("log.redis.command", "command", "gpt-token-quota").record(() ->
+                (List<Long>) redisTemplate.execute(quotaScript, keys, args.toArray()));
+    }
+
+    //호출 전에 예약한 token (응답 후 settle로 실제 사용량과 맞춤)
+    public static class Reservation {
+        private final String groundId;
+        private final String userId;
+        private final long tokens;
+        private final AtomicBoolean settled = new AtomicBoolean();
+        //진행 중인 OpenAI 호출 수, 한 번이라도 호출했는지, 요청이 끝났는지
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile boolean started;
+        private volatile boolean completed;
+
+        private Reservation(String groundId, String userId, long tokens) {
+            this.groundId = groundId;
+            this.userId = userId;
+            this.tokens = tokens;
         }
-        userGptAccessRepository.save(userGptAccess);
     }
 }
@@ -1,57 +1,223 @@
 package com.dddev.log.service;
 
-import com.dddev.log.entity.UserLogAccess;
-import com.dddev.log.exception.UserUnAuthException;
-import com.dddev.log.repository.UserLogAccessRepository;
+import com.dddev.log.dto.res.LogQuotaRes;
+import com.dddev.log.exception.LogIngestException;
+import com.dddev.log.util.StripedBudget;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.stereotype.Service;
-import java.util.Optional;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//그라운드별 로그 저장 한도
+//Redis의 전역 카운터에서 chunk 단위로 한도를 미리 할당(lease)받아 메모리에서 차감하고,
+//남은 한도가 적어지면 비동기로 다음 chunk를 받아 로그 한 줄마다 Redis를 거치지 않는다.
+//할당받은 한도는 쓰기 전부터 사용량에 들어가므로 서버가 여러 대여도 전역 한도를 넘지 않고,
+//lease가 만료되면 쓰지 않은 한도를 다음 할당 때 Redis에 돌려줘 느린 그라운드가 실제보다 많이 차감되지 않는다.
+//chunk마다 할당받은 창을 기록해, 창이 바뀌는 사이에 받은 한도도 각자 할당한 창에 돌려준다.
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class UserLogAccessService {
 
-    private final UserLogAccessRepository userLogAccessRepository;
-    private final GroundAuthService groundAuthService;
-    private final ElasticSearchLogService elasticSearchLogService;
+    private static final String COUNTER_KEY = "log:rate:";
+    //그라운드별 한도 (HSET log:rate:limits {groundId} {한도}), 없으면 기본 한도
+    private static final String LIMIT_KEY = "log:rate:limits";
+    private static final long GRACE = 1;
+    private static final long EXCEEDED = 2;
+
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${log.rate.limit:1000}")
+    private long limit;
+    @Value("${log.rate.window-seconds:60}")
+    private long windowSeconds;
+    //한 번에 미리 할당받는 한도
+    @Value("${log.rate.lease-chunk:100}")
+    private long leaseChunk;
+    //할당받은 한도를 쓰는 최대 시간, 지나면 남은 한도를 Redis에 돌려주고 다시 맞춤
+    @Value("${log.rate.lease-ttl-ms:1000}")
+    private long leaseTtlMs;
+    @Value("${log.rate.lease-stripes:8}")
+    private int leaseStripes;
+
+    private RedisScript<List> rateLimitScript;
+    private final ConcurrentHashMap<String, Lease> leases = new ConcurrentHashMap<>();
+    private ExecutorService refiller;
 
-    //로그 요청에 따른 카운트 캐시
+    @PostConstruct
+    void init() {
+        DefaultRedisScript<List> script = new DefaultRedisScript<>();
+        script.setScriptSource(new ResourceScriptSource(new ClassPathResource("scripts/log-rate-limit.lua")));
+        script.setResultType(List.class);
+        rateLimitScript = script;
+        refiller = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "log-quota-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    //로그 요청에 따른 카운트
     public void count(String groundId){
-        Optional<UserLogAccess> temp = userLogAccessRepository.findById(groundId);
-        //만약 groupt_id가 존재하지 않으면 redis에 생성
-        if(!temp.isPresent()){
-            userLogAccessRepository.save( UserLogAccess.builder()
-                                                                    .groundId(groundId)
-                                                                    .count(1)
-                                                                    .index(0)
-                                                                    .expiration(60L)
-                                                                    .build());
-            log.info("GROUND ID: {} 로그 등록 URI 접근", groundId);
+        count(groundId, 1);
+    }
+
+    //로그 요청 수(size)만큼 카운트
+    //할당받은 한도 안이면 메모리에서만 차감하고, 모자랄 때만 Redis에서 새로 할당받는다.
+    //한도를 넘으면 현재 창이 끝날 때까지의 시간을 담아 RateLimitedException
+    public void count(String groundId, int size){
+        Lease lease = leases.computeIfAbsent(groundId, k -> new Lease(leaseStripes));
+        lease.lastUsed = System.nanoTime();
+        if (!lease.isExpired() && lease.budget.tryAcquire(size)) {
+            if (lease.budget.sum() < leaseChunk / 4) refillAsync(groundId, lease);
             return;
         }
-        //만약 group_id가 존재하면 1분당 로그 수 + 1
-        UserLogAccess userLogAccess = temp.get();
-        userLogAccess.increase();
-        log.info("GROUND ID: {}, INDEX: {}, 로그 등록 URI 접근 최근 60초 {}번 접근, 남은 시간 {}초", groundId, userLogAccess.getIndex(), userLogAccess.getCount(), userLogAccess.getExpiration());
-        //비정상적인 로그 요청 횟수(특정 횟수)라는 판단이 들면 삭제
-        if(userLogAccess.getCount() >= 1000) {
-            //만약 첫 시도이면 -> docker로 첫 실행 시 로그 한 번에 많이 들어올 경우 대비
-            if(userLogAccess.getIndex() == 0) {
-                userLogAccess.setCount(0);
-                userLogAccess.setIndex(1);
-                userLogAccess.setExpiration(60L);
+        synchronized (lease) {
+            if (!lease.isExpired() && lease.budget.tryAcquire(size)) return;
+            long[] refunds = lease.isExpired() ? lease.refunds(lease.budget.drain()) : new long[0];
+            List<Long> result = execute(groundId, size, leaseChunk, false, refunds);
+            long status = result.get(0);
+            if (status == GRACE) {
+                log.info("GROUND ID: {}, 최근 {}초 {}번 이상 접근, 첫 초과라 카운트 초기화", groundId, windowSeconds, result.get(2));
+            } else if (status == EXCEEDED) {
+                log.info("GROUND ID: {}, 로그 등록 URI 접근 최근 {}초 {}번 이상 접근으로 한도 초과", groundId, windowSeconds, result.get(2));
+                throw new LogIngestException.RateLimitedException("최근 " + windowSeconds + "초 동안 " + result.get(2) + "줄 이상 로그를 보냈습니다. 잠시 후 다시 시도하세요.",
+                        Math.max(1, (result.get(3) + 999) / 1000));
             }
-            else{
-                //토큰에서 삭제, ela에서 인덱스 삭제
-                groundAuthService.deleteToken(groundId);
-                elasticSearchLogService.deleteIndex(groundId);
-                if(userLogAccess.getExpiration() == -1 ) userLogAccessRepository.delete(userLogAccess);
-                log.info("GROUND ID: {}, 로그 등록 URI 접근 최근 60초 1000번 이상 접근으로 비정상접근으로 판단, 등록된 모든 로그 삭제", groundId);
-                throw new UserUnAuthException.UnusualRequest("비정상적으로 많은 로그를 요청 중입니다. token을 재발급해주세요.");
+            long grant = result.get(4);
+            lease.renew(Math.min(leaseTtlMs, result.get(3)), result.get(5), grant);
+            if (grant > size) lease.budget.add(grant - size);
+        }
+    }
+
+    //남은 한도 조회 (카운트 증가 없음, 서버들이 미리 할당받은 한도는 사용량에 포함)
+    public LogQuotaRes getQuota(String groundId) {
+        List<Long> result = execute(groundId, 0, 0, false, new long[0]);
+        long used = result.get(1);
+        long quotaLimit = result.get(2);
+        return LogQuotaRes.builder()
+                .limit(quotaLimit)
+                .used(used)
+                .remaining(Math.max(0, quotaLimit - used))
+                .windowSeconds(windowSeconds)
+                .resetMillis(result.get(3))
+                .build();
+    }
+
+    //남은 한도가 chunk의 1/4 아래로 내려가면 다음 chunk를 미리 할당받음 (한도가 모자라면 받지 않음)
+    private void refillAsync(String groundId, Lease lease) {
+        if (!lease.refilling.compareAndSet(false, true)) return;
+        refiller.execute(() -> {
+            try {
+                List<Long> result = execute(groundId, 1, leaseChunk, true, new long[0]);
+                long grant = result.get(4);
+                if (grant > 0) {
+                    lease.renew(Math.min(leaseTtlMs, result.get(3)), result.get(5), grant);
+                    lease.budget.add(grant);
+                }
+            } catch (Exception e) {
+                log.warn("GROUND ID: {}, 로그 저장 한도 미리 할당 실패 {}", groundId, e.getMessage());
+            } finally {
+                lease.refilling.set(false);
+            }
+        });
+    }
+
+    //한 창 동안 쓰지 않은 그라운드의 할당 정리
+    @Scheduled(fixedDelayString = "${log.rate.lease-cleanup-ms:60000}")
+    public void removeIdleLeases() {
+        long idle = System.nanoTime() - TimeUnit.SECONDS.toNanos(windowSeconds);
+        leases.entrySet().removeIf(a -> a.getValue().lastUsed - idle < 0);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        refiller.shutdown();
+    }
+
+    //refunds는 (돌려주는 수, 할당한 창의 시작 시간) 쌍
+    @SuppressWarnings("unchecked")
+    private List<Long> execute(String groundId, long need, long chunk, boolean prefetch, long[] refunds) {
+        Object[] args = new Object[7 + refunds.length];
+        args[0] = String.valueOf(System.currentTimeMillis());
+        args[1] = String.valueOf(windowSeconds * 1000);
+        args[2] = String.valueOf(limit);
+        args[3] = String.valueOf(need);
+        args[4] = groundId;
+        args[5] = String.valueOf(chunk);
+        args[6] = prefetch ? "1" : "0";
+        for (int i = 0; i < refunds.length; i++) {
+            args[7 + i] = String.valueOf(refunds[i]);
+        }
+        return meterRegistry.timer("log.redis.command", "command", "log-rate-limit").record(() ->
+                (List<Long>) redisTemplate.execute(rateLimitScript, List.of(COUNTER_KEY + groundId, LIMIT_KEY), args));
+    }
+
+    private static class Lease {
+        private final StripedBudget budget;
+        private final AtomicBoolean refilling = new AtomicBoolean();
+        private volatile long expiresAt = System.nanoTime();
+        private volatile long lastUsed = System.nanoTime();
+        //아직 돌려주지 않은 할당 {창의 시작 시간, 할당한 수}, 오래된 순 (같은 창은 합치고 최근 두 창만)
+        private final ArrayDeque<long[]> grants = new ArrayDeque<>();
+
+        private Lease(int stripes) {
+            this.budget = new StripedBudget(stripes);
+        }
+
+        private boolean isExpired() {
+            return System.nanoTime() - expiresAt >= 0;
+        }
+
+        private void renew(long millis, long window, long grant) {
+            synchronized (grants) {
+                long[] last = grants.peekLast();
+                if (last != null && last[0] == window) {
+                    last[1] += grant;
+                } else if (grant > 0) {
+                    grants.addLast(new long[]{window, grant});
+                    //Redis는 현재 창과 직전 창의 카운트만 가지고 있으므로 그보다 오래된 할당은 돌려줄 곳이 없음
+                    if (grants.size() > 2) grants.pollFirst();
+                }
+            }
+            expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+
+        //쓰지 않은 한도를 최근 할당부터 나눠 (돌려주는 수, 창) 쌍으로, 먼저 받은 한도를 먼저 쓴 것으로 본다
+        private long[] refunds(long unused) {
+            synchronized (grants) {
+                long[] refunds = new long[grants.size() * 2];
+                int n = 0;
+                for (Iterator<long[]> it = grants.descendingIterator(); it.hasNext() && unused > 0; ) {
+                    long[] grant = it.next();
+                    long refund = Math.min(unused, grant[1]);
+                    refunds[n++] = refund;
+                    refunds[n++] = grant[0];
+                    unused -= refund;
+                }
+                grants.clear();
+                return Arrays.copyOf(refunds, n);
             }
         }
-        userLogAccessRepository.save(userLogAccess);
     }
 }
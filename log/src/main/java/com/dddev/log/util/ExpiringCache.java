@@ -0,0 +1,98 @@
+package com.dddev.log.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiPredicate;
+
+//TTL과 최대 크기가 있는 동시성 캐시
+//조회는 ConcurrentHashMap 한 번으로 끝나고, 최대 크기를 넘을 때만 오래 안 쓴 항목부터 정리한다.
+public class ExpiringCache<K, V> {
+
+    private final ConcurrentHashMap<K, Node<V>> map = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final int maxSize;
+    private final long ttlNanos;
+
+    public ExpiringCache(int maxSize, long ttl, TimeUnit unit) {
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    //없거나 만료되었으면 null
+    public V get(K key) {
+        Node<V> node = map.get(key);
+        if (node == null) return null;
+        long now = System.nanoTime();
+        if (now - node.expiresAt >= 0) {
+            map.remove(key, node);
+            return null;
+        }
+        node.lastAccess = now;
+        return node.value;
+    }
+
+    public void put(K key, V value) {
+        put(key, value, ttlNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void put(K key, V value, long ttl, TimeUnit unit) {
+        long now = System.nanoTime();
+        map.put(key, new Node<>(value, now + unit.toNanos(ttl), now));
+        if (map.size() > maxSize) {
+            evict();
+        }
+    }
+
+    public void invalidate(K key) {
+        map.remove(key);
+    }
+
+    //조건에 맞는 항목 모두 삭제
+    public void invalidateIf(BiPredicate<K, V> predicate) {
+        map.entrySet().removeIf(a -> predicate.test(a.getKey(), a.getValue().value));
+    }
+
+    public void clear() {
+        map.clear();
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    //만료된 항목을 먼저 지우고, 그래도 넘치면 오래 안 쓴 항목부터 10% 여유가 생길 때까지 삭제
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) return;
+        try {
+            long now = System.nanoTime();
+            map.entrySet().removeIf(a -> now - a.getValue().expiresAt >= 0);
+            int overflow = map.size() - maxSize;
+            if (overflow <= 0) return;
+            List<Map.Entry<K, Node<V>>> entries = new ArrayList<>(map.entrySet());
+            entries.sort(Comparator.comparingLong(a -> a.getValue().lastAccess));
+            int remove = Math.min(entries.size(), overflow + maxSize / 10);
+            for (int i = 0; i < remove; i++) {
+                map.remove(entries.get(i).getKey(), entries.get(i).getValue());
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private static class Node<V> {
+        private final V value;
+        private final long expiresAt;
+        private volatile long lastAccess;
+
+        private Node(V value, long expiresAt, long lastAccess) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
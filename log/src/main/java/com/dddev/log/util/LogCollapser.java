@@ -0,0 +1,76 @@
+package com.dddev.log.util;
+
+import com.dddev.log.dto.ElasticSearchLog;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+//연속으로 들어온 같은 로그 줄을 한 로그로 묶음 (크래시 루프, 재시도 폭주)
+//Spring Boot 형식 줄은 앞에 찍힌 시간을 빼고 비교하고, 그 외 줄은 줄 전체를 비교한다.
+//묶인 로그는 첫 줄의 내용, logId, 시간을 그대로 갖고 repeatCount와 마지막 줄의 저장 시간, 로그 시간을 채운다.
+//입력 로그는 바꾸지 않고 묶인 로그만 복사본으로 만들어, 저장에 실패한 같은 로그를 다시 묶어도 횟수가 늘지 않는다.
+public final class LogCollapser {
+
+    private LogCollapser() {
+    }
+
+    //logs(저장 전 처리가 끝난 상태) 중 바로 앞 로그와 같은 줄이면 앞 로그에 합침
+    //저장할 로그 목록을 반환하고 runOf[i]에 i번째 로그가 들어간 로그의 순서를 채움
+    //묶이지 않은 로그는 입력 로그 그대로, 묶인 로그는 첫 줄 로그의 복사본
+    public static List<ElasticSearchLog> collapse(List<ElasticSearchLog> logs, long windowMs, int[] runOf) {
+        List<ElasticSearchLog> collapsed = new ArrayList<>(logs.size());
+        ElasticSearchLog run = null;
+        ElasticSearchLog head = null;
+        for (int i = 0; i < logs.size(); i++) {
+            ElasticSearchLog current = logs.get(i);
+            if (run != null && isRepeat(run, current, windowMs)) {
+                if (run == head) {
+                    run = head.toBuilder().build();
+                    collapsed.set(collapsed.size() - 1, run);
+                }
+                merge(run, current);
+            } else {
+                run = head = current;
+                collapsed.add(current);
+            }
+            runOf[i] = collapsed.size() - 1;
+        }
+        return collapsed;
+    }
+
+    //previous(묶인 로그면 마지막 줄)와 같은 줄이고 저장 시간 차이가 windowMs 이내인지, windowMs가 0 이하면 묶지 않음
+    public static boolean isRepeat(ElasticSearchLog previous, ElasticSearchLog current, long windowMs) {
+        if (windowMs <= 0) return false;
+        LocalDateTime last = previous.getLastLocalDateTime() != null ? previous.getLastLocalDateTime() : previous.getLocalDateTime();
+        if (last == null || current.getLocalDateTime() == null
+                || Math.abs(Duration.between(last, current.getLocalDateTime()).toMillis()) > windowMs) {
+            return false;
+        }
+        return sameLine(previous, current);
+    }
+
+    //묶인 줄 수 (묶이지 않은 로그는 1)
+    public static int repeatCount(ElasticSearchLog elasticSearchLog) {
+        return elasticSearchLog.getRepeatCount() == null ? 1 : elasticSearchLog.getRepeatCount();
+    }
+
+    private static boolean sameLine(ElasticSearchLog a, ElasticSearchLog b) {
+        String x = a.getLog();
+        String y = b.getLog();
+        if (x == null || y == null) return false;
+        if (a.getEventTime() == null || a.getLevel() == null || b.getEventTime() == null || b.getLevel() == null) {
+            return x.equals(y);
+        }
+        int i = LogLineParser.afterTime(x);
+        int j = LogLineParser.afterTime(y);
+        return x.length() - i == y.length() - j && x.regionMatches(i, y, j, x.length() - i);
+    }
+
+    private static void merge(ElasticSearchLog run, ElasticSearchLog repeat) {
+        run.setRepeatCount(repeatCount(run) + repeatCount(repeat));
+        run.setLastLocalDateTime(repeat.getLastLocalDateTime() != null ? repeat.getLastLocalDateTime() : repeat.getLocalDateTime());
+        run.setLastEventTime(repeat.getLastEventTime() != null ? repeat.getLastEventTime() : repeat.getEventTime());
+    }
+}
@@ -0,0 +1,163 @@
+package com.dddev.log.util;
+
+import com.dddev.log.dto.ElasticSearchLog;
+
+import java.util.*;
+
+//GPT 분석용 로그 context 생성
+//ERROR 줄과 그 스택트레이스, 앞뒤 몇 줄을 먼저 고르고, 숫자만 다른 반복 줄은 한 줄로 묶어 횟수(저장할 때 묶인 수 포함)를 붙인 뒤
+//token 예산 안에 들어가는 줄만 시간 순서대로 보낸다.
+public final class LogContextBuilder {
+
+    private static final int MAX_LINE_CHARS = 400;
+    private static final String OMITTED = "...";
+
+    private static final double ERROR_SCORE = 100;
+    private static final double TRACE_SCORE = 90;
+    private static final double FRAMEWORK_TRACE_SCORE = 20;
+    private static final double NEAR_ERROR_SCORE = 60;
+    private static final double WARN_SCORE = 30;
+    private static final double OTHER_SCORE = 1;
+
+    private LogContextBuilder() {
+    }
+
+    //logs는 오래된 것부터, window는 ERROR 앞뒤로 함께 보낼 줄 수
+    public static String build(List<ElasticSearchLog> logs, int tokenBudget, int window) {
+        int n = logs.size();
+        String[] lines = new String[n];
+        double[] scores = new double[n];
+        String level = null;
+        for (int i = 0; i < n; i++) {
+            String line = logs.get(i).getLog() == null ? "" : logs.get(i).getLog().strip();
+            lines[i] = line.length() > MAX_LINE_CHARS ? line.substring(0, MAX_LINE_CHARS) + OMITTED : line;
+            //스택트레이스, 예외 메시지처럼 레벨이 없는 줄은 바로 앞 로그의 레벨을 따름
+            String lineLevel = isTrace(logs.get(i).getLog()) ? null : levelOf(logs.get(i));
+            if (lineLevel == null) {
+                scores[i] = isError(level) ? (isFrameworkFrame(line) ? FRAMEWORK_TRACE_SCORE : TRACE_SCORE) : OTHER_SCORE;
+                continue;
+            }
+            level = lineLevel;
+            scores[i] = isError(level) ? ERROR_SCORE : "WARN".equals(level) ? WARN_SCORE : OTHER_SCORE;
+        }
+        //ERROR 앞뒤 줄은 가까울수록 높게
+        for (int i = 0; i < n; i++) {
+            if (scores[i] != ERROR_SCORE) continue;
+            for (int j = Math.max(0, i - window); j <= Math.min(n - 1, i + window); j++) {
+                scores[j] = Math.max(scores[j], NEAR_ERROR_SCORE - 10.0 * Math.abs(i - j));
+            }
+        }
+
+        //숫자만 다른 줄은 한 묶음, 대표 줄은 가장 최근 줄
+        Map<String, Group> groups = new LinkedHashMap<>();
+        Group[] groupOf = new Group[n];
+        for (int i = 0; i < n; i++) {
+            if (lines[i].isEmpty()) continue;
+            Group group = groups.computeIfAbsent(normalize(lines[i]), k -> new Group());
+            groupOf[i] = group;
+            group.last = i;
+            group.count += LogCollapser.repeatCount(logs.get(i));
+            group.score = Math.max(group.score, scores[i]);
+        }
+
+        //점수 높은 순, 같으면 최근 순으로 예산 안에서 선택
+        List<Group> candidates = new ArrayList<>(groups.values());
+        candidates.sort(Comparator.comparingDouble((Group a) -> a.score).thenComparingInt(a -> a.last).reversed());
+        int used = 0;
+        List<Group> selected = new ArrayList<>();
+        for (Group group : candidates) {
+            int tokens = estimateTokens(text(lines, group)) + 1;
+            if (used + tokens > tokenBudget) continue;
+            used += tokens;
+            group.selected = true;
+            selected.add(group);
+        }
+
+        //시간 순서로 출력, 빠진 줄이 있으면 ... 표시
+        selected.sort(Comparator.comparingInt(a -> a.last));
+        StringBuilder context = new StringBuilder();
+        int previous = -1;
+        for (Group group : selected) {
+            if (hasOmitted(groupOf, previous, group.last)) {
+                context.append(OMITTED).append('\n');
+            }
+            context.append(text(lines, group)).append('\n');
+            previous = group.last;
+        }
+        return context.toString();
+    }
+
+    //영문, 숫자, 기호는 약 4글자당 1 token, 한글 등은 글자당 1 token으로 어림
+    public static int estimateTokens(String text) {
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 128) {
+                ascii++;
+            } else {
+                other++;
+            }
+        }
+        return (ascii + 3) / 4 + other;
+    }
+
+    private static String text(String[] lines, Group group) {
+        return group.count > 1 ? lines[group.last] + " [repeated " + group.count + " times]" : lines[group.last];
+    }
+
+    //이전 선택 줄과 현재 줄 사이에 선택되지 않은 묶음의 줄이 있는지
+    private static boolean hasOmitted(Group[] groupOf, int from, int to) {
+        for (int i = from + 1; i < to; i++) {
+            if (groupOf[i] != null && !groupOf[i].selected) return true;
+        }
+        return false;
+    }
+
+    private static String levelOf(ElasticSearchLog log) {
+        if (log.getLevel() != null) return log.getLevel();
+        //레벨 필드가 없는 이전 로그는 다시 파싱
+        ElasticSearchLog parsed = new ElasticSearchLog();
+        return LogLineParser.parse(log.getLog(), parsed) ? parsed.getLevel() : null;
+    }
+
+    private static boolean isError(String level) {
+        return "ERROR".equals(level) || "FATAL".equals(level);
+    }
+
+    //at ..., Caused by: ..., ... 12 more, 들여쓰기된 줄
+    private static boolean isTrace(String line) {
+        if (line == null || line.isEmpty()) return false;
+        if (Character.isWhitespace(line.charAt(0))) return true;
+        return line.startsWith("at ") || line.startsWith("Caused by:") || line.startsWith("Suppressed:") || line.startsWith("... ");
+    }
+
+    private static boolean isFrameworkFrame(String line) {
+        if (!line.startsWith("at ")) return false;
+        return line.startsWith("at java.") || line.startsWith("at javax.") || line.startsWith("at jdk.") || line.startsWith("at sun.")
+                || line.startsWith("at org.springframework.") || line.startsWith("at org.apache.");
+    }
+
+    //연속된 숫자를 #으로 바꿔 시간, id만 다른 줄을 같은 줄로
+    private static String normalize(String line) {
+        StringBuilder normalized = new StringBuilder(line.length());
+        boolean digit = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (!digit) normalized.append('#');
+                digit = true;
+            } else {
+                normalized.append(c);
+                digit = false;
+            }
+        }
+        return normalized.toString();
+    }
+
+    private static class Group {
+        private int last;
+        private int count;
+        private double score;
+        private boolean selected;
+    }
+}
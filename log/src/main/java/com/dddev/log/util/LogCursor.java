@@ -0,0 +1,42 @@
+package com.dddev.log.util;
+
+import com.dddev.log.exception.ElasticSearchException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Base64;
+import java.util.List;
+
+//search_after 커서 (마지막 로그의 정렬 값 + point-in-time id)를 URL에 넣을 수 있는 문자열로 변환
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LogCursor {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private List<Object> searchAfter;
+    private String pitId;
+
+    public String encode() {
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(this));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static LogCursor decode(String cursor) {
+        try {
+            LogCursor logCursor = objectMapper.readValue(Base64.getUrlDecoder().decode(cursor), LogCursor.class);
+            if (logCursor.getSearchAfter() == null || logCursor.getSearchAfter().isEmpty()) {
+                throw new IllegalArgumentException("search_after 값이 없습니다.");
+            }
+            return logCursor;
+        } catch (Exception e) {
+            throw new ElasticSearchException.IncorrectCursorException("커서가 올바르지 않습니다.");
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.dddev.log.util;
+
+import com.dddev.log.dto.ElasticSearchLog;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+
+//Spring Boot(logback) 기본 형식 로그 한 줄 파서
+//2023-11-03 09:35:13.099  INFO 7960 --- [           main] com.dddev.log.LogApplication             : Started LogApplication
+//정규표현식이나 split 없이 앞에서부터 한 번만 훑고, 필드 값으로 저장할 문자열만 만든다.
+public final class LogLineParser {
+
+    private static final String[] LEVELS = {"TRACE", "DEBUG", "INFO", "WARN", "ERROR", "FATAL"};
+    private static final int[] NANO_SCALE = {0, 100_000_000, 10_000_000, 1_000_000, 100_000, 10_000, 1_000, 100, 10, 1};
+
+    private LogLineParser() {
+    }
+
+    //형식에 맞으면 로그 시간, 레벨, pid, 스레드, 로거를 채우고 true (스택트레이스 등 형식이 다른 줄은 false)
+    public static boolean parse(String line, ElasticSearchLog target) {
+        if (line == null) return false;
+        int n = line.length();
+        int i = skipSpaces(line, 0);
+
+        //yyyy-MM-dd HH:mm:ss (날짜와 시간 사이는 공백 또는 T)
+        if (i + 19 > n) return false;
+        int year = digits(line, i, 4);
+        int month = digits(line, i + 5, 2);
+        int day = digits(line, i + 8, 2);
+        int hour = digits(line, i + 11, 2);
+        int minute = digits(line, i + 14, 2);
+        int second = digits(line, i + 17, 2);
+        char separator = line.charAt(i + 10);
+        if (year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0
+                || line.charAt(i + 4) != '-' || line.charAt(i + 7) != '-' || (separator != ' ' && separator != 'T')
+                || line.charAt(i + 13) != ':' || line.charAt(i + 16) != ':') {
+            return false;
+        }
+        i += 19;
+
+        //.SSS (최대 9자리)
+        int nano = 0;
+        if (i < n && (line.charAt(i) == '.' || line.charAt(i) == ',')) {
+            int start = ++i;
+            while (i < n && isDigit(line.charAt(i))) {
+                if (i - start < 9) nano = nano * 10 + (line.charAt(i) - '0');
+                i++;
+            }
+            if (i == start) return false;
+            nano *= NANO_SCALE[Math.min(i - start, 9)];
+        }
+        //시간대(+09:00, Z)는 무시
+        while (i < n && line.charAt(i) != ' ') i++;
+        i = skipSpaces(line, i);
+
+        //레벨 (%5p)
+        String level = null;
+        for (String candidate : LEVELS) {
+            int end = i + candidate.length();
+            if (line.startsWith(candidate, i) && (end == n || line.charAt(end) == ' ')) {
+                level = candidate;
+                break;
+            }
+        }
+        if (level == null) return false;
+        i = skipSpaces(line, i + level.length());
+
+        //pid
+        int pidStart = i;
+        while (i < n && isDigit(line.charAt(i))) i++;
+        int pidEnd = i;
+        i = skipSpaces(line, i);
+        if (!line.startsWith("---", i)) return false;
+        i = skipSpaces(line, i + 3);
+
+        //[스레드], 앞에 [애플리케이션 이름]이 붙는 경우 마지막 대괄호가 스레드
+        int threadStart = -1;
+        int threadEnd = -1;
+        while (i < n && line.charAt(i) == '[') {
+            int close = line.indexOf(']', i + 1);
+            if (close < 0) return false;
+            threadStart = i + 1;
+            threadEnd = close;
+            i = skipSpaces(line, close + 1);
+        }
+        if (threadStart < 0) return false;
+
+        //로거 (%-40.40logger{39}) 뒤에 " : 메시지"
+        int colon = line.indexOf(" : ", i);
+        if (colon < 0) colon = line.endsWith(" :") ? n - 2 : -1;
+        if (colon < 0) return false;
+        int loggerEnd = colon;
+        while (loggerEnd > i && line.charAt(loggerEnd - 1) == ' ') loggerEnd--;
+        if (loggerEnd == i) return false;
+
+        LocalDateTime eventTime;
+        try {
+            eventTime = LocalDateTime.of(year, month, day, hour, minute, second, nano);
+        } catch (DateTimeException e) {
+            return false;
+        }
+        while (threadStart < threadEnd && line.charAt(threadStart) == ' ') threadStart++;
+        while (threadEnd > threadStart && line.charAt(threadEnd - 1) == ' ') threadEnd--;
+
+        target.setEventTime(eventTime);
+        target.setLevel(level);
+        target.setPid(pidEnd > pidStart ? line.substring(pidStart, pidEnd) : null);
+        target.setThread(line.substring(threadStart, threadEnd));
+        target.setLogger(line.substring(i, loggerEnd));
+        return true;
+    }
+
+    //앞에 찍힌 시간(소수점 초, 시간대 포함)과 뒤 공백 다음 위치, parse가 성공한 줄에만 사용
+    public static int afterTime(String line) {
+        int i = skipSpaces(line, 0) + 19;
+        while (i < line.length() && line.charAt(i) != ' ') i++;
+        return skipSpaces(line, i);
+    }
+
+    //고정 길이 숫자, 숫자가 아니면 -1
+    private static int digits(String line, int from, int length) {
+        int value = 0;
+        for (int i = from; i < from + length; i++) {
+            char c = line.charAt(i);
+            if (!isDigit(c)) return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int skipSpaces(String line, int i) {
+        while (i < line.length() && line.charAt(i) == ' ') i++;
+        return i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
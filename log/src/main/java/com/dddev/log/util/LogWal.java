@@ -0,0 +1,312 @@
+package com.dddev.log.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+//로컬 디스크 WAL (write-ahead log)
+//고정 크기 segment 파일을 mmap으로 열어 뒤에 이어 쓰기만 하고, 가득 차면 다음 segment를 만든다.
+//레코드는 [길이 4byte][CRC32 4byte][내용], 읽는 쪽은 checkpoint 다음부터 순서대로 읽고 저장이 끝나면 checkpoint를 옮긴다.
+//checkpoint 앞의 segment는 삭제하고, segment 수가 최대치면 더 쓰지 않는다 (디스크 사용량 제한).
+//위치(position)는 segment 번호 << 32 | segment 안 offset, 레코드의 위치는 그 레코드 바로 뒤
+@Slf4j
+public class LogWal implements Closeable {
+
+    private static final int HEADER = 8;
+    private static final String SUFFIX = ".wal";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String ID = "wal.id";
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final String id;
+
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    //append, roll은 this로 동기화
+    private Segment current;
+    private final CRC32 crc = new CRC32();
+
+    //마지막으로 쓴 레코드 뒤, fsync가 끝난 위치, 저장소로 옮긴 위치
+    private volatile long written;
+    private volatile long synced;
+    private volatile long checkpoint;
+    private final AtomicLong pending = new AtomicLong();
+    private final Object syncLock = new Object();
+
+    public LogWal(Path dir, int segmentBytes, long maxBytes) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = (int) Math.max(2, maxBytes / segmentBytes);
+        this.id = readId();
+        recover();
+    }
+
+    //다음 레코드를 이어 씀, segment 수가 최대치거나 레코드가 segment보다 크면 -1
+    public synchronized long append(byte[] payload) throws IOException {
+        int size = HEADER + payload.length;
+        if (size > segmentBytes) return -1;
+        if (current.end + size > segmentBytes) {
+            if (segments.size() >= maxSegments) return -1;
+            roll();
+        }
+        crc.reset();
+        crc.update(payload);
+        ByteBuffer writer = current.writer;
+        writer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        current.end = writer.position();
+        long position = position(current.index, current.end);
+        pending.incrementAndGet();
+        written = position;
+        return position;
+    }
+
+    //마지막 fsync 이후 쓴 segment를 디스크에 반영 (여러 append를 한 번에)
+    public void sync() {
+        long target = written;
+        if (target == synced) return;
+        for (Segment segment : segments.tailMap(segmentOf(synced)).values()) {
+            segment.buffer.force();
+        }
+        synchronized (syncLock) {
+            synced = target;
+            syncLock.notifyAll();
+        }
+    }
+
+    //position까지 fsync될 때까지 대기, 시간 안에 끝나면 true
+    public boolean awaitSync(long position, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        synchronized (syncLock) {
+            while (synced < position) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return false;
+                TimeUnit.NANOSECONDS.timedWait(syncLock, remaining);
+            }
+        }
+        return true;
+    }
+
+    //from 다음 레코드부터 최대 max개
+    public List<Record> read(long from, int max) {
+        List<Record> records = new ArrayList<>(Math.min(max, 1024));
+        long index = segmentOf(from);
+        int offset = offsetOf(from);
+        while (records.size() < max) {
+            Segment segment = segments.get(index);
+            if (segment == null) break;
+            //sealed를 먼저 읽어야 end가 더 늘어나지 않는 값
+            boolean sealed = segment.sealed;
+            int end = segment.end;
+            if (offset >= end) {
+                if (!sealed || segments.higherKey(index) == null) break;
+                index = segments.higherKey(index);
+                offset = 0;
+                continue;
+            }
+            ByteBuffer buffer = segment.buffer.duplicate();
+            int length = buffer.getInt(offset);
+            int checksum = buffer.getInt(offset + 4);
+            byte[] payload = new byte[length];
+            buffer.position(offset + HEADER);
+            buffer.get(payload);
+            CRC32 crc32 = new CRC32();
+            crc32.update(payload);
+            offset += HEADER + length;
+            if ((int) crc32.getValue() != checksum) {
+                log.error("WAL : {}, {}번 segment {} 위치 레코드 손상, 건너뜀", dir, index, offset);
+                continue;
+            }
+            records.add(new Record(position(index, offset), payload));
+        }
+        return records;
+    }
+
+    //position까지 저장소로 옮겼음을 기록하고 앞의 segment 삭제
+    public void checkpoint(long position, int records) throws IOException {
+        Path tmp = dir.resolve(CHECKPOINT + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(Long.toString(position).getBytes(StandardCharsets.US_ASCII)));
+            channel.force(true);
+        }
+        Files.move(tmp, dir.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpoint = position;
+        pending.addAndGet(-records);
+        synchronized (this) {
+            for (Map.Entry<Long, Segment> old : segments.headMap(segmentOf(position)).entrySet()) {
+                segments.remove(old.getKey());
+                Files.deleteIfExists(old.getValue().path);
+            }
+        }
+    }
+
+    public long getCheckpoint() {
+        return checkpoint;
+    }
+
+    //저장소로 아직 옮기지 않은 레코드 수
+    public long getPending() {
+        return Math.max(0, pending.get());
+    }
+
+    //저장소로 아직 옮기지 않은 byte
+    public long getPendingBytes() {
+        long from = checkpoint;
+        long to = written;
+        return (segmentOf(to) - segmentOf(from)) * segmentBytes + offsetOf(to) - offsetOf(from);
+    }
+
+    public long getMaxBytes() {
+        return (long) maxSegments * segmentBytes;
+    }
+
+    //WAL 디렉터리마다 고유한 id (재전송해도 같은 로그 id가 나오도록)
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public void close() {
+        sync();
+        segments.clear();
+    }
+
+    //checkpoint 이후 segment를 훑어 각 segment의 끝(잘린 레코드 앞)과 남은 레코드 수를 구하고, 새 segment에 이어 씀
+    private void recover() throws IOException {
+        Path checkpointFile = dir.resolve(CHECKPOINT);
+        checkpoint = Files.exists(checkpointFile)
+                ? Long.parseLong(Files.readString(checkpointFile, StandardCharsets.US_ASCII).trim())
+                : 0;
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(a -> a.getFileName().toString().endsWith(SUFFIX)).sorted().collect(Collectors.toList());
+        }
+        long next = segmentOf(checkpoint);
+        for (Path file : files) {
+            long index = Long.parseLong(file.getFileName().toString().replace(SUFFIX, ""));
+            if (index < segmentOf(checkpoint)) {
+                Files.deleteIfExists(file);
+                continue;
+            }
+            Segment segment = open(index);
+            segment.end = scan(segment, index == segmentOf(checkpoint) ? offsetOf(checkpoint) : 0);
+            segment.sealed = true;
+            segments.put(index, segment);
+            next = index + 1;
+        }
+        current = open(next);
+        segments.put(next, current);
+        written = position(next, 0);
+        synced = written;
+        if (pending.get() > 0) log.info("WAL : {}, 저장하지 못한 로그 {}건 복구", dir, pending.get());
+    }
+
+    //from부터 정상 레코드 수를 세고 마지막 정상 레코드 뒤 위치 반환
+    private int scan(Segment segment, int from) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int offset = 0;
+        int valid = 0;
+        CRC32 crc32 = new CRC32();
+        while (offset + HEADER <= segmentBytes) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER + length > segmentBytes) break;
+            byte[] payload = new byte[length];
+            buffer.position(offset + HEADER);
+            buffer.get(payload);
+            crc32.reset();
+            crc32.update(payload);
+            if ((int) crc32.getValue() != buffer.getInt(offset + 4)) break;
+            offset += HEADER + length;
+            valid = offset;
+            if (offset > from) pending.incrementAndGet();
+        }
+        return valid;
+    }
+
+    private void roll() throws IOException {
+        current.sealed = true;
+        Segment segment = open(current.index + 1);
+        segments.put(segment.index, segment);
+        current = segment;
+    }
+
+    private Segment open(long index) throws IOException {
+        Path path = dir.resolve(String.format("%016d%s", index, SUFFIX));
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            if (file.length() < segmentBytes) file.setLength(segmentBytes);
+            return new Segment(index, path, file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+        }
+    }
+
+    private String readId() throws IOException {
+        Path path = dir.resolve(ID);
+        if (Files.exists(path)) return Files.readString(path, StandardCharsets.US_ASCII).trim();
+        String created = UUID.randomUUID().toString();
+        Files.writeString(path, created, StandardCharsets.US_ASCII);
+        return created;
+    }
+
+    private static long position(long index, int offset) {
+        return index << 32 | offset;
+    }
+
+    private static long segmentOf(long position) {
+        return position >>> 32;
+    }
+
+    private static int offsetOf(long position) {
+        return (int) position;
+    }
+
+    public static class Record {
+        private final long position;
+        private final byte[] payload;
+
+        private Record(long position, byte[] payload) {
+            this.position = position;
+            this.payload = payload;
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+    }
+
+    private static class Segment {
+        private final long index;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        //append 전용 (position = 다음에 쓸 곳)
+        private final ByteBuffer writer;
+        private volatile int end;
+        private volatile boolean sealed;
+
+        private Segment(long index, Path path, MappedByteBuffer buffer) {
+            this.index = index;
+            this.path = path;
+            this.buffer = buffer;
+            this.writer = buffer.duplicate();
+        }
+    }
+}
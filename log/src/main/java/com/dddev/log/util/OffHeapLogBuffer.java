@@ -0,0 +1,301 @@
+package com.dddev.log.util;
+
+import com.dddev.log.dto.ElasticSearchLog;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+//그라운드 하나의 최근 로그를 힙 밖(direct ByteBuffer)에 보관하는 버퍼
+//로그는 들어온 순서대로 원형 영역에 이어 쓰고(자리가 없으면 가장 먼저 들어온 로그부터 지움), 정렬 순서(저장 시간, logId)는 위치 배열로 따로 유지한다.
+//floor보다 정렬 값이 큰 로그는 저장소에 있는 것이 모두 버퍼에도 있다. floor가 없으면 그라운드의 로그 전체가 버퍼에 있다.
+//지운 로그는 floor가 되고, 들어온 순서와 정렬 순서가 달라 floor 아래가 된 로그는 자리만 차지하다 덮어써진다.
+//동기화하지 않으므로 호출하는 쪽에서 잠금
+public class OffHeapLogBuffer {
+
+    //레코드 : [전체 길이 int][저장 시간 ms long][로그 시간 ms long][logId 길이 byte][logId][level, pid, thread, logger 길이 short + 내용]
+    //         [묶인 수 int][마지막 저장 시간 ms long][마지막 로그 시간 ms long][로그 길이 int][로그]
+    //길이 -1은 null, 영역 끝에 레코드가 들어가지 않으면 WRAP을 쓰고 처음부터 씀
+    private static final int WRAP = -1;
+    private static final int ID_OFFSET = 4 + 8 + 8;
+    private static final int MAX_ID_BYTES = 64;
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private final ByteBuffer data;
+    private final int capacity;
+    private int head;
+    private int tail;
+    private int records;
+
+    //정렬 위치 배열 (오름차순, lo ~ hi-1), 값은 레코드 시작 위치
+    private final long[] keys;
+    private final int[] offsets;
+    private int lo;
+    private int hi;
+
+    private boolean hasFloor;
+    private long floorMillis;
+    private final byte[] floorId = new byte[MAX_ID_BYTES];
+    private int floorIdLength;
+
+    public OffHeapLogBuffer(int capacityBytes, int maxLines) {
+        this.data = ByteBuffer.allocateDirect(capacityBytes);
+        this.capacity = capacityBytes;
+        this.keys = new long[maxLines];
+        this.offsets = new int[maxLines];
+    }
+
+    //로그 추가, floor 아래거나 이미 있는 로그면 무시
+    //버퍼에 넣을 수 없는 로그(영역보다 크거나 logId가 너무 긺)는 floor로 올려 그 아래를 버퍼 범위에서 뺌
+    public void add(ElasticSearchLog elasticSearchLog) {
+        long millis = millis(elasticSearchLog.getLocalDateTime());
+        byte[] id = bytes(elasticSearchLog.getLogId());
+        int idLength = id == null ? 0 : id.length;
+        if (hasFloor && compare(millis, id, idLength, floorMillis, floorId, floorIdLength) <= 0) return;
+        byte[] level = bytes(elasticSearchLog.getLevel());
+        byte[] pid = bytes(elasticSearchLog.getPid());
+        byte[] thread = bytes(elasticSearchLog.getThread());
+        byte[] logger = bytes(elasticSearchLog.getLogger());
+        byte[] line = bytes(elasticSearchLog.getLog());
+        int size = ID_OFFSET + 1 + idLength + 2 * 4 + length(level) + length(pid) + length(thread) + length(logger) + 4 + 8 + 8 + 4 + length(line);
+        if (size > capacity || idLength > MAX_ID_BYTES || tooLong(level) || tooLong(pid) || tooLong(thread) || tooLong(logger)) {
+            raiseFloor(millis, id, idLength);
+            return;
+        }
+        int position = search(millis, id, idLength);
+        if (position < hi && compareAt(position, millis, id, idLength) == 0) return;
+        while (!fits(size)) {
+            evictOldest();
+        }
+        if (hasFloor && compare(millis, id, idLength, floorMillis, floorId, floorIdLength) <= 0) return;
+        int offset = reserve(size);
+        ByteBuffer writer = data.duplicate();
+        writer.position(offset);
+        writer.putInt(size).putLong(millis).putLong(millis(elasticSearchLog.getEventTime()));
+        writer.put((byte) (id == null ? -1 : idLength));
+        if (id != null) writer.put(id);
+        putShort(writer, level);
+        putShort(writer, pid);
+        putShort(writer, thread);
+        putShort(writer, logger);
+        writer.putInt(elasticSearchLog.getRepeatCount() == null ? 0 : elasticSearchLog.getRepeatCount())
+                .putLong(millis(elasticSearchLog.getLastLocalDateTime()))
+                .putLong(millis(elasticSearchLog.getLastEventTime()));
+        writer.putInt(line == null ? -1 : line.length);
+        if (line != null) writer.put(line);
+        records++;
+        //정렬 위치가 지워졌을 수 있으므로 다시 찾아서 넣음
+        insert(search(millis, id, idLength), millis, offset);
+    }
+
+    //정렬 값이 이 로그와 같거나 큰 로그의 수 (search_after 커서 다음 로그의 최신 순 위치)
+    public int countAfter(long millis, String logId) {
+        byte[] id = bytes(logId);
+        return hi - search(millis, id, id == null ? 0 : id.length);
+    }
+
+    //최신 순으로 from번째부터 size개
+    public List<ElasticSearchLog> read(int from, int size) {
+        int end = Math.max(lo, hi - from - size);
+        List<ElasticSearchLog> logs = new ArrayList<>(Math.max(0, hi - from - end));
+        for (int i = hi - 1 - from; i >= end; i--) {
+            logs.add(decode(offsets[i]));
+        }
+        return logs;
+    }
+
+    //floor 위의 로그 수
+    public int size() {
+        return hi - lo;
+    }
+
+    //그라운드의 로그 전체가 버퍼에 있는지
+    public boolean isComplete() {
+        return !hasFloor;
+    }
+
+    //이 로그까지(포함) 버퍼 범위에서 뺌
+    public void raiseFloor(ElasticSearchLog elasticSearchLog) {
+        byte[] id = bytes(elasticSearchLog.getLogId());
+        raiseFloor(millis(elasticSearchLog.getLocalDateTime()), id, id == null ? 0 : id.length);
+    }
+
+    public static long millis(LocalDateTime localDateTime) {
+        return localDateTime == null ? NO_TIME : localDateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private void raiseFloor(long millis, byte[] id, int idLength) {
+        if (hasFloor && compare(millis, id, idLength, floorMillis, floorId, floorIdLength) <= 0) return;
+        hasFloor = true;
+        floorMillis = millis;
+        floorIdLength = Math.min(idLength, MAX_ID_BYTES);
+        if (id != null) System.arraycopy(id, 0, floorId, 0, floorIdLength);
+        while (lo < hi && compareAt(lo, floorMillis, floorId, floorIdLength) <= 0) {
+            lo++;
+        }
+    }
+
+    //가장 먼저 들어온 로그를 지우고 floor로 올림
+    private void evictOldest() {
+        if (capacity - head < 4 || data.getInt(head) == WRAP) head = 0;
+        int size = data.getInt(head);
+        int idLength = data.get(head + ID_OFFSET);
+        byte[] id = null;
+        if (idLength >= 0) {
+            id = new byte[idLength];
+            data.duplicate().position(head + ID_OFFSET + 1).get(id);
+        }
+        raiseFloor(data.getLong(head + 4), id, Math.max(idLength, 0));
+        head += size;
+        if (--records == 0) head = tail = 0;
+    }
+
+    private boolean fits(int size) {
+        if (records == 0) {
+            head = tail = 0;
+            return true;
+        }
+        if (tail > head) return capacity - tail >= size || head >= size;
+        if (tail < head) return head - tail >= size;
+        return false;
+    }
+
+    private int reserve(int size) {
+        if (tail >= head && capacity - tail < size && records > 0) {
+            if (capacity - tail >= 4) data.putInt(tail, WRAP);
+            tail = 0;
+        }
+        int offset = tail;
+        tail += size;
+        return offset;
+    }
+
+    //정렬 위치 배열에 넣음, 가득 차면 가장 작은 로그를 floor로 올림
+    private void insert(int position, long millis, int offset) {
+        if (hi - lo == keys.length) {
+            int oldest = lo;
+            raiseFloor(keys[oldest], idAt(offsets[oldest]), Math.max(data.get(offsets[oldest] + ID_OFFSET), 0));
+            if (position <= oldest) return;
+        }
+        if (hi == keys.length) {
+            System.arraycopy(keys, lo, keys, 0, hi - lo);
+            System.arraycopy(offsets, lo, offsets, 0, hi - lo);
+            position -= lo;
+            hi -= lo;
+            lo = 0;
+        }
+        System.arraycopy(keys, position, keys, position + 1, hi - position);
+        System.arraycopy(offsets, position, offsets, position + 1, hi - position);
+        keys[position] = millis;
+        offsets[position] = offset;
+        hi++;
+    }
+
+    //정렬 값이 같거나 큰 첫 위치
+    private int search(long millis, byte[] id, int idLength) {
+        int low = lo;
+        int high = hi;
+        //대부분 가장 최근 로그이므로 끝부터 확인
+        if (low < high && compareAt(high - 1, millis, id, idLength) < 0) return high;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareAt(mid, millis, id, idLength) < 0) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private int compareAt(int position, long millis, byte[] id, int idLength) {
+        int byTime = Long.compare(keys[position], millis);
+        if (byTime != 0) return byTime;
+        int offset = offsets[position];
+        int length = Math.max(data.get(offset + ID_OFFSET), 0);
+        int start = offset + ID_OFFSET + 1;
+        for (int i = 0; i < Math.min(length, idLength); i++) {
+            int diff = Byte.toUnsignedInt(data.get(start + i)) - Byte.toUnsignedInt(id[i]);
+            if (diff != 0) return diff;
+        }
+        return length - idLength;
+    }
+
+    private static int compare(long millis, byte[] id, int idLength, long otherMillis, byte[] otherId, int otherIdLength) {
+        int byTime = Long.compare(millis, otherMillis);
+        if (byTime != 0) return byTime;
+        for (int i = 0; i < Math.min(idLength, otherIdLength); i++) {
+            int diff = Byte.toUnsignedInt(id[i]) - Byte.toUnsignedInt(otherId[i]);
+            if (diff != 0) return diff;
+        }
+        return idLength - otherIdLength;
+    }
+
+    private byte[] idAt(int offset) {
+        int length = data.get(offset + ID_OFFSET);
+        if (length < 0) return null;
+        byte[] id = new byte[length];
+        data.duplicate().position(offset + ID_OFFSET + 1).get(id);
+        return id;
+    }
+
+    private ElasticSearchLog decode(int offset) {
+        ByteBuffer reader = data.duplicate();
+        reader.position(offset + 4);
+        long millis = reader.getLong();
+        long eventMillis = reader.getLong();
+        int idLength = reader.get();
+        String logId = null;
+        if (idLength >= 0) {
+            logId = string(reader, idLength);
+        }
+        ElasticSearchLog elasticSearchLog = ElasticSearchLog.builder()
+                .localDateTime(time(millis))
+                .eventTime(time(eventMillis))
+                .logId(logId)
+                .level(getShort(reader))
+                .pid(getShort(reader))
+                .thread(getShort(reader))
+                .logger(getShort(reader))
+                .build();
+        int repeatCount = reader.getInt();
+        elasticSearchLog.setRepeatCount(repeatCount == 0 ? null : repeatCount);
+        elasticSearchLog.setLastLocalDateTime(time(reader.getLong()));
+        elasticSearchLog.setLastEventTime(time(reader.getLong()));
+        elasticSearchLog.setLog(string(reader, reader.getInt()));
+        return elasticSearchLog;
+    }
+
+    private static void putShort(ByteBuffer writer, byte[] value) {
+        writer.putShort((short) (value == null ? -1 : value.length));
+        if (value != null) writer.put(value);
+    }
+
+    private static String getShort(ByteBuffer reader) {
+        return string(reader, reader.getShort());
+    }
+
+    private static String string(ByteBuffer reader, int length) {
+        if (length < 0) return null;
+        byte[] value = new byte[length];
+        reader.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static LocalDateTime time(long millis) {
+        return millis == NO_TIME ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+
+    private static boolean tooLong(byte[] value) {
+        return value != null && value.length > Short.MAX_VALUE;
+    }
+}
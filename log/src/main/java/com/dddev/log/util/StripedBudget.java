@@ -0,0 +1,59 @@
+package com.dddev.log.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//여러 칸(stripe)으로 나눈 남은 한도 카운터
+//스레드마다 다른 칸에서 CAS로 차감해 한 cache line을 두고 경쟁하지 않고, 자기 칸이 비면 다른 칸에서 가져온다.
+public class StripedBudget {
+
+    //칸마다 64바이트 간격을 두어 false sharing 방지
+    private static final int PAD = 8;
+
+    private final int mask;
+    private final AtomicLongArray cells;
+
+    public StripedBudget(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.mask = size - 1;
+        this.cells = new AtomicLongArray(size * PAD);
+    }
+
+    //n만큼 차감, 한 칸에 n 이상 남아 있지 않으면 false
+    public boolean tryAcquire(long n) {
+        int start = probe();
+        for (int i = 0; i <= mask; i++) {
+            int index = ((start + i) & mask) * PAD;
+            long current;
+            while ((current = cells.get(index)) >= n) {
+                if (cells.compareAndSet(index, current, current - n)) return true;
+            }
+        }
+        return false;
+    }
+
+    //현재 스레드의 칸에 n만큼 추가
+    public void add(long n) {
+        cells.getAndAdd(probe() * PAD, n);
+    }
+
+    //모든 칸을 비우고 남아 있던 합계 반환
+    public long drain() {
+        long sum = 0;
+        for (int i = 0; i <= mask; i++) {
+            sum += cells.getAndSet(i * PAD, 0);
+        }
+        return sum;
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i <= mask; i++) {
+            sum += cells.get(i * PAD);
+        }
+        return sum;
+    }
+
+    private int probe() {
+        return (int) Thread.currentThread().getId() & mask;
+    }
+}
@@ -0,0 +1,43 @@
+-- GPT 사용량 token 단위 sliding window 카운터 (그라운드, 사용자 bucket을 한 번의 왕복으로 원자적으로 검사 + 차감)
+-- 이전 창의 사용량을 남은 비율만큼 더해 직전 window_ms 동안의 사용량을 근사한다.
+-- KEYS    : bucket hash (그라운드, 사용자가 있으면 사용자)
+-- ARGV    : 현재 시간(ms), 창 크기(ms), 더할 token 수(음수면 예약 반환, 0이면 조회만), 검사 여부(1이면 한도를 넘을 때 차감하지 않음),
+--           bucket별 한도 (KEYS 순서)
+-- 반환    : {통과 여부(1 통과, 0 초과), 창이 바뀔 때까지 남은 시간(ms), bucket별 사용량, 한도 ...}
+local now = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local amount = tonumber(ARGV[3])
+local check = ARGV[4] == '1'
+local start = now - (now % window)
+local reset = window - (now - start)
+
+local buckets = {}
+local allowed = 1
+for i, key in ipairs(KEYS) do
+    local data = redis.call('HMGET', key, 'start', 'cur', 'prev')
+    local saved = tonumber(data[1]) or start
+    local cur = tonumber(data[2]) or 0
+    local prev = tonumber(data[3]) or 0
+    if saved ~= start then
+        if saved == start - window then prev = cur else prev = 0 end
+        cur = 0
+    end
+    local limit = tonumber(ARGV[4 + i])
+    local used = math.floor(prev * reset / window) + cur
+    if check and used + amount > limit then allowed = 0 end
+    buckets[i] = {key, cur, prev, used, limit}
+end
+
+local result = {allowed, reset}
+for _, bucket in ipairs(buckets) do
+    local used = bucket[4]
+    if allowed == 1 and amount ~= 0 then
+        local cur = math.max(0, bucket[2] + amount)
+        used = used + (cur - bucket[2])
+        redis.call('HSET', bucket[1], 'start', start, 'cur', cur, 'prev', bucket[3])
+        redis.call('PEXPIRE', bucket[1], window * 2)
+    end
+    table.insert(result, used)
+    table.insert(result, bucket[5])
+end
+return result
@@ -0,0 +1,67 @@
+-- 그라운드별 로그 요청 수 sliding window 카운터 (한 번의 왕복으로 원자적으로 검사 + 할당)
+-- 이전 창의 카운트를 남은 비율만큼 더해 직전 window_ms 동안의 요청 수를 근사한다.
+-- 서버는 한 줄마다 호출하지 않고 chunk 단위로 미리 할당(lease)받아 메모리에서 차감한다.
+-- KEYS[1] : 카운터 hash, KEYS[2] : 그라운드별 한도 hash (없으면 기본 한도)
+-- ARGV    : 현재 시간(ms), 창 크기(ms), 기본 한도, 필요한 수(0이면 조회만), groundId, 미리 받을 chunk 크기,
+--           미리 채우기 여부(1이면 한도가 모자라도 초과로 기록하지 않고 0을 할당),
+--           이후 (돌려주는 수, 그 한도를 할당한 창의 시작 시간(ms)) 쌍 반복 (만료된 lease에서 쓰지 않은 한도, 창별로)
+-- 반환    : {상태(0 통과, 1 첫 초과 유예, 2 초과), 사용량, 한도, 창이 바뀔 때까지 남은 시간(ms), 할당한 수, 현재 창의 시작 시간(ms)}
+local now = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local limit = tonumber(redis.call('HGET', KEYS[2], ARGV[5]) or ARGV[3])
+local need = tonumber(ARGV[4])
+local chunk = tonumber(ARGV[6])
+local prefetch = ARGV[7] == '1'
+local start = now - (now % window)
+
+local data = redis.call('HMGET', KEYS[1], 'start', 'cur', 'prev', 'grace')
+local saved = tonumber(data[1]) or start
+local cur = tonumber(data[2]) or 0
+local prev = tonumber(data[3]) or 0
+local grace = tonumber(data[4]) or 0
+if saved ~= start then
+    if saved == start - window then prev = cur else prev = 0 end
+    cur = 0
+end
+
+-- 쓰지 않은 한도는 할당한 창의 카운트에서 뺌 (그 사이 창이 두 번 이상 바뀌었으면 이미 사라진 카운트)
+for i = 8, #ARGV - 1, 2 do
+    local refund = tonumber(ARGV[i]) or 0
+    local from = tonumber(ARGV[i + 1])
+    if refund > 0 then
+        if from == start then
+            cur = math.max(0, cur - refund)
+        elseif from == start - window then
+            prev = math.max(0, prev - refund)
+        end
+    end
+end
+
+local reset = window - (now - start)
+local used = math.floor(prev * reset / window) + cur
+if need == 0 or (prefetch and limit - used < need) then
+    return {0, used, limit, reset, 0, start}
+end
+
+local status = 0
+local grant = 0
+if limit - used >= need then
+    grant = math.max(need, math.min(chunk, limit - used))
+elseif grace == 0 then
+    -- docker로 첫 실행 시 로그가 한 번에 많이 들어오는 경우를 위해 한 번은 카운트를 비우고 통과
+    grace = 1
+    cur = 0
+    used = 0
+    prev = 0
+    grant = math.max(need, math.min(chunk, limit))
+    status = 1
+else
+    -- 초과한 요청은 저장하지 않으므로 사용량에 넣지 않음 (거절이 계속돼도 창이 지나면 다시 보낼 수 있게)
+    status = 2
+end
+cur = cur + grant
+used = used + grant
+
+redis.call('HSET', KEYS[1], 'start', start, 'cur', cur, 'prev', prev, 'grace', grace)
+redis.call('PEXPIRE', KEYS[1], window * 2)
+return {status, used, limit, reset, grant, start}
@@ -0,0 +1,152 @@
+package com.dddev.log.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChatCacheServiceTest {
+
+    private static final String MODEL = "gpt-3.5-turbo";
+    private static final String ROLE = "You're a log analysis expert.";
+    private static final String PROMPT = "java.lang.NullPointerException\n\tat com.dddev.log.A.run(A.java:10)";
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final List<CompletableFuture<String>> upstreams = new ArrayList<>();
+    private ChatCacheService chatCacheService;
+
+    @BeforeEach
+    void setUp() {
+        chatCacheService = new ChatCacheService(null, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(chatCacheService, "ttlSeconds", 3600L);
+        ReflectionTestUtils.setField(chatCacheService, "maxSize", 100);
+        chatCacheService.init();
+    }
+
+    @Test
+    void 같은_질문이_동시에_들어오면_OpenAI를_한_번만_호출() throws Exception {
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Future<CompletableFuture<String>>> requests = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                //공백만 다른 질문도 같은 질문
+                String prompt = i % 2 == 0 ? PROMPT : "  " + PROMPT.replace("\n", "\r\n") + " ";
+                requests.add(pool.submit(() -> {
+                    ready.await();
+                    return getOrCompute(prompt);
+                }));
+            }
+            ready.countDown();
+            List<CompletableFuture<String>> waiters = new ArrayList<>();
+            for (Future<CompletableFuture<String>> request : requests) waiters.add(request.get(5, TimeUnit.SECONDS));
+
+            assertThat(calls).hasValue(1);
+            upstream(0).complete("answer");
+            for (CompletableFuture<String> waiter : waiters) assertThat(waiter.get(5, TimeUnit.SECONDS)).isEqualTo("answer");
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(chatCacheService.getMisses()).isEqualTo(1);
+        assertThat(chatCacheService.getCoalesced()).isEqualTo(threads - 1);
+
+        //끝난 뒤에는 캐시에서
+        assertThat(getOrCompute(PROMPT).join()).isEqualTo("answer");
+        assertThat(chatCacheService.get(MODEL, ROLE, PROMPT)).isEqualTo("answer");
+        assertThat(calls).hasValue(1);
+        assertThat(chatCacheService.getHits()).isEqualTo(2);
+    }
+
+    @Test
+    void 한_요청이_취소해도_다른_요청은_답변을_받음() {
+        CompletableFuture<String> first = getOrCompute(PROMPT);
+        CompletableFuture<String> second = getOrCompute(PROMPT);
+        CompletableFuture<String> third = getOrCompute(PROMPT);
+
+        first.cancel(true);
+        second.cancel(true);
+        assertThat(upstream(0)).isNotCancelled();
+
+        upstream(0).complete("answer");
+        assertThat(third.join()).isEqualTo("answer");
+        assertThatThrownBy(first::join).isInstanceOf(CancellationException.class);
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void 기다리는_요청이_모두_취소되면_OpenAI_호출도_취소() {
+        CompletableFuture<String> first = getOrCompute(PROMPT);
+        CompletableFuture<String> second = getOrCompute(PROMPT);
+
+        first.cancel(true);
+        assertThat(upstream(0)).isNotCancelled();
+        second.cancel(true);
+        assertThat(upstream(0)).isCancelled();
+
+        //취소된 호출에 붙지 않고 새로 호출
+        CompletableFuture<String> again = getOrCompute(PROMPT);
+        assertThat(calls).hasValue(2);
+        upstream(1).complete("answer");
+        assertThat(again.join()).isEqualTo("answer");
+    }
+
+    @Test
+    void null_답변과_실패는_캐시하지_않음() {
+        CompletableFuture<String> empty = getOrCompute(PROMPT);
+        upstream(0).complete(null);
+        assertThat(empty.join()).isNull();
+        assertThat(chatCacheService.get(MODEL, ROLE, PROMPT)).isNull();
+
+        CompletableFuture<String> failed = getOrCompute(PROMPT);
+        CompletableFuture<String> waiting = getOrCompute(PROMPT);
+        upstream(1).completeExceptionally(new IllegalStateException("upstream"));
+        assertThatThrownBy(failed::join).isInstanceOf(CompletionException.class).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(waiting::join).isInstanceOf(CompletionException.class).hasCauseInstanceOf(IllegalStateException.class);
+
+        //호출 전에 실패(한도 초과 등)하면 그대로 던지고 다음 요청은 다시 호출
+        assertThatThrownBy(() -> chatCacheService.getOrCompute(MODEL, ROLE, PROMPT, () -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("quota");
+        })).isInstanceOf(IllegalStateException.class);
+
+        CompletableFuture<String> answered = getOrCompute(PROMPT);
+        assertThat(calls).hasValue(4);
+        upstream(2).complete("answer");
+        assertThat(answered.join()).isEqualTo("answer");
+        assertThat(chatCacheService.get(MODEL, ROLE, PROMPT)).isEqualTo("answer");
+    }
+
+    //호출마다 직접 끝낼 수 있는 OpenAI 응답 future
+    private CompletableFuture<String> getOrCompute(String prompt) {
+        return chatCacheService.getOrCompute(MODEL, ROLE, prompt, () -> {
+            calls.incrementAndGet();
+            CompletableFuture<String> upstream = new CompletableFuture<>();
+            synchronized (upstreams) {
+                upstreams.add(upstream);
+            }
+            return upstream;
+        });
+    }
+
+    private CompletableFuture<String> upstream(int index) {
+        synchronized (upstreams) {
+            return upstreams.get(index);
+        }
+    }
+}
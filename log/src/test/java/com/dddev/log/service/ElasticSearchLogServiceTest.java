@@ -0,0 +1,59 @@
+package com.dddev.log.service;
+
+import com.dddev.log.dto.ElasticSearchLog;
+import com.dddev.log.dto.res.LogBulkRes;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ElasticSearchLogServiceTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2023, 11, 3, 9, 35, 13);
+
+    private LogStore logStore;
+    private ElasticSearchLogService elasticSearchLogService;
+
+    @BeforeEach
+    void setUp() {
+        logStore = mock(LogStore.class);
+        elasticSearchLogService = new ElasticSearchLogService(logStore, mock(LogTailService.class), mock(LogAnalysisService.class),
+                mock(LogHotBufferService.class), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(elasticSearchLogService, "storeType", "elasticsearch");
+        ReflectionTestUtils.setField(elasticSearchLogService, "collapseWindowMs", 10000L);
+    }
+
+    @Test
+    void 저장에_실패한_batch를_다시_저장해도_묶인_횟수가_같음() {
+        //WAL replay처럼 같은 로그 객체로 다시 저장, 처음 두 번은 로그별 실패
+        List<Integer> repeatCounts = new ArrayList<>();
+        when(logStore.saveAll(eq("ground"), anyList())).thenAnswer(invocation -> {
+            List<ElasticSearchLog> documents = invocation.getArgument(1);
+            repeatCounts.add(documents.get(0).getRepeatCount());
+            return repeatCounts.size() <= 2 ? Map.of(documents.get(0).getLogId(), "rejected") : Map.of();
+        });
+        List<ElasticSearchLog> logs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            logs.add(ElasticSearchLog.builder().localDateTime(START.plusSeconds(i)).log("connection refused").build());
+        }
+
+        for (int attempt = 0; attempt < 3; attempt++) {
+            List<LogBulkRes.Item> items = elasticSearchLogService.saveAll("ground", logs);
+            assertThat(items).extracting(LogBulkRes.Item::getStatus).containsOnly(attempt < 2 ? 500 : 201);
+        }
+
+        assertThat(repeatCounts).containsExactly(3, 3, 3);
+        assertThat(logs).allMatch(a -> a.getRepeatCount() == null);
+    }
+}
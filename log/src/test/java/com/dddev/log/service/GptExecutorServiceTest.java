@@ -0,0 +1,226 @@
+package com.dddev.log.service;
+
+import com.dddev.log.exception.ChatGptException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static com.dddev.log.service.GptExecutorService.Priority.AUTO;
+import static com.dddev.log.service.GptExecutorService.Priority.INTERACTIVE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GptExecutorServiceTest {
+
+    private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch release = new CountDownLatch(1);
+    private GptExecutorService gptExecutorService;
+
+    @BeforeEach
+    void setUp() {
+        gptExecutorService = new GptExecutorService();
+        //동시 호출 1개로 꺼내는 순서를 그대로 확인
+        ReflectionTestUtils.setField(gptExecutorService, "maxConcurrency", 1);
+        ReflectionTestUtils.setField(gptExecutorService, "queueSize", 10);
+        ReflectionTestUtils.setField(gptExecutorService, "maxRetries", 2);
+        ReflectionTestUtils.setField(gptExecutorService, "backoffMs", 1L);
+        ReflectionTestUtils.setField(gptExecutorService, "maxBackoffMs", 5_000L);
+        gptExecutorService.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        gptExecutorService.shutdown();
+    }
+
+    @Test
+    void 사용자_질문을_자동_분석보다_먼저_꺼냄() throws Exception {
+        CompletableFuture<String> blocker = gptExecutorService.execute("busy", INTERACTIVE, blocking("busy"));
+        List<CompletableFuture<String>> futures = List.of(
+                gptExecutorService.execute("a", AUTO, recording("auto-a")),
+                gptExecutorService.execute("b", INTERACTIVE, recording("chat-b")),
+                gptExecutorService.execute("c", AUTO, recording("auto-c")),
+                gptExecutorService.execute("d", INTERACTIVE, recording("chat-d")));
+        assertThat(gptExecutorService.getQueued()).isEqualTo(4);
+
+        release.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        for (CompletableFuture<String> future : futures) future.get(5, TimeUnit.SECONDS);
+
+        assertThat(calls).containsExactly("busy", "chat-b", "chat-d", "auto-a", "auto-c");
+    }
+
+    @Test
+    void 같은_우선순위에서는_그라운드를_돌아가며_꺼냄() throws Exception {
+        CompletableFuture<String> blocker = gptExecutorService.execute("busy", INTERACTIVE, blocking("busy"));
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (String name : List.of("a-1", "a-2", "a-3", "b-1", "b-2", "c-1")) {
+            futures.add(gptExecutorService.execute(name.substring(0, 1), INTERACTIVE, recording(name)));
+        }
+
+        release.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        for (CompletableFuture<String> future : futures) future.get(5, TimeUnit.SECONDS);
+
+        //요청을 많이 넣은 그라운드가 다른 그라운드를 밀어내지 않음
+        assertThat(calls).containsExactly("busy", "a-1", "b-1", "c-1", "a-2", "b-2", "a-3");
+    }
+
+    @Test
+    void 너무_많은_요청과_서버_오류는_재시도하고_다른_오류는_바로_실패() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        CompletableFuture<String> recovered = gptExecutorService.execute("a", INTERACTIVE, () -> {
+            if (attempts.incrementAndGet() == 1) throw new HttpClientErrorException(HttpStatus.TOO_MANY_REQUESTS);
+            if (attempts.get() == 2) throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+            return "ok";
+        });
+        assertThat(recovered.get(5, TimeUnit.SECONDS)).isEqualTo("ok");
+        assertThat(attempts).hasValue(3);
+        assertThat(gptExecutorService.getRetried()).isEqualTo(2);
+
+        //재시도 횟수를 넘으면 GPT 오류로 실패
+        AtomicInteger exhausted = new AtomicInteger();
+        CompletableFuture<String> down = gptExecutorService.execute("a", INTERACTIVE, () -> {
+            exhausted.incrementAndGet();
+            throw new HttpServerErrorException(HttpStatus.BAD_GATEWAY);
+        });
+        assertThatThrownBy(() -> down.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(ChatGptException.GptExcetpion.class);
+        assertThat(exhausted).hasValue(3);
+
+        AtomicInteger badRequest = new AtomicInteger();
+        CompletableFuture<String> rejected = gptExecutorService.execute("a", INTERACTIVE, () -> {
+            badRequest.incrementAndGet();
+            throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+        });
+        assertThatThrownBy(() -> rejected.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+        assertThat(badRequest).hasValue(1);
+        assertThat(gptExecutorService.getFailed()).isEqualTo(2);
+    }
+
+    @Test
+    void 백오프는_지수_상한의_절반_이상이고_Retry_After보다_짧지_않음() {
+        ReflectionTestUtils.setField(gptExecutorService, "backoffMs", 100L);
+        HttpServerErrorException noHeader = new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+        for (int i = 0; i < 200; i++) {
+            assertThat(gptExecutorService.backoff(0, noHeader)).isBetween(50L, 100L);
+            assertThat(gptExecutorService.backoff(3, noHeader)).isBetween(400L, 800L);
+            //상한은 maxBackoffMs
+            assertThat(gptExecutorService.backoff(10, noHeader)).isBetween(2_500L, 5_000L);
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, "2");
+        HttpClientErrorException retryAfter = HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "", headers, null, null);
+        assertThat(gptExecutorService.backoff(0, retryAfter)).isEqualTo(2_000L);
+        //Retry-After도 maxBackoffMs까지만
+        headers.set(HttpHeaders.RETRY_AFTER, "60");
+        assertThat(gptExecutorService.backoff(0, HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "", headers, null, null)))
+                .isEqualTo(5_000L);
+        //날짜 형식은 무시하고 백오프
+        headers.set(HttpHeaders.RETRY_AFTER, "Fri, 31 Dec 1999 23:59:59 GMT");
+        assertThat(gptExecutorService.backoff(0, HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "", headers, null, null)))
+                .isBetween(50L, 100L);
+    }
+
+    @Test
+    void 대기열이_가득_차면_거절() {
+        ReflectionTestUtils.setField(gptExecutorService, "queueSize", 2);
+        gptExecutorService.execute("busy", INTERACTIVE, blocking("busy"));
+        gptExecutorService.execute("a", INTERACTIVE, recording("a-1"));
+        gptExecutorService.execute("b", AUTO, recording("b-1"));
+
+        assertThatThrownBy(() -> gptExecutorService.execute("c", INTERACTIVE, recording("c-1")))
+                .isInstanceOf(ChatGptException.BusyException.class);
+        assertThat(gptExecutorService.getRejected()).isEqualTo(1);
+        assertThat(gptExecutorService.getQueued()).isEqualTo(2);
+    }
+
+    @Test
+    void 대기_중에_취소하면_호출하지_않음() throws Exception {
+        CompletableFuture<String> blocker = gptExecutorService.execute("busy", INTERACTIVE, blocking("busy"));
+        CompletableFuture<String> cancelled = gptExecutorService.execute("a", INTERACTIVE, recording("a-1"));
+        CompletableFuture<String> next = gptExecutorService.execute("b", INTERACTIVE, recording("b-1"));
+
+        cancelled.cancel(true);
+        assertThat(gptExecutorService.getQueued()).isEqualTo(1);
+        release.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        next.get(5, TimeUnit.SECONDS);
+
+        assertThat(calls).containsExactly("busy", "b-1");
+    }
+
+    @Test
+    void 진행_중에_취소하면_worker를_중단하고_다음_요청을_꺼냄() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        CompletableFuture<String> running = gptExecutorService.execute("a", INTERACTIVE, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+                throw e;
+            }
+            return "late";
+        });
+        CompletableFuture<String> next = gptExecutorService.execute("b", INTERACTIVE, recording("b-1"));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        running.cancel(true);
+
+        assertThat(next.get(5, TimeUnit.SECONDS)).isEqualTo("b-1");
+        await(interrupted::get);
+        assertThatThrownBy(running::join).isInstanceOf(CancellationException.class);
+        await(() -> gptExecutorService.getRunning() == 0);
+    }
+
+    private Callable<String> recording(String name) {
+        return () -> {
+            calls.add(name);
+            return name;
+        };
+    }
+
+    //release될 때까지 동시 호출 한 자리를 차지
+    private Callable<String> blocking(String name) {
+        return () -> {
+            calls.add(name);
+            release.await();
+            return name;
+        };
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("대기 시간 초과").isLessThan(deadline);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
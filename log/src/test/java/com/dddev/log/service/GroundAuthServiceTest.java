@@ -0,0 +1,118 @@
+package com.dddev.log.service;
+
+import com.dddev.log.config.AesUtil;
+import com.dddev.log.entity.GroundAuth;
+import com.dddev.log.exception.UserUnAuthException;
+import com.dddev.log.repository.GroundAuthRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class GroundAuthServiceTest {
+
+    private final List<String> tokens = new ArrayList<>();
+    private GroundAuthRepository groundAuthRepository;
+    private GroundAuthService groundAuthService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        AesUtil aesUtil = mock(AesUtil.class);
+        //토큰 "ground-user-순번"을 복호화하면 그라운드, 유저 id
+        when(aesUtil.aes256Decrypt(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(aesUtil.getUserInfo(any())).thenAnswer(invocation -> {
+            String[] parts = ((String) invocation.getArgument(0)).split("-");
+            return Map.of("groundId", Integer.parseInt(parts[0]), "userId", Integer.parseInt(parts[1]));
+        });
+        //DB에는 커밋된 토큰만 보임
+        groundAuthRepository = mock(GroundAuthRepository.class);
+        when(groundAuthRepository.findToken(any(), any())).thenAnswer(invocation -> new ArrayList<>(tokens));
+        when(groundAuthRepository.findByGroundId(any())).thenAnswer(invocation -> {
+            List<GroundAuth> groundAuths = new ArrayList<>();
+            tokens.forEach(a -> groundAuths.add(new GroundAuth(2, 1, a)));
+            return groundAuths;
+        });
+        groundAuthService = new GroundAuthService(groundAuthRepository, aesUtil);
+        ReflectionTestUtils.setField(groundAuthService, "cacheTtlSeconds", 300L);
+        ReflectionTestUtils.setField(groundAuthService, "cacheMaxSize", 100);
+        groundAuthService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    void 토큰_삭제는_커밋된_뒤에_캐시에서_제거() {
+        tokens.add("1-2-0");
+        assertThat(groundAuthService.checkValid("1-2-0")).isEqualTo("1");
+
+        TransactionSynchronizationManager.initSynchronization();
+        groundAuthService.deleteToken("1");
+        //커밋 전에는 다른 요청이 DB에서 토큰을 다시 읽어도 캐시가 먼저 지워지지 않음
+        assertThat(groundAuthService.checkValid("1-2-0")).isEqualTo("1");
+
+        //커밋되면 DB에서 사라지고 캐시도 제거
+        tokens.clear();
+        commit();
+        assertThatThrownBy(() -> groundAuthService.checkValid("1-2-0")).isInstanceOf(UserUnAuthException.class);
+    }
+
+    @Test
+    void 롤백되면_캐시를_지우지_않음() {
+        tokens.add("1-2-0");
+        assertThat(groundAuthService.checkValid("1-2-0")).isEqualTo("1");
+
+        TransactionSynchronizationManager.initSynchronization();
+        groundAuthService.deleteToken("1");
+        rollback();
+
+        tokens.clear();
+        //캐시에 남아 있으므로 DB를 다시 보지 않음
+        assertThat(groundAuthService.checkValid("1-2-0")).isEqualTo("1");
+    }
+
+    @Test
+    void 네_번째_토큰을_저장하면_가장_오래된_토큰은_커밋_뒤_캐시에서_제거() throws Exception {
+        tokens.addAll(List.of("1-2-0", "1-2-1", "1-2-2"));
+        doAnswer(invocation -> tokens.remove(((GroundAuth) invocation.getArgument(0)).getToken()))
+                .when(groundAuthRepository).delete(any());
+        assertThat(groundAuthService.checkValid("1-2-0")).isEqualTo("1");
+
+        TransactionSynchronizationManager.initSynchronization();
+        groundAuthService.save("1-2-3");
+        assertThat(groundAuthService.checkValid("1-2-0")).isEqualTo("1");
+        commit();
+
+        assertThatThrownBy(() -> groundAuthService.checkValid("1-2-0")).isInstanceOf(UserUnAuthException.class);
+        assertThat(groundAuthService.checkValid("1-2-1")).isEqualTo("1");
+    }
+
+    private static void commit() {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationUtils.invokeAfterCommit(synchronizations);
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, TransactionSynchronization.STATUS_COMMITTED);
+    }
+
+    private static void rollback() {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, TransactionSynchronization.STATUS_ROLLED_BACK);
+    }
+}
@@ -0,0 +1,140 @@
+package com.dddev.log.service;
+
+import com.dddev.log.dto.ElasticSearchLog;
+import com.dddev.log.dto.res.LogBulkRes;
+import com.dddev.log.util.LogWal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class LogIngestServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private final Set<String> down = ConcurrentHashMap.newKeySet();
+    private final Set<String> rejecting = ConcurrentHashMap.newKeySet();
+    private final List<String> saved = Collections.synchronizedList(new ArrayList<>());
+    private LogIngestService logIngestService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ElasticSearchLogService elasticSearchLogService = mock(ElasticSearchLogService.class);
+        //down 그라운드는 저장소 요청 실패, rejecting 그라운드는 로그별 실패
+        when(elasticSearchLogService.saveAll(anyString(), anyList())).thenAnswer(invocation -> {
+            String groundId = invocation.getArgument(0);
+            List<ElasticSearchLog> logs = invocation.getArgument(1);
+            if (down.contains(groundId)) throw new IllegalStateException("unavailable");
+            List<LogBulkRes.Item> items = new ArrayList<>();
+            for (int i = 0; i < logs.size(); i++) {
+                int status = rejecting.contains(groundId) ? 500 : 201;
+                if (status == 201) saved.add(groundId + ":" + logs.get(i).getLog());
+                items.add(LogBulkRes.Item.builder().index(i).status(status).build());
+            }
+            return items;
+        });
+        logIngestService = new LogIngestService(elasticSearchLogService);
+        ReflectionTestUtils.setField(logIngestService, "batchSize", 100);
+        ReflectionTestUtils.setField(logIngestService, "flushIntervalMs", 5L);
+        ReflectionTestUtils.setField(logIngestService, "shutdownTimeoutMs", 2000L);
+        ReflectionTestUtils.setField(logIngestService, "walEnabled", true);
+        ReflectionTestUtils.setField(logIngestService, "walPath", dir.resolve("wal").toString());
+        ReflectionTestUtils.setField(logIngestService, "retryPath", dir.resolve("retry").toString());
+        ReflectionTestUtils.setField(logIngestService, "deadLetterPath", dir.resolve("dead").toString());
+        ReflectionTestUtils.setField(logIngestService, "walSegmentMb", 1);
+        ReflectionTestUtils.setField(logIngestService, "walMaxMb", 8L);
+        ReflectionTestUtils.setField(logIngestService, "fsyncIntervalMs", 5L);
+        ReflectionTestUtils.setField(logIngestService, "maxRetries", 2);
+        ReflectionTestUtils.setField(logIngestService, "maxUnavailableRetries", 3);
+        ReflectionTestUtils.setField(logIngestService, "retryBackoffMs", 20L);
+        ReflectionTestUtils.setField(logIngestService, "maxBackoffMs", 40L);
+        logIngestService.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        logIngestService.shutdown();
+    }
+
+    @Test
+    void 응답_없는_그라운드는_미루고_다른_그라운드는_계속_저장() {
+        down.add("down");
+        ReflectionTestUtils.setField(logIngestService, "maxUnavailableRetries", 0);
+        logIngestService.enqueueAll("down", logs("d", 5));
+        logIngestService.enqueueAll("up", logs("u", 5));
+
+        await(() -> saved.size() == 5 && logIngestService.getStats().getDeferred() == 5);
+        assertThat(saved).allMatch(a -> a.startsWith("up:"));
+        //미룬 로그는 retry WAL로 옮겼으므로 WAL checkpoint는 batch 끝까지 이동
+        await(() -> logIngestService.getQueueDepth() == 0);
+        logIngestService.enqueueAll("up", logs("v", 3));
+        await(() -> saved.size() == 8);
+
+        down.clear();
+        await(() -> saved.size() == 13 && logIngestService.getStats().getDeferred() == 0);
+        assertThat(saved).filteredOn(a -> a.startsWith("down:")).hasSize(5);
+        assertThat(logIngestService.getStats().getFailed()).isZero();
+    }
+
+    @Test
+    void 로그별_저장_실패가_계속되면_dead_letter로_옮김() throws IOException {
+        rejecting.add("bad");
+        logIngestService.enqueueAll("bad", logs("b", 4));
+        logIngestService.enqueueAll("good", logs("g", 2));
+
+        //dead-letter로 옮긴 뒤 retry WAL checkpoint 이동
+        await(() -> logIngestService.getStats().getFailed() == 4 && logIngestService.getStats().getDeferred() == 0);
+        assertThat(saved).containsExactly("good:g-0", "good:g-1");
+        logIngestService.shutdown();
+        assertThat(new LogWal(dir.resolve("dead"), 1 << 20, 8 << 20).getPending()).isEqualTo(4);
+    }
+
+    @Test
+    void 계속_응답_없는_그라운드는_재시도_횟수를_넘으면_dead_letter로_옮김() throws IOException {
+        down.add("down");
+        logIngestService.enqueueAll("down", logs("d", 3));
+
+        await(() -> logIngestService.getStats().getFailed() == 3 && logIngestService.getStats().getDeferred() == 0);
+        logIngestService.shutdown();
+        assertThat(new LogWal(dir.resolve("dead"), 1 << 20, 8 << 20).getPending()).isEqualTo(3);
+    }
+
+    private static List<ElasticSearchLog> logs(String prefix, int count) {
+        List<ElasticSearchLog> logs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            logs.add(ElasticSearchLog.builder().localDateTime(LocalDateTime.now()).log(prefix + "-" + i).build());
+        }
+        return logs;
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("대기 시간 초과").isLessThan(deadline);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
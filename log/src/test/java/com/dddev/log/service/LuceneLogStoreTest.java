@@ -0,0 +1,236 @@
+package com.dddev.log.service;
+
+import com.dddev.log.dto.BoundedPage;
+import com.dddev.log.dto.CursorPage;
+import com.dddev.log.dto.ElasticSearchLog;
+import com.dddev.log.util.LogLineParser;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.Page;
+import org.springframework.data.elasticsearch.NoSuchIndexException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LuceneLogStoreTest {
+
+    private static final String GROUND = "ground-1";
+    private static final LocalDateTime START = LocalDateTime.of(2023, 11, 3, 9, 0);
+
+    @TempDir
+    Path dir;
+
+    private LuceneLogStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        store = new LuceneLogStore(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(store, "path", dir.toString());
+        //refresh, commit은 테스트에서 직접
+        ReflectionTestUtils.setField(store, "refreshMs", 3_600_000L);
+        ReflectionTestUtils.setField(store, "commitMs", 3_600_000L);
+        ReflectionTestUtils.setField(store, "ramBufferMb", 16.0);
+        ReflectionTestUtils.setField(store, "regexpBatchSize", 25);
+        ReflectionTestUtils.setField(store, "pitKeepAlive", "1m");
+        ReflectionTestUtils.setField(store, "retentionDays", 30);
+        store.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.shutdown();
+    }
+
+    @Test
+    void 같은_logId로_다시_저장하면_교체() {
+        List<ElasticSearchLog> logs = logs(5);
+        store.saveAll(GROUND, logs);
+        store.saveAll(GROUND, logs);
+        store.save(GROUND, log(START.plusSeconds(2), id(2), "changed"));
+        store.flush();
+        store.refresh();
+
+        assertThat(store.count(GROUND)).isEqualTo(5);
+        assertThat(store.recent(GROUND, 10)).extracting(ElasticSearchLog::getLog)
+                .containsExactly("line-4", "line-3", "changed", "line-1", "line-0");
+    }
+
+    @Test
+    void 커서로_이어_읽으면_새_로그가_들어와도_중복_없이_이어짐() {
+        store.saveAll(GROUND, logs(70));
+        store.refresh();
+
+        CursorPage<ElasticSearchLog> first = store.latest(GROUND, 0, null, false);
+        assertThat(first.getContent()).hasSize(30);
+        assertThat(first.getContent().get(0).getLog()).isEqualTo("line-69");
+        //첫 페이지를 읽은 뒤 더 최신 로그가 들어와도 다음 페이지는 커서 다음부터
+        List<ElasticSearchLog> newer = new ArrayList<>();
+        for (int i = 70; i < 80; i++) newer.add(log(START.plusSeconds(i), id(i), "line-" + i));
+        store.saveAll(GROUND, newer);
+        store.refresh();
+
+        List<String> read = new ArrayList<>(lines(first));
+        CursorPage<ElasticSearchLog> page = first;
+        while (page.getNextCursor() != null) {
+            page = store.latest(GROUND, 0, page.getNextCursor(), false);
+            read.addAll(lines(page));
+        }
+        assertThat(page.getTotalElements()).isEqualTo(80);
+        assertThat(read).hasSize(70).doesNotHaveDuplicates().startsWith("line-69").endsWith("line-0");
+    }
+
+    @Test
+    void pit_커서는_첫_페이지의_시점으로_끝까지_읽음() {
+        store.saveAll(GROUND, logs(70));
+        store.refresh();
+
+        CursorPage<ElasticSearchLog> first = store.latest(GROUND, 0, null, true);
+        //pit 이후 저장, 교체한 로그는 보이지 않음
+        store.save(GROUND, log(START.plusSeconds(100), id(100), "newer"));
+        store.save(GROUND, log(START.plusSeconds(10), id(10), "changed"));
+        store.refresh();
+
+        List<String> read = new ArrayList<>(lines(first));
+        CursorPage<ElasticSearchLog> page = first;
+        while (page.getNextCursor() != null) {
+            page = store.latest(GROUND, 0, page.getNextCursor(), true);
+            assertThat(page.getTotalElements()).isEqualTo(70);
+            read.addAll(lines(page));
+        }
+        assertThat(read).hasSize(70).doesNotHaveDuplicates().contains("line-10").doesNotContain("newer", "changed");
+        assertThat(store.latest(GROUND, 0, null, false).getTotalElements()).isEqualTo(71);
+    }
+
+    @Test
+    void 세_글자_이상은_n_gram_미만은_와일드카드로_부분_문자열_검색() {
+        store.saveAll(GROUND, List.of(
+                log(START, id(0), "Connection refused to db"),
+                log(START.plusSeconds(1), id(1), "client connected"),
+                log(START.plusSeconds(2), id(2), "request timeout")));
+        store.refresh();
+
+        //n-gram phrase: 단어 중간, 대소문자 무시, 공백을 포함한 부분 문자열
+        assertThat(lines(store.keyword(GROUND, "REFUS", 0, null, false))).containsExactly("Connection refused to db");
+        assertThat(lines(store.keyword(GROUND, "onnect", 0, null, false))).containsExactly("client connected", "Connection refused to db");
+        assertThat(lines(store.keyword(GROUND, "d to d", 0, null, false))).containsExactly("Connection refused to db");
+        assertThat(store.keyword(GROUND, "refused db", 0, null, false).getContent()).isEmpty();
+        //두 글자 이하: log 필드 토큰 와일드카드
+        assertThat(lines(store.keyword(GROUND, "ED", 0, null, false))).containsExactly("client connected", "Connection refused to db");
+        assertThat(lines(store.timeAndKeyword(GROUND, START.plusSeconds(1), START.plusSeconds(2), "ed", 0, null, false)))
+                .containsExactly("client connected");
+    }
+
+    @Test
+    void 레벨_로거_로그_시간으로_검색하고_로그_시간_최신_순() {
+        store.saveAll(GROUND, List.of(
+                parsed(0, "2023-11-03 09:00:00.000 ERROR 1 --- [main] com.dddev.log.service.A : a"),
+                parsed(1, "2023-11-03 09:00:05.000  INFO 1 --- [main] com.dddev.log.controller.B : b"),
+                parsed(2, "2023-11-03 09:00:03.000 ERROR 1 --- [main] org.apache.C : c"),
+                parsed(3, "plain line without time")));
+        store.refresh();
+
+        assertThat(lines(store.filter(GROUND, List.of("ERROR"), null, null, null, 0, null, false))).containsExactly(
+                "2023-11-03 09:00:03.000 ERROR 1 --- [main] org.apache.C : c",
+                "2023-11-03 09:00:00.000 ERROR 1 --- [main] com.dddev.log.service.A : a");
+        assertThat(store.filter(GROUND, List.of("ERROR", "INFO"), "com.dddev.*", null, null, 0, null, false).getContent())
+                .extracting(ElasticSearchLog::getLogger).containsExactly("com.dddev.log.controller.B", "com.dddev.log.service.A");
+        assertThat(store.filter(GROUND, List.of(), "org.apache.C", null, null, 0, null, false).getContent()).hasSize(1);
+        assertThat(store.filter(GROUND, List.of(), null, LocalDateTime.of(2023, 11, 3, 9, 0, 1), LocalDateTime.of(2023, 11, 3, 9, 0, 4), 0, null, false)
+                .getContent()).extracting(ElasticSearchLog::getLogger).containsExactly("org.apache.C");
+        //조건이 없으면 전체, 로그 시간이 없는 로그는 마지막
+        assertThat(lines(store.filter(GROUND, List.of(), null, null, null, 0, null, false))).hasSize(4).endsWith("plain line without time");
+    }
+
+    @Test
+    void 정규표현식은_다음_페이지를_찾으면_멈추고_마지막_페이지는_정확한_수() {
+        List<ElasticSearchLog> logs = logs(70);
+        logs.add(log(START.plusSeconds(70), id(70), "other"));
+        store.saveAll(GROUND, logs);
+        store.refresh();
+
+        BoundedPage<ElasticSearchLog> first = store.regexp(GROUND, "line-\\d+", 0);
+        assertThat(first.getContent()).hasSize(30);
+        assertThat(first.isTotalExact()).isFalse();
+        assertThat(first.getTotalElements()).isEqualTo(31);
+        assertThat(first.hasNext()).isTrue();
+
+        BoundedPage<ElasticSearchLog> last = store.regexp(GROUND, "line-\\d+", 2);
+        assertThat(lines(last)).hasSize(10).startsWith("line-9").endsWith("line-0");
+        assertThat(last.isTotalExact()).isTrue();
+        assertThat(last.getTotalElements()).isEqualTo(70);
+
+        BoundedPage<ElasticSearchLog> none = store.regexp(GROUND, "nothing", 0);
+        assertThat(none.getContent()).isEmpty();
+        assertThat(none.isTotalExact()).isTrue();
+        assertThat(none.getTotalElements()).isZero();
+    }
+
+    @Test
+    void 삭제하면_조회할_로그가_없음() {
+        store.saveAll(GROUND, logs(3));
+        store.refresh();
+
+        assertThat(store.hasLogs(GROUND)).isTrue();
+        assertThat(store.delete(GROUND)).isTrue();
+        assertThat(store.hasLogs(GROUND)).isFalse();
+        assertThatThrownBy(() -> store.latest(GROUND, 0, null, false)).isInstanceOf(NoSuchIndexException.class);
+        assertThat(store.delete(GROUND)).isFalse();
+        //다시 저장하면 새 인덱스
+        store.save(GROUND, log(START, id(0), "again"));
+        store.refresh();
+        assertThat(store.count(GROUND)).isEqualTo(1);
+    }
+
+    @Test
+    void 보관_기간이_지난_로그만_삭제() {
+        LocalDateTime now = LocalDateTime.now();
+        store.saveAll(GROUND, List.of(
+                log(now.minusDays(40), id(0), "expired"),
+                log(now.minusDays(29), id(1), "kept"),
+                log(now, id(2), "today")));
+        store.refresh();
+
+        store.dropExpiredLogs();
+        store.refresh();
+
+        assertThat(store.recent(GROUND, 10)).extracting(ElasticSearchLog::getLog).containsExactly("today", "kept");
+    }
+
+    private static List<ElasticSearchLog> logs(int count) {
+        List<ElasticSearchLog> logs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            logs.add(log(START.plusSeconds(i), id(i), "line-" + i));
+        }
+        return logs;
+    }
+
+    private static ElasticSearchLog log(LocalDateTime localDateTime, String logId, String line) {
+        return ElasticSearchLog.builder().localDateTime(localDateTime).logId(logId).log(line).build();
+    }
+
+    private static ElasticSearchLog parsed(int i, String line) {
+        ElasticSearchLog log = log(START.plusSeconds(i), id(i), line);
+        LogLineParser.parse(line, log);
+        return log;
+    }
+
+    private static String id(int i) {
+        return String.format("id-%06d", i);
+    }
+
+    private static List<String> lines(Page<ElasticSearchLog> page) {
+        List<String> lines = new ArrayList<>();
+        page.getContent().forEach(a -> lines.add(a.getLog()));
+        return lines;
+    }
+}
@@ -0,0 +1,92 @@
+package com.dddev.log.service;
+
+import com.dddev.log.exception.UserUnAuthGptException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UserGptAccessServiceTest {
+
+    private static final long LIMIT = 10_000;
+
+    private QuotaTemplate redisTemplate;
+    private UserGptAccessService userGptAccessService;
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = new QuotaTemplate();
+        userGptAccessService = new UserGptAccessService(redisTemplate, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(userGptAccessService, "groundTokens", LIMIT);
+        ReflectionTestUtils.setField(userGptAccessService, "userTokens", LIMIT);
+        ReflectionTestUtils.setField(userGptAccessService, "windowSeconds", 3600L);
+        userGptAccessService.init();
+    }
+
+    @Test
+    void 질문과_답변_최대_token을_예약하고_실제_사용량으로_정산() {
+        UserGptAccessService.Reservation reservation = userGptAccessService.reserve("ground", null, 500, 4000);
+        assertThat(redisTemplate.used).isEqualTo(4500);
+
+        userGptAccessService.started(reservation);
+        userGptAccessService.finished(reservation, 1200);
+        userGptAccessService.completed(reservation);
+        assertThat(redisTemplate.used).isEqualTo(1200);
+    }
+
+    @Test
+    void 답변_예약분을_넘는_동시_요청은_호출_전에_거절() {
+        userGptAccessService.reserve("ground", null, 500, 4000);
+        userGptAccessService.reserve("ground", null, 500, 4000);
+
+        assertThatThrownBy(() -> userGptAccessService.reserve("ground", null, 500, 4000))
+                .isInstanceOf(UserUnAuthGptException.class);
+        assertThat(redisTemplate.used).isEqualTo(9000);
+    }
+
+    @Test
+    void completion_tokens를_설정하면_max_tokens_대신_그만큼_예약() {
+        ReflectionTestUtils.setField(userGptAccessService, "completionTokens", 1000L);
+        userGptAccessService.reserve("ground", null, 500, 4000);
+        assertThat(redisTemplate.used).isEqualTo(1500);
+
+        //max_tokens보다 크게 잡지 않음
+        userGptAccessService.reserve("ground", null, 500, 200);
+        assertThat(redisTemplate.used).isEqualTo(2200);
+    }
+
+    @Test
+    void 호출하지_않고_끝나면_예약을_돌려주고_usage가_없으면_예약분_그대로() {
+        UserGptAccessService.Reservation unused = userGptAccessService.reserve("ground", null, 500, 4000);
+        userGptAccessService.completed(unused);
+        assertThat(redisTemplate.used).isZero();
+
+        UserGptAccessService.Reservation noUsage = userGptAccessService.reserve("ground", null, 500, 4000);
+        userGptAccessService.started(noUsage);
+        userGptAccessService.finished(noUsage, -1);
+        userGptAccessService.completed(noUsage);
+        assertThat(redisTemplate.used).isEqualTo(4500);
+    }
+
+    //gpt-token-quota.lua를 그라운드 bucket 하나, 한 창 안에서 흉내 냄
+    private static class QuotaTemplate extends RedisTemplate<String, Object> {
+        private long used;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            long amount = Long.parseLong((String) args[2]);
+            boolean check = "1".equals(args[3]);
+            long allowed = check && used + amount > LIMIT ? 0 : 1;
+            if (allowed == 1) used = Math.max(0, used + amount);
+            return (T) List.of(allowed, 1000L, used, LIMIT);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.dddev.log.service;
+
+import com.dddev.log.exception.LogIngestException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UserLogAccessServiceTest {
+
+    private static final long LIMIT = 150;
+    private static final long CHUNK = 100;
+    private static final long WINDOW = 3_600_000;
+
+    private CounterTemplate redisTemplate;
+    private UserLogAccessService userLogAccessService;
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = new CounterTemplate();
+        userLogAccessService = new UserLogAccessService(redisTemplate, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(userLogAccessService, "limit", LIMIT);
+        ReflectionTestUtils.setField(userLogAccessService, "windowSeconds", 3600L);
+        ReflectionTestUtils.setField(userLogAccessService, "leaseChunk", CHUNK);
+        ReflectionTestUtils.setField(userLogAccessService, "leaseTtlMs", 1L);
+        ReflectionTestUtils.setField(userLogAccessService, "leaseStripes", 1);
+        userLogAccessService.init();
+    }
+
+    @Test
+    void 느린_그라운드는_실제_사용량만큼만_차감() throws InterruptedException {
+        //lease가 매번 만료될 만큼 천천히 한 줄씩, 한도보다 많이 보내도 쓰지 않은 한도는 돌려받음
+        for (int i = 1; i <= LIMIT - CHUNK; i++) {
+            assertThatCode(() -> userLogAccessService.count("ground")).doesNotThrowAnyException();
+            assertThat(redisTemplate.used).isLessThanOrEqualTo(i + CHUNK);
+            Thread.sleep(2);
+        }
+        Thread.sleep(2);
+        //다음 할당에서 마지막 lease의 남은 한도를 돌려받으므로 Redis 사용량은 실제 보낸 줄 수 + 새로 할당받은 한도
+        userLogAccessService.count("ground");
+        long sent = LIMIT - CHUNK + 1;
+        assertThat(redisTemplate.used).isEqualTo(LIMIT);
+        assertThat(redisTemplate.refunded).isEqualTo(redisTemplate.granted - redisTemplate.used);
+        assertThat(redisTemplate.granted - redisTemplate.refunded).isGreaterThanOrEqualTo(sent);
+        assertThat(redisTemplate.exceeded).isZero();
+    }
+
+    @Test
+    void 한도를_넘어_거절한_요청은_사용량에_넣지_않음() {
+        userLogAccessService.count("ground", (int) LIMIT);
+
+        for (int i = 0; i < 5; i++) {
+            assertThatThrownBy(() -> userLogAccessService.count("ground", 10)).isInstanceOf(LogIngestException.RateLimitedException.class);
+        }
+        assertThat(redisTemplate.exceeded).isEqualTo(5);
+        assertThat(redisTemplate.used).isEqualTo(LIMIT);
+        //다음 창에서는 바로 다시 보낼 수 있음
+        redisTemplate.start += WINDOW;
+        assertThatCode(() -> userLogAccessService.count("ground", 10)).doesNotThrowAnyException();
+    }
+
+    @Test
+    void 창이_바뀌는_사이에_받은_한도는_각자_할당한_창에_돌려줌() {
+        ReflectionTestUtils.setField(userLogAccessService, "leaseTtlMs", 60_000L);
+        userLogAccessService.count("ground", 1);
+        //다음 창에서 남은 한도가 chunk의 1/4 아래로 내려가 다음 chunk를 미리 받음
+        redisTemplate.start += WINDOW;
+        userLogAccessService.count("ground", 80);
+        await(() -> redisTemplate.granted == 2 * CHUNK);
+
+        expireLease("ground");
+        userLogAccessService.count("ground", 1);
+
+        //쓰지 않은 119 = 새 창에서 받은 100 + 이전 창에서 받은 100 중 19, 이전 창에는 실제로 보낸 81줄만 남음
+        assertThat(redisTemplate.refunded).isEqualTo(2 * CHUNK - 81);
+        assertThat(redisTemplate.counts.get(0L)).isEqualTo(81);
+        assertThat(redisTemplate.counts.get(WINDOW)).isEqualTo(CHUNK);
+    }
+
+    private void expireLease(String groundId) {
+        Map<?, ?> leases = (Map<?, ?>) ReflectionTestUtils.getField(userLogAccessService, "leases");
+        ReflectionTestUtils.setField(leases.get(groundId), "expiresAt", System.nanoTime());
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("대기 시간 초과").isLessThan(deadline);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    //log-rate-limit.lua를 흉내 냄 (창별 카운트, 한도는 현재 창만 보고 유예 없음)
+    private static class CounterTemplate extends RedisTemplate<String, Object> {
+        private final Map<Long, Long> counts = new HashMap<>();
+        private volatile long start;
+        private volatile long used;
+        private volatile long granted;
+        private volatile long refunded;
+        private volatile int exceeded;
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            long window = Long.parseLong((String) args[1]);
+            long need = Long.parseLong((String) args[3]);
+            long chunk = Long.parseLong((String) args[5]);
+            boolean prefetch = "1".equals(args[6]);
+            for (int i = 7; i + 1 < args.length; i += 2) {
+                long refund = Long.parseLong((String) args[i]);
+                long from = Long.parseLong((String) args[i + 1]);
+                if (from != start && from != start - window) continue;
+                long returned = Math.min(counts.getOrDefault(from, 0L), refund);
+                counts.merge(from, -returned, Long::sum);
+                refunded += returned;
+            }
+            used = counts.getOrDefault(start, 0L);
+            if (need == 0 || (prefetch && LIMIT - used < need)) {
+                return (T) List.of(0L, used, LIMIT, 1000L, 0L, start);
+            }
+            if (LIMIT - used < need) {
+                exceeded++;
+                return (T) List.of(2L, used, LIMIT, 1000L, 0L, start);
+            }
+            long grant = Math.max(need, Math.min(chunk, LIMIT - used));
+            counts.merge(start, grant, Long::sum);
+            used += grant;
+            granted += grant;
+            return (T) List.of(0L, used, LIMIT, 1000L, grant, start);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.dddev.log.util;
+
+import com.dddev.log.dto.ElasticSearchLog;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LogCollapserTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2023, 11, 3, 9, 35, 13);
+    private static final String RETRY = "  WARN 1 --- [main] c.d.l.RetryClient : connection refused, retrying";
+
+    @Test
+    void 앞에_찍힌_시간만_다른_연속_줄을_첫_로그에_합침() {
+        List<ElasticSearchLog> logs = List.of(
+                log(0, "2023-11-03 09:35:13.000" + RETRY),
+                log(100, "2023-11-03 09:35:13.100" + RETRY),
+                log(200, "2023-11-03T09:35:13.2+09:00" + RETRY),
+                log(300, "2023-11-03 09:35:13.300  INFO 1 --- [main] c.d.l.RetryClient : connected"),
+                log(400, "2023-11-03 09:35:13.400" + RETRY));
+        int[] runOf = new int[logs.size()];
+
+        List<ElasticSearchLog> collapsed = LogCollapser.collapse(logs, 1000, runOf);
+
+        assertThat(collapsed).hasSize(3);
+        assertThat(runOf).containsExactly(0, 0, 0, 1, 2);
+        ElasticSearchLog run = collapsed.get(0);
+        assertThat(run.getLogId()).isEqualTo(logs.get(0).getLogId());
+        assertThat(run.getLog()).startsWith("2023-11-03 09:35:13.000");
+        assertThat(LogCollapser.repeatCount(run)).isEqualTo(3);
+        assertThat(run.getLocalDateTime()).isEqualTo(START);
+        assertThat(run.getLastLocalDateTime()).isEqualTo(START.plusNanos(200_000_000));
+        assertThat(run.getLastEventTime()).isEqualTo(LocalDateTime.of(2023, 11, 3, 9, 35, 13, 200_000_000));
+        assertThat(LogCollapser.repeatCount(collapsed.get(1))).isEqualTo(1);
+        assertThat(collapsed.get(1).getRepeatCount()).isNull();
+        //묶이지 않은 로그는 입력 로그 그대로
+        assertThat(collapsed.get(1)).isSameAs(logs.get(3));
+    }
+
+    @Test
+    void 같은_batch를_다시_묶어도_횟수가_늘지_않음() {
+        List<ElasticSearchLog> logs = List.of(log(0, "same"), log(100, "same"), log(200, "same"));
+
+        for (int attempt = 0; attempt < 3; attempt++) {
+            List<ElasticSearchLog> collapsed = LogCollapser.collapse(logs, 1000, new int[logs.size()]);
+
+            assertThat(collapsed).hasSize(1);
+            assertThat(collapsed.get(0).getRepeatCount()).isEqualTo(3);
+            assertThat(collapsed.get(0).getLastLocalDateTime()).isEqualTo(START.plusNanos(200_000_000));
+        }
+        //입력 로그는 바뀌지 않음
+        assertThat(logs).allMatch(a -> a.getRepeatCount() == null && a.getLastLocalDateTime() == null && a.getLastEventTime() == null);
+    }
+
+    @Test
+    void 마지막_줄과_window보다_멀면_새_로그() {
+        List<ElasticSearchLog> logs = List.of(
+                log(0, "2023-11-03 09:35:13.000" + RETRY),
+                log(800, "2023-11-03 09:35:13.800" + RETRY),
+                log(1600, "2023-11-03 09:35:14.600" + RETRY),
+                log(3000, "2023-11-03 09:35:16.000" + RETRY));
+        int[] runOf = new int[logs.size()];
+
+        List<ElasticSearchLog> collapsed = LogCollapser.collapse(logs, 1000, runOf);
+
+        //첫 줄과는 1초 넘게 떨어져도 바로 앞 줄과 가까우면 이어서 합침
+        assertThat(runOf).containsExactly(0, 0, 0, 1);
+        assertThat(LogCollapser.repeatCount(collapsed.get(0))).isEqualTo(3);
+        assertThat(LogCollapser.repeatCount(collapsed.get(1))).isEqualTo(1);
+    }
+
+    @Test
+    void 형식이_다른_줄은_줄_전체가_같을_때만_합침() {
+        ElasticSearchLog first = log(0, "\tat com.dddev.log.service.LogService.save(LogService.java:10)");
+        ElasticSearchLog same = log(10, "\tat com.dddev.log.service.LogService.save(LogService.java:10)");
+        ElasticSearchLog other = log(20, "\tat com.dddev.log.service.LogService.save(LogService.java:11)");
+
+        assertThat(LogCollapser.isRepeat(first, same, 1000)).isTrue();
+        assertThat(LogCollapser.isRepeat(first, other, 1000)).isFalse();
+        //형식에 맞는 줄은 시간 뒤 내용이 다르면 합치지 않음
+        assertThat(LogCollapser.isRepeat(log(0, "2023-11-03 09:35:13.000" + RETRY), log(10, "2023-11-03 09:35:13.000" + RETRY + "!"), 1000)).isFalse();
+    }
+
+    @Test
+    void window가_0_이하면_묶지_않음() {
+        List<ElasticSearchLog> logs = List.of(log(0, "same"), log(0, "same"), log(0, "same"));
+        int[] runOf = new int[logs.size()];
+
+        assertThat(LogCollapser.collapse(logs, 0, runOf)).hasSize(3);
+        assertThat(runOf).containsExactly(0, 1, 2);
+        assertThat(logs).allMatch(a -> a.getRepeatCount() == null);
+    }
+
+    @Test
+    void 이미_묶인_로그를_합치면_횟수를_더함() {
+        ElasticSearchLog run = log(0, "same");
+        ElasticSearchLog repeat = log(100, "same");
+        repeat.setRepeatCount(4);
+        repeat.setLastLocalDateTime(START.plusNanos(500_000_000));
+        int[] runOf = new int[2];
+
+        List<ElasticSearchLog> collapsed = LogCollapser.collapse(List.of(run, repeat), 1000, runOf);
+
+        assertThat(collapsed).hasSize(1);
+        assertThat(collapsed.get(0).getRepeatCount()).isEqualTo(5);
+        assertThat(collapsed.get(0).getLastLocalDateTime()).isEqualTo(START.plusNanos(500_000_000));
+    }
+
+    //millis는 START 기준 저장 시간, 형식에 맞는 줄은 저장 전처럼 파싱해 둠
+    private static ElasticSearchLog log(long millis, String line) {
+        ElasticSearchLog log = ElasticSearchLog.builder()
+                .localDateTime(START.plusNanos(millis * 1_000_000))
+                .log(line)
+                .build();
+        LogLineParser.parse(line, log);
+        return log;
+    }
+}
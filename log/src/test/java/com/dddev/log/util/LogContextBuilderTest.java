@@ -0,0 +1,44 @@
+package com.dddev.log.util;
+
+import com.dddev.log.dto.ElasticSearchLog;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LogContextBuilderTest {
+
+    @Test
+    void 저장할_때_묶인_횟수를_반복_횟수에_포함() {
+        List<ElasticSearchLog> logs = List.of(
+                log("2023-11-03 09:35:13.000  WARN 1 --- [main] c.d.l.RetryClient : retry 1", 1),
+                log("2023-11-03 09:35:14.000  WARN 1 --- [main] c.d.l.RetryClient : retry 2", 3),
+                log("2023-11-03 09:35:15.000 ERROR 1 --- [main] c.d.l.RetryClient : gave up", 5));
+
+        String context = LogContextBuilder.build(logs, 1000, 2);
+
+        //숫자만 다른 줄은 가장 최근 줄로 묶고 묶인 줄 수를 모두 더함
+        assertThat(context).isEqualTo(
+                "2023-11-03 09:35:14.000  WARN 1 --- [main] c.d.l.RetryClient : retry 2 [repeated 4 times]\n"
+                        + "2023-11-03 09:35:15.000 ERROR 1 --- [main] c.d.l.RetryClient : gave up [repeated 5 times]\n");
+    }
+
+    @Test
+    void 묶이지_않은_줄은_횟수를_붙이지_않음() {
+        List<ElasticSearchLog> logs = List.of(
+                log("2023-11-03 09:35:13.000 ERROR 1 --- [main] c.d.l.LogService : failed", null),
+                log("\tat com.dddev.log.service.LogService.save(LogService.java:10)", null));
+
+        String context = LogContextBuilder.build(logs, 1000, 2);
+
+        assertThat(context).doesNotContain("repeated");
+        assertThat(context).contains("failed\n", "LogService.java:10)\n");
+    }
+
+    private static ElasticSearchLog log(String line, Integer repeatCount) {
+        ElasticSearchLog log = ElasticSearchLog.builder().log(line).repeatCount(repeatCount).build();
+        LogLineParser.parse(line, log);
+        return log;
+    }
+}
@@ -0,0 +1,90 @@
+package com.dddev.log.util;
+
+import com.dddev.log.dto.ElasticSearchLog;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LogLineParserTest {
+
+    @Test
+    void Spring_Boot_기본_형식_줄의_필드를_채움() {
+        String line = "2023-11-03 09:35:13.099  INFO 7960 --- [           main] com.dddev.log.LogApplication             : Started LogApplication";
+        ElasticSearchLog log = new ElasticSearchLog();
+
+        assertThat(LogLineParser.parse(line, log)).isTrue();
+        assertThat(log.getEventTime()).isEqualTo(LocalDateTime.of(2023, 11, 3, 9, 35, 13, 99_000_000));
+        assertThat(log.getLevel()).isEqualTo("INFO");
+        assertThat(log.getPid()).isEqualTo("7960");
+        assertThat(log.getThread()).isEqualTo("main");
+        assertThat(log.getLogger()).isEqualTo("com.dddev.log.LogApplication");
+        assertThat(line.substring(LogLineParser.afterTime(line))).startsWith("INFO 7960");
+    }
+
+    @Test
+    void T_구분자_쉼표_소수점_시간대를_받아들임() {
+        ElasticSearchLog log = new ElasticSearchLog();
+        String line = "  2023-11-03T09:35:13,1234567891+09:00 ERROR 1 --- [nio-8080-exec-1] c.d.l.c.logController : failed";
+
+        assertThat(LogLineParser.parse(line, log)).isTrue();
+        //10자리 이상 소수점은 9자리까지만
+        assertThat(log.getEventTime()).isEqualTo(LocalDateTime.of(2023, 11, 3, 9, 35, 13, 123_456_789));
+        assertThat(log.getLevel()).isEqualTo("ERROR");
+        assertThat(log.getThread()).isEqualTo("nio-8080-exec-1");
+        assertThat(line.substring(LogLineParser.afterTime(line))).startsWith("ERROR");
+
+        ElasticSearchLog utc = new ElasticSearchLog();
+        assertThat(LogLineParser.parse("2023-11-03 09:35:13Z  WARN 1 --- [main] logger : x", utc)).isTrue();
+        assertThat(utc.getEventTime()).isEqualTo(LocalDateTime.of(2023, 11, 3, 9, 35, 13));
+    }
+
+    @Test
+    void 애플리케이션_이름이_붙으면_마지막_대괄호가_스레드() {
+        ElasticSearchLog log = new ElasticSearchLog();
+
+        assertThat(LogLineParser.parse("2023-11-03 09:35:13.099  INFO 7960 --- [log] [  main] com.dddev.Logger : message", log)).isTrue();
+        assertThat(log.getThread()).isEqualTo("main");
+        assertThat(log.getLogger()).isEqualTo("com.dddev.Logger");
+    }
+
+    @Test
+    void pid가_없거나_메시지가_비어도_파싱() {
+        ElasticSearchLog noPid = new ElasticSearchLog();
+        assertThat(LogLineParser.parse("2023-11-03 09:35:13.099 DEBUG --- [main] com.dddev.Logger : message", noPid)).isTrue();
+        assertThat(noPid.getPid()).isNull();
+        assertThat(noPid.getLevel()).isEqualTo("DEBUG");
+
+        ElasticSearchLog empty = new ElasticSearchLog();
+        assertThat(LogLineParser.parse("2023-11-03 09:35:13.099 TRACE 1 --- [main] com.dddev.Logger    :", empty)).isTrue();
+        assertThat(empty.getLogger()).isEqualTo("com.dddev.Logger");
+    }
+
+    @Test
+    void 형식이_다른_줄은_false이고_필드를_바꾸지_않음() {
+        String[] lines = {
+                null,
+                "",
+                "\tat com.dddev.log.service.LogService.save(LogService.java:10)",
+                "Caused by: java.lang.IllegalStateException: 2023-11-03 09:35:13.099 INFO",
+                "2023-13-03 09:35:13.099  INFO 1 --- [main] logger : 없는 달",
+                "2023-02-30 09:35:13.099  INFO 1 --- [main] logger : 없는 날",
+                "2023-11-03 09:35:13.  INFO 1 --- [main] logger : 소수점 뒤 숫자 없음",
+                "2023-11-03 09:35:13.099 NOTICE 1 --- [main] logger : 모르는 레벨",
+                "2023-11-03 09:35:13.099 INFOX 1 --- [main] logger : 레벨 뒤 공백 없음",
+                "2023-11-03 09:35:13.099  INFO 1 [main] logger : --- 없음",
+                "2023-11-03 09:35:13.099  INFO 1 --- main logger : 스레드 없음",
+                "2023-11-03 09:35:13.099  INFO 1 --- [main logger : 닫는 대괄호 없음",
+                "2023-11-03 09:35:13.099  INFO 1 --- [main] logger 콜론 없음",
+                "2023-11-03 09:35:13.099  INFO 1 --- [main]  : 로거 없음",
+                "2023-11-03"
+        };
+        for (String line : lines) {
+            ElasticSearchLog log = new ElasticSearchLog();
+            assertThat(LogLineParser.parse(line, log)).as(line).isFalse();
+            assertThat(log.getEventTime()).as(line).isNull();
+            assertThat(log.getLevel()).as(line).isNull();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.dddev.log.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LogWalTest {
+
+    private static final int SEGMENT = 4096;
+    private static final int MAX = SEGMENT * 4;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void segment가_차면_다음_segment에_이어_쓰고_최대치면_거절() throws IOException {
+        LogWal wal = new LogWal(dir, SEGMENT, MAX);
+        int appended = 0;
+        while (wal.append(payload(appended)) > 0) {
+            appended++;
+        }
+
+        assertThat(segments()).hasSize(4);
+        assertThat(wal.getPending()).isEqualTo(appended);
+        assertThat(wal.getPendingBytes()).isLessThanOrEqualTo(wal.getMaxBytes());
+        List<LogWal.Record> records = wal.read(wal.getCheckpoint(), Integer.MAX_VALUE);
+        assertThat(records).hasSize(appended);
+        for (int i = 0; i < appended; i++) {
+            assertThat(text(records.get(i))).isEqualTo(new String(payload(i), StandardCharsets.UTF_8));
+        }
+        assertThat(wal.append(new byte[SEGMENT])).isEqualTo(-1);
+    }
+
+    @Test
+    void checkpoint_앞의_segment를_지우고_다시_열면_checkpoint_다음부터_읽음() throws IOException {
+        LogWal wal = new LogWal(dir, SEGMENT, MAX);
+        for (int i = 0; i < 150; i++) {
+            wal.append(payload(i));
+        }
+        List<LogWal.Record> first = wal.read(wal.getCheckpoint(), 100);
+        wal.checkpoint(first.get(99).getPosition(), 100);
+        wal.sync();
+
+        assertThat(wal.getPending()).isEqualTo(50);
+        assertThat(segments()).hasSizeLessThan(4);
+
+        LogWal recovered = new LogWal(dir, SEGMENT, MAX);
+        List<LogWal.Record> rest = recovered.read(recovered.getCheckpoint(), Integer.MAX_VALUE);
+        assertThat(recovered.getId()).isEqualTo(wal.getId());
+        assertThat(recovered.getPending()).isEqualTo(50);
+        assertThat(rest).hasSize(50);
+        assertThat(text(rest.get(0))).isEqualTo(new String(payload(100), StandardCharsets.UTF_8));
+        //같은 레코드는 다시 열어도 같은 위치 (재전송해도 같은 logId)
+        assertThat(rest.get(0).getPosition()).isEqualTo(wal.read(first.get(99).getPosition(), 1).get(0).getPosition());
+
+        recovered.checkpoint(rest.get(rest.size() - 1).getPosition(), rest.size());
+        recovered.append("after".getBytes(StandardCharsets.UTF_8));
+        assertThat(recovered.getPending()).isEqualTo(1);
+        assertThat(text(recovered.read(recovered.getCheckpoint(), 10).get(0))).isEqualTo("after");
+    }
+
+    @Test
+    void 잘린_레코드는_복구할_때_버림() throws IOException {
+        LogWal wal = new LogWal(dir, SEGMENT, MAX);
+        for (int i = 0; i < 5; i++) {
+            wal.append(("r" + i).getBytes(StandardCharsets.UTF_8));
+        }
+        wal.sync();
+        //다섯 번째 레코드([길이][CRC][r4], 10byte씩) 내용을 손상
+        Path segment = segments().get(segments().size() - 1);
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[4 * 10 + 8 + 1] ^= 1;
+        Files.write(segment, bytes);
+
+        LogWal recovered = new LogWal(dir, SEGMENT, MAX);
+        assertThat(recovered.getPending()).isEqualTo(4);
+        recovered.append("r5".getBytes(StandardCharsets.UTF_8));
+        List<LogWal.Record> records = recovered.read(recovered.getCheckpoint(), 10);
+        assertThat(records).extracting(LogWalTest::text).containsExactly("r0", "r1", "r2", "r3", "r5");
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> list = Files.list(dir)) {
+            return list.filter(a -> a.getFileName().toString().endsWith(".wal")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static byte[] payload(int i) {
+        return ("line-" + i + "-" + "x".repeat(60)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(LogWal.Record record) {
+        return new String(record.getPayload(), StandardCharsets.UTF_8);
+    }
+}
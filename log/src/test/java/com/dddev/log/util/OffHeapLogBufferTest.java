@@ -0,0 +1,127 @@
+package com.dddev.log.util;
+
+import com.dddev.log.dto.ElasticSearchLog;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OffHeapLogBufferTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    @Test
+    void 최신_순으로_읽고_같은_로그는_한_번만_보관() {
+        OffHeapLogBuffer buffer = new OffHeapLogBuffer(4096, 10);
+        buffer.add(log(START + 2, "b", "second"));
+        buffer.add(log(START + 1, "a", "first"));
+        buffer.add(log(START + 2, "c", "third"));
+        buffer.add(log(START + 2, "b", "second"));
+
+        assertThat(buffer.size()).isEqualTo(3);
+        assertThat(buffer.isComplete()).isTrue();
+        assertThat(buffer.read(0, 10)).extracting(ElasticSearchLog::getLog).containsExactly("third", "second", "first");
+        assertThat(buffer.read(1, 1)).extracting(ElasticSearchLog::getLog).containsExactly("second");
+        //커서(저장 시간, logId) 다음 로그의 위치, 커서 로그가 버퍼에 없으면 커서보다 오래된 로그부터
+        assertThat(buffer.countAfter(START + 2, "b")).isEqualTo(2);
+        assertThat(buffer.read(buffer.countAfter(START + 2, "b"), 10)).extracting(ElasticSearchLog::getLog).containsExactly("first");
+        assertThat(buffer.read(buffer.countAfter(START + 2, "bb"), 10)).extracting(ElasticSearchLog::getLog).containsExactly("second", "first");
+        assertThat(buffer.countAfter(START + 3, "z")).isZero();
+    }
+
+    @Test
+    void 영역이_차면_가장_먼저_들어온_로그부터_지우고_그_아래는_범위에서_뺌() {
+        OffHeapLogBuffer buffer = new OffHeapLogBuffer(1024, 100);
+        for (int i = 0; i < 100; i++) {
+            buffer.add(log(START + i, id(i), "line-" + i + "-" + "x".repeat(40)));
+        }
+
+        assertThat(buffer.isComplete()).isFalse();
+        assertThat(buffer.size()).isBetween(1, 99);
+        List<ElasticSearchLog> logs = buffer.read(0, buffer.size());
+        //남은 로그는 가장 최근 로그부터 빈틈없이 이어짐 (원형 영역을 여러 번 돌아도)
+        for (int i = 0; i < logs.size(); i++) {
+            assertThat(logs.get(i).getLogId()).isEqualTo(id(99 - i));
+        }
+        //지워진 로그보다 오래된 로그는 다시 넣어도 무시
+        buffer.add(log(START, id(0), "late"));
+        assertThat(buffer.read(0, buffer.size())).extracting(ElasticSearchLog::getLog).doesNotContain("late");
+    }
+
+    @Test
+    void 줄_수가_차면_가장_오래된_로그를_범위에서_뺌() {
+        OffHeapLogBuffer buffer = new OffHeapLogBuffer(1 << 16, 5);
+        for (int i = 0; i < 8; i++) {
+            buffer.add(log(START + i, id(i), "line-" + i));
+        }
+
+        assertThat(buffer.size()).isEqualTo(5);
+        assertThat(buffer.isComplete()).isFalse();
+        assertThat(buffer.read(0, 10)).extracting(ElasticSearchLog::getLogId).containsExactly(id(7), id(6), id(5), id(4), id(3));
+    }
+
+    @Test
+    void floor까지_범위에서_빼고_floor_아래_로그는_넣지_않음() {
+        OffHeapLogBuffer buffer = new OffHeapLogBuffer(4096, 10);
+        for (int i = 0; i < 5; i++) {
+            buffer.add(log(START + i, id(i), "line-" + i));
+        }
+        buffer.raiseFloor(log(START + 1, id(1), "line-1"));
+
+        assertThat(buffer.isComplete()).isFalse();
+        assertThat(buffer.read(0, 10)).extracting(ElasticSearchLog::getLogId).containsExactly(id(4), id(3), id(2));
+        buffer.add(log(START, id(9), "older"));
+        assertThat(buffer.size()).isEqualTo(3);
+        //영역보다 큰 로그는 보관하지 않고 floor로 올림
+        buffer.add(log(START + 5, id(5), "x".repeat(8192)));
+        assertThat(buffer.size()).isZero();
+        buffer.add(log(START + 6, id(6), "line-6"));
+        assertThat(buffer.read(0, 10)).extracting(ElasticSearchLog::getLogId).containsExactly(id(6));
+    }
+
+    @Test
+    void 무작위로_넣어도_정렬된_최근_로그와_같음() {
+        Random random = new Random(7);
+        for (int trial = 0; trial < 50; trial++) {
+            OffHeapLogBuffer buffer = new OffHeapLogBuffer(2000 + random.nextInt(20000), 5 + random.nextInt(100));
+            TreeSet<ElasticSearchLog> all = new TreeSet<>(Comparator.comparingLong((ElasticSearchLog a) -> OffHeapLogBuffer.millis(a.getLocalDateTime()))
+                    .thenComparing(ElasticSearchLog::getLogId));
+            long time = START;
+            for (int i = 0; i < 300; i++) {
+                time += random.nextInt(3);
+                //가끔 조금 전 시간의 로그가 늦게 들어옴
+                long millis = random.nextInt(10) == 0 ? time - random.nextInt(50) : time;
+                ElasticSearchLog log = log(millis, id(trial * 1000 + i), "x".repeat(random.nextInt(random.nextInt(20) == 0 ? 3000 : 200)));
+                buffer.add(log);
+                all.add(log);
+
+                List<ElasticSearchLog> expected = new ArrayList<>(all.descendingSet()).subList(0, buffer.size());
+                assertThat(buffer.read(0, buffer.size())).extracting(ElasticSearchLog::getLogId)
+                        .containsExactlyElementsOf(expected.stream().map(ElasticSearchLog::getLogId)::iterator);
+                if (buffer.isComplete()) assertThat(buffer.size()).isEqualTo(all.size());
+                int k = random.nextInt(expected.size());
+                assertThat(buffer.countAfter(OffHeapLogBuffer.millis(expected.get(k).getLocalDateTime()), expected.get(k).getLogId())).isEqualTo(k + 1);
+            }
+        }
+    }
+
+    private static ElasticSearchLog log(long millis, String logId, String line) {
+        return ElasticSearchLog.builder()
+                .localDateTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC))
+                .logId(logId)
+                .log(line)
+                .build();
+    }
+
+    private static String id(int i) {
+        return String.format("id-%06d", i);
+    }
+}